@@ -0,0 +1,118 @@
+package kameleon.test.task.benchmarks;
+
+import kameleon.test.task.model.CityCoordinates;
+import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.services.CacheService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheServiceBenchmark {
+    private static final int CITIES = 1_024;
+
+    static CurrentWeather weather(String city) {
+        return CurrentWeather.builder()
+                .weather("Clouds", "scattered clouds")
+                .temperature(269.6, 267.57)
+                .visibility(10000)
+                .wind(1.38)
+                .datetime(1675744800L)
+                .sys(1675751262L, 1675787560L)
+                .timezone(3600)
+                .cityName(city)
+                .build();
+    }
+
+    // Конкурентная запись и чтение общего кэша, в котором помещаются все города (без вытеснения)
+    @State(Scope.Benchmark)
+    public static class Contended {
+        // true - погода хранится столбцами примитивов, чтение собирает снимок заново
+        @Param({"false", "true"})
+        boolean compact;
+
+        CacheService cache;
+        String[] cities;
+        CurrentWeather[] weather;
+        CityCoordinates[] coordinates;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            cache = CacheService.builder().maximumSize(CITIES * 2).compact(compact).build();
+            cities = new String[CITIES];
+            weather = new CurrentWeather[CITIES];
+            coordinates = new CityCoordinates[CITIES];
+            for (int i = 0; i < CITIES; i++) {
+                cities[i] = "city-" + i;
+                weather[i] = weather(cities[i]);
+                coordinates[i] = new CityCoordinates(cities[i], i * 0.01, i * 0.01);
+                cache.cache(weather[i], coordinates[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object cacheContended(Contended state) {
+        int i = ThreadLocalRandom.current().nextInt(CITIES);
+        return state.cache.cache(state.weather[i], state.coordinates[i]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object readContended(Contended state) {
+        return state.cache.getFreshSnapshot(state.cities[ThreadLocalRandom.current().nextInt(CITIES)]);
+    }
+
+    // Заполненный кэш: каждая вставка нового города вытесняет запись (CLOCK)
+    @State(Scope.Thread)
+    public static class Full {
+        @Param({"10", "1000", "100000"})
+        int size;
+
+        CacheService cache;
+        CurrentWeather weather;
+        CityCoordinates coordinates;
+        String[] keys;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            cache = CacheService.builder().maximumSize(size).build();
+            weather = weather("city");
+            coordinates = new CityCoordinates("city", 1, 2);
+            keys = new String[size * 4];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = "city-" + i;
+            }
+            for (int i = 0; i < size; i++) {
+                cache.cache(keys[i], weather, coordinates);
+            }
+            next = size;
+        }
+    }
+
+    @Benchmark
+    public Object evictOnInsert(Full state) {
+        String key = state.keys[state.next];
+        state.next = (state.next + 1) % state.keys.length;
+        return state.cache.cache(key, state.weather, state.coordinates);
+    }
+}
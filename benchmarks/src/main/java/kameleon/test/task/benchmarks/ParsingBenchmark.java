@@ -0,0 +1,65 @@
+package kameleon.test.task.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.services.BenchmarkRequestsService;
+import kameleon.test.task.services.OpenWeatherMapResponseParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Разбор ответа One Call: потоковый парсер SDK против дерева JsonNode (прежняя реализация) как базы.
+// onecall-full.json - ответ без exclude (minutely, hourly, daily, alerts), ~35 КБ
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParsingBenchmark {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"onecall-current.json", "onecall-full.json"})
+    String payload;
+
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        body = BenchmarkRequestsService.readResource(payload);
+    }
+
+    @Benchmark
+    public CurrentWeather streamingParser() throws Exception {
+        return OpenWeatherMapResponseParser.parseCurrentWeather(body, "Zocca");
+    }
+
+    @Benchmark
+    public CurrentWeather jsonTree() throws Exception {
+        JsonNode root = MAPPER.readTree(body);
+        JsonNode current = root.get("current");
+        JsonNode weather = current.get("weather").get(0);
+        return CurrentWeather.builder()
+                .weather(weather.get("main").asText(), weather.get("description").asText())
+                .temperature(current.get("temp").asDouble(), current.get("feels_like").asDouble())
+                .visibility(current.get("visibility").asInt())
+                .wind(current.get("wind_speed").asDouble())
+                .datetime(current.get("dt").asLong())
+                .sys(current.get("sunrise").asLong(), current.get("sunset").asLong())
+                .timezone(root.get("timezone_offset").asInt())
+                .cityName("Zocca")
+                .build();
+    }
+}
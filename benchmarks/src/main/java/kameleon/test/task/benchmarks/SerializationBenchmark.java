@@ -0,0 +1,72 @@
+package kameleon.test.task.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.model.WeatherSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+// Сериализация CurrentWeather: ObjectMapper на каждый ответ против снимка, сериализованного один раз
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+    private ObjectMapper objectMapper;
+    private CurrentWeather currentWeather;
+    private WeatherSnapshot snapshot;
+    private OutputStream sink;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        objectMapper = new ObjectMapper();
+        currentWeather = CacheServiceBenchmark.weather("Zocca");
+        snapshot = WeatherSnapshot.of(currentWeather);
+        sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+                blackhole.consume(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                blackhole.consume(b);
+            }
+        };
+    }
+
+    @Benchmark
+    public String objectMapperWriteValueAsString() throws Exception {
+        return objectMapper.writeValueAsString(currentWeather);
+    }
+
+    @Benchmark
+    public WeatherSnapshot snapshotOf() {
+        return WeatherSnapshot.of(currentWeather);
+    }
+
+    @Benchmark
+    public String snapshotToJson() {
+        return snapshot.toJson();
+    }
+
+    @Benchmark
+    public void snapshotWriteTo() throws Exception {
+        snapshot.writeTo(sink);
+    }
+}
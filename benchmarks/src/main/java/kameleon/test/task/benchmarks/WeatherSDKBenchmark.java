@@ -0,0 +1,64 @@
+package kameleon.test.task.benchmarks;
+
+import kameleon.test.task.config.WeatherSDKConfig;
+import kameleon.test.task.services.BenchmarkRequestsService;
+import kameleon.test.task.services.CacheService;
+import kameleon.test.task.services.WeatherSDK;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// getCurrentWeatherInCity с подменённым транспортом: попадание в кэш и промах (геокодирование уже известно,
+// погода каждый раз "загружается" и разбирается заново)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WeatherSDKBenchmark {
+    private WeatherSDK hitSdk;
+    private WeatherSDK missSdk;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        hitSdk = BenchmarkRequestsService.newWeatherSDK(WeatherSDKConfig.defaults(),
+                new BenchmarkRequestsService("onecall-current.json"));
+        hitSdk.getCurrentWeatherInCity("London");
+
+        // Записи сразу устаревают, поэтому каждый вызов проходит путь промаха
+        WeatherSDKConfig missConfig = WeatherSDKConfig.builder()
+                .cache(CacheService.builder().freshFor(Duration.ofNanos(1)))
+                .build();
+        missSdk = BenchmarkRequestsService.newWeatherSDK(missConfig, new BenchmarkRequestsService("onecall-current.json"));
+        missSdk.getCurrentWeatherInCity("London");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        hitSdk.shutDown();
+        missSdk.shutDown();
+    }
+
+    @Benchmark
+    public String cacheHit() throws Exception {
+        return hitSdk.getCurrentWeatherInCity("London");
+    }
+
+    @Benchmark
+    public String cacheMiss() throws Exception {
+        return missSdk.getCurrentWeatherInCity("London");
+    }
+}
@@ -0,0 +1,272 @@
+package kameleon.test.task.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+// Локальная замена api.openweathermap.org: отвечает на /geo/1.0/direct и /data/3.0/onecall правдоподобными
+// данными, умеет добавлять задержку, ошибки 500, ответы 401/404/429 и медленную отдачу тела
+public final class FakeOpenWeatherMapServer implements AutoCloseable {
+    private static final String GEOCODING_PATH = "/geo/1.0/direct";
+    private static final String ONE_CALL_PATH = "/data/3.0/onecall";
+    private static final int SLOW_BODY_CHUNKS = 8;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Builder settings;
+    private final LongAdder geocodingCalls = new LongAdder();
+    private final LongAdder weatherCalls = new LongAdder();
+    private final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+
+    static {
+        // Заголовки и тело пишутся отдельно: без TCP_NODELAY каждый ответ задерживается на ~40 мс и искажает задержки
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private FakeOpenWeatherMapServer(Builder builder) throws IOException {
+        this.settings = builder;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", builder.port), 1024);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext(GEOCODING_PATH, exchange -> handle(exchange, true));
+        server.createContext(ONE_CALL_PATH, exchange -> handle(exchange, false));
+        server.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private void handle(HttpExchange exchange, boolean geocoding) throws IOException {
+        try (exchange) {
+            (geocoding ? geocodingCalls : weatherCalls).increment();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            Random random = ThreadLocalRandom.current();
+            sleep(settings.latency.sampleMillis(random));
+
+            if (settings.apiKey != null && !settings.apiKey.equals(query.get("appid"))) {
+                respond(exchange, 401, "{\"cod\":401,\"message\":\"Invalid API key. Please see https://openweathermap.org/faq#error401 for more info.\"}", false);
+                return;
+            }
+            if (random.nextDouble() < settings.tooManyRequestsRate) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 429, "{\"cod\":429,\"message\":\"Your account is temporary blocked due to exceeding of requests limitation of your subscription type.\"}", false);
+                return;
+            }
+            if (random.nextDouble() < settings.errorRate) {
+                respond(exchange, 500, "{\"cod\":500,\"message\":\"Internal error\"}", false);
+                return;
+            }
+            if (random.nextDouble() < settings.notFoundRate) {
+                respond(exchange, 404, "{\"cod\":\"404\",\"message\":\"city not found\"}", false);
+                return;
+            }
+
+            boolean slow = random.nextDouble() < settings.slowBodyRate;
+            if (geocoding) {
+                respond(exchange, 200, geocodingResponse(query.getOrDefault("q", "")), slow);
+            } else {
+                respond(exchange, 200, oneCallResponse(query, random), slow);
+            }
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body, boolean slow) throws IOException {
+        statusCounts.computeIfAbsent(status, key -> new LongAdder()).increment();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        // Как и настоящий API, сжимаем ответ, если клиент об этом просит
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (settings.gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            bytes = gzip(bytes);
+        }
+        if (!slow) {
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            return;
+        }
+
+        // Заголовки приходят сразу, а тело - частями с паузами
+        exchange.sendResponseHeaders(status, 0);
+        OutputStream output = exchange.getResponseBody();
+        int chunk = Math.max(1, (bytes.length + SLOW_BODY_CHUNKS - 1) / SLOW_BODY_CHUNKS);
+        for (int offset = 0; offset < bytes.length; offset += chunk) {
+            output.write(bytes, offset, Math.min(chunk, bytes.length - offset));
+            output.flush();
+            sleep(settings.slowBodyChunkDelay.toMillis());
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2 + 32);
+        try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+            output.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String geocodingResponse(String query) {
+        String city = query.split(",")[0].strip();
+        if (city.isEmpty()) {
+            return "[]";
+        }
+        String name = city.substring(0, 1).toUpperCase(Locale.ROOT) + city.substring(1);
+        int hash = city.toLowerCase(Locale.ROOT).hashCode();
+        double lat = ((hash & 0xFFFF) / 65535.0) * 140 - 70;
+        double lon = (((hash >>> 16) & 0xFFFF) / 65535.0) * 360 - 180;
+        return String.format(Locale.ROOT,
+                "[{\"name\":\"%s\",\"local_names\":{\"en\":\"%s\",\"de\":\"%s\"},\"lat\":%.7f,\"lon\":%.7f,\"country\":\"ZZ\"}]",
+                name, name, name, lat, lon);
+    }
+
+    private static String oneCallResponse(Map<String, String> query, Random random) {
+        long now = System.currentTimeMillis() / 1000;
+        double temp = 250 + random.nextDouble() * 60;
+        return String.format(Locale.ROOT, """
+                {"lat":%s,"lon":%s,"timezone":"Etc/UTC","timezone_offset":0,\
+                "current":{"dt":%d,"sunrise":%d,"sunset":%d,"temp":%.2f,"feels_like":%.2f,"pressure":1015,\
+                "humidity":71,"dew_point":270.1,"uvi":0.4,"clouds":40,"visibility":10000,"wind_speed":%.2f,\
+                "wind_deg":240,"wind_gust":4.1,"weather":[{"id":802,"main":"Clouds","description":"scattered clouds","icon":"03d"}]}}""",
+                query.getOrDefault("lat", "0"), query.getOrDefault("lon", "0"), now, now - 21_600, now + 21_600,
+                temp, temp - 2.5, random.nextDouble() * 10);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                query.put(pair.substring(0, separator), URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long getGeocodingCalls() {
+        return geocodingCalls.sum();
+    }
+
+    public long getWeatherCalls() {
+        return weatherCalls.sum();
+    }
+
+    public Map<Integer, Long> getStatusCounts() {
+        Map<Integer, Long> counts = new HashMap<>();
+        statusCounts.forEach((status, count) -> counts.put(status, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public static class Builder {
+        private int port;
+        private String apiKey;
+        private LatencyDistribution latency = LatencyDistribution.none();
+        private double errorRate;
+        private double tooManyRequestsRate;
+        private double notFoundRate;
+        private double slowBodyRate;
+        private Duration slowBodyChunkDelay = Duration.ofMillis(50);
+        private boolean gzip = true;
+
+        private Builder() {
+        }
+
+        // 0 - любой свободный порт
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        // Если задан, запросы с другим appid получают 401
+        public Builder apiKey(String apiKey) {
+            this.apiKey = apiKey;
+            return this;
+        }
+
+        public Builder latency(LatencyDistribution latency) {
+            if (latency == null) {
+                throw new IllegalArgumentException("latency cannot be null");
+            }
+            this.latency = latency;
+            return this;
+        }
+
+        public Builder errorRate(double errorRate) {
+            this.errorRate = rate(errorRate);
+            return this;
+        }
+
+        public Builder tooManyRequestsRate(double tooManyRequestsRate) {
+            this.tooManyRequestsRate = rate(tooManyRequestsRate);
+            return this;
+        }
+
+        public Builder notFoundRate(double notFoundRate) {
+            this.notFoundRate = rate(notFoundRate);
+            return this;
+        }
+
+        public Builder gzip(boolean gzip) {
+            this.gzip = gzip;
+            return this;
+        }
+
+        public Builder slowBody(double slowBodyRate, Duration chunkDelay) {
+            this.slowBodyRate = rate(slowBodyRate);
+            this.slowBodyChunkDelay = chunkDelay;
+            return this;
+        }
+
+        private static double rate(double rate) {
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("rate must be in [0, 1]");
+            }
+            return rate;
+        }
+
+        public FakeOpenWeatherMapServer start() throws IOException {
+            return new FakeOpenWeatherMapServer(this);
+        }
+    }
+}
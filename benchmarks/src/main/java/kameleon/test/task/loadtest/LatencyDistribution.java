@@ -0,0 +1,33 @@
+package kameleon.test.task.loadtest;
+
+import java.util.Random;
+
+// Распределение задержки ответа заглушки, в миллисекундах
+public interface LatencyDistribution {
+
+    long sampleMillis(Random random);
+
+    static LatencyDistribution none() {
+        return random -> 0;
+    }
+
+    static LatencyDistribution fixed(long millis) {
+        return random -> millis;
+    }
+
+    static LatencyDistribution uniform(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis) {
+            throw new IllegalArgumentException("Invalid range: " + minMillis + ".." + maxMillis);
+        }
+        return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+    }
+
+    // Логнормальное распределение с медианой medianMillis: длинный хвост, как у реального API
+    static LatencyDistribution logNormal(long medianMillis, double sigma) {
+        if (medianMillis <= 0 || sigma < 0) {
+            throw new IllegalArgumentException("medianMillis must be positive and sigma non-negative");
+        }
+        double mu = Math.log(medianMillis);
+        return random -> Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+    }
+}
@@ -0,0 +1,209 @@
+package kameleon.test.task.loadtest;
+
+import kameleon.test.task.config.WeatherSDKConfig;
+import kameleon.test.task.factory.WeatherSDKFactory;
+import kameleon.test.task.modes.Mode;
+import kameleon.test.task.services.CacheService;
+import kameleon.test.task.services.OpenWeatherMapRequestsService;
+import kameleon.test.task.services.WeatherSDK;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Нагрузочный прогон WeatherSDK против FakeOpenWeatherMapServer: клиенты на виртуальных потоках запрашивают
+// города с распределением Ципфа (немного популярных, длинный хвост), в конце печатаются перцентили задержки
+// и число обращений к "API".
+//
+// java -cp benchmarks/target/benchmarks.jar kameleon.test.task.loadtest.LoadGenerator mode=BOTH clients=64 duration=30
+public final class LoadGenerator {
+    private static final String API_KEY = "load-test-key";
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        String mode = options.getOrDefault("mode", "BOTH");
+        int clients = Integer.parseInt(options.getOrDefault("clients", "64"));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30")));
+        int cities = Integer.parseInt(options.getOrDefault("cities", "500"));
+        double zipfExponent = Double.parseDouble(options.getOrDefault("zipf", "1.0"));
+        double hedgePercentile = Double.parseDouble(options.getOrDefault("hedgePercentile", "0"));
+        Duration requestTimeout = Duration.ofMillis(Long.parseLong(options.getOrDefault("requestTimeout", "10000")));
+
+        FakeOpenWeatherMapServer.Builder server = FakeOpenWeatherMapServer.builder()
+                .apiKey(API_KEY)
+                .latency(LatencyDistribution.logNormal(Long.parseLong(options.getOrDefault("latencyMedian", "80")),
+                        Double.parseDouble(options.getOrDefault("latencySigma", "0.5"))))
+                .errorRate(Double.parseDouble(options.getOrDefault("errorRate", "0.01")))
+                .tooManyRequestsRate(Double.parseDouble(options.getOrDefault("tooManyRequestsRate", "0")))
+                .notFoundRate(Double.parseDouble(options.getOrDefault("notFoundRate", "0")))
+                .slowBody(Double.parseDouble(options.getOrDefault("slowBodyRate", "0")),
+                        Duration.ofMillis(Long.parseLong(options.getOrDefault("slowBodyChunkDelay", "50"))));
+
+        List<Mode> modes = mode.equals("BOTH") ? List.of(Mode.ON_DEMAND, Mode.POLLING) : List.of(Mode.valueOf(mode));
+        for (Mode sdkMode : modes) {
+            Result result = run(server, sdkMode, clients, duration, cities, zipfExponent, hedgePercentile, requestTimeout);
+            System.out.println(result);
+        }
+    }
+
+    public static Result run(FakeOpenWeatherMapServer.Builder serverSettings, Mode mode, int clients, Duration duration,
+                             int cities, double zipfExponent) throws Exception {
+        return run(serverSettings, mode, clients, duration, cities, zipfExponent, 0, OpenWeatherMapRequestsService.DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    public static Result run(FakeOpenWeatherMapServer.Builder serverSettings, Mode mode, int clients, Duration duration,
+                             int cities, double zipfExponent, double hedgePercentile, Duration requestTimeout) throws Exception {
+        double[] cdf = zipfCdf(cities, zipfExponent);
+        try (FakeOpenWeatherMapServer server = serverSettings.start()) {
+            WeatherSDKConfig config = WeatherSDKConfig.builder()
+                    .baseUrl(server.getBaseUrl())
+                    .cache(CacheService.builder().maximumSize(cities))
+                    .pollingIntervalMinutes(1)
+                    .hedgeAtPercentile(hedgePercentile)
+                    .requestTimeout(requestTimeout)
+                    .build();
+            WeatherSDKFactory factory = WeatherSDKFactory.getInstance();
+            WeatherSDK sdk = factory.getNewWeatherSDK(API_KEY, mode, config);
+
+            List<long[]> latencies = new ArrayList<>(Collections.nCopies(clients, new long[0]));
+            LongAdder errors = new LongAdder();
+            long hedgedRequests;
+            long deadline = System.nanoTime() + duration.toNanos();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < clients; i++) {
+                    int client = i;
+                    executor.execute(() -> {
+                        long[] samples = new long[1024];
+                        int count = 0;
+                        Random random = ThreadLocalRandom.current();
+                        while (System.nanoTime() < deadline) {
+                            String city = "city" + pick(cdf, random);
+                            long start = System.nanoTime();
+                            try {
+                                sdk.getCurrentWeatherInCity(city);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return;
+                            } catch (Exception e) {
+                                errors.increment();
+                            }
+                            if (count == samples.length) {
+                                samples = Arrays.copyOf(samples, count * 2);
+                            }
+                            samples[count++] = System.nanoTime() - start;
+                        }
+                        synchronized (latencies) {
+                            latencies.set(client, Arrays.copyOf(samples, count));
+                        }
+                    });
+                }
+            } finally {
+                hedgedRequests = sdk.getMetrics().getHedgedRequests();
+                factory.deleteWeatherSDK(API_KEY);
+            }
+
+            long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            return new Result(mode, duration, all, errors.sum(), server.getGeocodingCalls(), server.getWeatherCalls(),
+                    hedgedRequests, server.getStatusCounts());
+        }
+    }
+
+    private static double[] zipfCdf(int cities, double exponent) {
+        double[] cdf = new double[cities];
+        double sum = 0;
+        for (int i = 0; i < cities; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < cities; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int pick(double[] cdf, Random random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, cdf.length - 1);
+    }
+
+    public static final class Result {
+        private final Mode mode;
+        private final Duration duration;
+        private final long[] sortedLatencies;
+        private final long errors;
+        private final long geocodingCalls;
+        private final long weatherCalls;
+        private final long hedgedRequests;
+        private final Map<Integer, Long> statusCounts;
+
+        private Result(Mode mode, Duration duration, long[] sortedLatencies, long errors, long geocodingCalls,
+                       long weatherCalls, long hedgedRequests, Map<Integer, Long> statusCounts) {
+            this.mode = mode;
+            this.duration = duration;
+            this.sortedLatencies = sortedLatencies;
+            this.errors = errors;
+            this.geocodingCalls = geocodingCalls;
+            this.weatherCalls = weatherCalls;
+            this.hedgedRequests = hedgedRequests;
+            this.statusCounts = statusCounts;
+        }
+
+        public long getRequests() {
+            return sortedLatencies.length;
+        }
+
+        public double percentileMillis(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))] / 1_000_000.0;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getGeocodingCalls() {
+            return geocodingCalls;
+        }
+
+        public long getWeatherCalls() {
+            return weatherCalls;
+        }
+
+        public long getHedgedRequests() {
+            return hedgedRequests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%-9s requests=%d (%.0f/s) errors=%d  p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms  upstream: geocoding=%d weather=%d hedged=%d statuses=%s",
+                    mode, getRequests(), getRequests() / (double) Math.max(1, duration.toSeconds()), errors,
+                    percentileMillis(50), percentileMillis(99), percentileMillis(99.9), percentileMillis(100),
+                    geocodingCalls, weatherCalls, hedgedRequests, statusCounts);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.config.WeatherSDKConfig;
+import kameleon.test.task.model.CityCoordinates;
+import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.modes.Mode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+// Транспорт без сети: геокодирование отвечает сразу, погода разбирается из заранее загруженного ответа One Call,
+// так что промах кэша измеряет всю работу SDK, кроме сетевого запроса
+public class BenchmarkRequestsService extends OpenWeatherMapRequestsService {
+    private final byte[] weatherResponse;
+
+    public BenchmarkRequestsService(String weatherResource) {
+        super("benchmark-key");
+        this.weatherResponse = readResource(weatherResource);
+    }
+
+    public static byte[] readResource(String name) {
+        try (InputStream inputStream = BenchmarkRequestsService.class.getResourceAsStream("/" + name)) {
+            if (inputStream == null) {
+                throw new IllegalArgumentException("Resource not found: " + name);
+            }
+            return inputStream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static WeatherSDK newWeatherSDK(WeatherSDKConfig config, OpenWeatherMapRequestsService requestsService) {
+        return new WeatherSDK("benchmark-key", Mode.ON_DEMAND, config, requestsService);
+    }
+
+    @Override
+    public CityCoordinates getCityCoordinates(String city, Deadline deadline) {
+        int hash = city.hashCode();
+        return new CityCoordinates(city, (hash & 0xFFFF) / 1000.0 - 30, ((hash >>> 16) & 0xFFFF) / 1000.0 - 30);
+    }
+
+    @Override
+    public CurrentWeather getCurrentWeather(CityCoordinates cityCoordinates, Deadline deadline) throws IOException {
+        return OpenWeatherMapResponseParser.parseCurrentWeather(weatherResponse, cityCoordinates.getCityName());
+    }
+}
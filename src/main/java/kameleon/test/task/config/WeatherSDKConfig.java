@@ -0,0 +1,461 @@
+package kameleon.test.task.config;
+
+import kameleon.test.task.services.AllCitiesPollingStrategy;
+import kameleon.test.task.services.CacheService;
+import kameleon.test.task.services.CircuitBreaker;
+import kameleon.test.task.services.OpenWeatherMapRequestsService;
+import kameleon.test.task.services.PollingService;
+import kameleon.test.task.services.PollingStrategy;
+import kameleon.test.task.services.SharedWeatherCache;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+public final class WeatherSDKConfig {
+    public static final int DEFAULT_BATCH_PARALLELISM = 16;
+    public static final long DEFAULT_POLLING_INTERVAL_MINUTES = 10;
+    public static final double DEFAULT_COORDINATE_LOOKUP_RADIUS_KM = 5;
+    // Город при прогреве - до двух вызовов API (геокодирование и погода)
+    public static final double DEFAULT_WARM_UP_CITIES_PER_SECOND = PollingService.DEFAULT_REQUESTS_PER_SECOND / 2;
+    // One Call отдает почасовой прогноз на 48 часов от текущего часа
+    public static final Duration MAX_FORECAST_HORIZON = Duration.ofHours(47);
+
+    private final CacheService.Builder cache;
+    private final int batchParallelism;
+    private final int pollingConcurrency;
+    private final double pollingRequestsPerSecond;
+    private final long pollingIntervalMinutes;
+    private final PollingStrategy pollingStrategy;
+    private final boolean groupPolling;
+    private final double pollingJitter;
+    private final Path geocodingStorePath;
+    private final Path sharedCachePath;
+    private final int sharedCacheSlots;
+    private final double coordinateLookupRadiusKm;
+    private final String baseUrl;
+    private final boolean jmxEnabled;
+    private final Duration maxStaleAge;
+    private final boolean staleWhileRevalidate;
+    private final int circuitBreakerFailureThreshold;
+    private final Duration circuitBreakerOpenDuration;
+    private final Duration requestTimeout;
+    private final double hedgePercentile;
+    private final int quotaCallsPerMinute;
+    private final long quotaCallsPerDay;
+    private final Duration forecastHorizon;
+    private final Duration observationRefresh;
+    private final List<String> warmUpCities;
+    private final Path warmUpFile;
+    private final double warmUpCitiesPerSecond;
+
+    private WeatherSDKConfig(Builder builder) {
+        this.cache = builder.cache;
+        this.batchParallelism = builder.batchParallelism;
+        this.pollingConcurrency = builder.pollingConcurrency;
+        this.pollingRequestsPerSecond = builder.pollingRequestsPerSecond;
+        this.pollingIntervalMinutes = builder.pollingIntervalMinutes;
+        this.pollingStrategy = builder.pollingStrategy != null ? builder.pollingStrategy : new AllCitiesPollingStrategy();
+        this.groupPolling = builder.groupPolling;
+        this.pollingJitter = builder.pollingJitter;
+        this.warmUpCities = builder.warmUpCities;
+        this.warmUpFile = builder.warmUpFile;
+        this.warmUpCitiesPerSecond = builder.warmUpCitiesPerSecond;
+        this.geocodingStorePath = builder.geocodingStorePath;
+        this.sharedCachePath = builder.sharedCachePath;
+        this.sharedCacheSlots = builder.sharedCacheSlots;
+        this.coordinateLookupRadiusKm = builder.coordinateLookupRadiusKm;
+        this.baseUrl = builder.baseUrl;
+        this.jmxEnabled = builder.jmxEnabled;
+        this.maxStaleAge = builder.maxStaleAge;
+        this.staleWhileRevalidate = builder.staleWhileRevalidate;
+        this.circuitBreakerFailureThreshold = builder.circuitBreakerFailureThreshold;
+        this.circuitBreakerOpenDuration = builder.circuitBreakerOpenDuration;
+        this.requestTimeout = builder.requestTimeout;
+        this.hedgePercentile = builder.hedgePercentile;
+        this.quotaCallsPerMinute = builder.quotaCallsPerMinute;
+        this.quotaCallsPerDay = builder.quotaCallsPerDay;
+        this.forecastHorizon = builder.forecastHorizon;
+        this.observationRefresh = builder.observationRefresh;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static WeatherSDKConfig defaults() {
+        return builder().build();
+    }
+
+    public CacheService.Builder getCache() {
+        return cache;
+    }
+
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    public int getPollingConcurrency() {
+        return pollingConcurrency;
+    }
+
+    public double getPollingRequestsPerSecond() {
+        return pollingRequestsPerSecond;
+    }
+
+    public long getPollingIntervalMinutes() {
+        return pollingIntervalMinutes;
+    }
+
+    public PollingStrategy getPollingStrategy() {
+        return pollingStrategy;
+    }
+
+    public boolean isGroupPolling() {
+        return groupPolling;
+    }
+
+    // 0 - опрос обходами всех городов раз в интервал
+    public double getPollingJitter() {
+        return pollingJitter;
+    }
+
+    public List<String> getWarmUpCities() {
+        return warmUpCities;
+    }
+
+    public Path getWarmUpFile() {
+        return warmUpFile;
+    }
+
+    public double getWarmUpCitiesPerSecond() {
+        return warmUpCitiesPerSecond;
+    }
+
+    public Path getGeocodingStorePath() {
+        return geocodingStorePath;
+    }
+
+    public Path getSharedCachePath() {
+        return sharedCachePath;
+    }
+
+    public int getSharedCacheSlots() {
+        return sharedCacheSlots;
+    }
+
+    public double getCoordinateLookupRadiusKm() {
+        return coordinateLookupRadiusKm;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    public Duration getMaxStaleAge() {
+        return maxStaleAge;
+    }
+
+    public boolean isStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    public int getCircuitBreakerFailureThreshold() {
+        return circuitBreakerFailureThreshold;
+    }
+
+    public Duration getCircuitBreakerOpenDuration() {
+        return circuitBreakerOpenDuration;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public int getQuotaCallsPerMinute() {
+        return quotaCallsPerMinute;
+    }
+
+    public long getQuotaCallsPerDay() {
+        return quotaCallsPerDay;
+    }
+
+    // null - прогноз не используется
+    public Duration getForecastHorizon() {
+        return forecastHorizon;
+    }
+
+    public Duration getObservationRefresh() {
+        return observationRefresh;
+    }
+
+    public static class Builder {
+        private CacheService.Builder cache = CacheService.builder();
+        private int batchParallelism = DEFAULT_BATCH_PARALLELISM;
+        private int pollingConcurrency = PollingService.DEFAULT_CONCURRENCY;
+        private double pollingRequestsPerSecond = PollingService.DEFAULT_REQUESTS_PER_SECOND;
+        private long pollingIntervalMinutes = DEFAULT_POLLING_INTERVAL_MINUTES;
+        private PollingStrategy pollingStrategy;
+        private boolean groupPolling;
+        private double pollingJitter;
+        private List<String> warmUpCities = List.of();
+        private Path warmUpFile;
+        private double warmUpCitiesPerSecond = DEFAULT_WARM_UP_CITIES_PER_SECOND;
+        private Path geocodingStorePath;
+        private Path sharedCachePath;
+        private int sharedCacheSlots = SharedWeatherCache.DEFAULT_SLOTS;
+        private double coordinateLookupRadiusKm = DEFAULT_COORDINATE_LOOKUP_RADIUS_KM;
+        private String baseUrl = OpenWeatherMapRequestsService.DEFAULT_BASE_URL;
+        private boolean jmxEnabled;
+        private Duration maxStaleAge = Duration.ZERO;
+        private boolean staleWhileRevalidate;
+        private int circuitBreakerFailureThreshold = CircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+        private Duration circuitBreakerOpenDuration = CircuitBreaker.DEFAULT_OPEN_DURATION;
+        private Duration requestTimeout = OpenWeatherMapRequestsService.DEFAULT_REQUEST_TIMEOUT;
+        private double hedgePercentile;
+        private int quotaCallsPerMinute;
+        private long quotaCallsPerDay;
+        private Duration forecastHorizon;
+        private Duration observationRefresh;
+
+        private Builder() {
+        }
+
+        public Builder cache(CacheService.Builder cache) {
+            if (cache == null) {
+                throw new IllegalArgumentException("cache cannot be null");
+            }
+            this.cache = cache;
+            return this;
+        }
+
+        public Builder batchParallelism(int batchParallelism) {
+            if (batchParallelism <= 0) {
+                throw new IllegalArgumentException("batchParallelism must be positive");
+            }
+            this.batchParallelism = batchParallelism;
+            return this;
+        }
+
+        public Builder pollingConcurrency(int pollingConcurrency) {
+            if (pollingConcurrency <= 0) {
+                throw new IllegalArgumentException("pollingConcurrency must be positive");
+            }
+            this.pollingConcurrency = pollingConcurrency;
+            return this;
+        }
+
+        // Должно соответствовать лимиту тарифа OpenWeatherMap (например, 60 вызовов в минуту = 1 в секунду)
+        public Builder pollingRequestsPerSecond(double pollingRequestsPerSecond) {
+            if (pollingRequestsPerSecond <= 0) {
+                throw new IllegalArgumentException("pollingRequestsPerSecond must be positive");
+            }
+            this.pollingRequestsPerSecond = pollingRequestsPerSecond;
+            return this;
+        }
+
+        public Builder pollingIntervalMinutes(long pollingIntervalMinutes) {
+            if (pollingIntervalMinutes <= 0) {
+                throw new IllegalArgumentException("pollingIntervalMinutes must be positive");
+            }
+            this.pollingIntervalMinutes = pollingIntervalMinutes;
+            return this;
+        }
+
+        public Builder pollingStrategy(PollingStrategy pollingStrategy) {
+            if (pollingStrategy == null) {
+                throw new IllegalArgumentException("pollingStrategy cannot be null");
+            }
+            this.pollingStrategy = pollingStrategy;
+            return this;
+        }
+
+        // Вместо обхода всех городов раз в интервал у каждого города свой срок обновления: первый - случайный
+        // в пределах интервала, следующие - через интервал +-10%, после ошибки - раньше, с нарастающей паузой
+        public Builder spreadPolling() {
+            return spreadPolling(PollingService.DEFAULT_JITTER);
+        }
+
+        // jitter - доля интервала, на которую случайно сдвигается каждый следующий срок, (0, 1]
+        public Builder spreadPolling(double jitter) {
+            if (jitter <= 0 || jitter > 1) {
+                throw new IllegalArgumentException("jitter must be in (0, 1]");
+            }
+            this.pollingJitter = jitter;
+            return this;
+        }
+
+        // Опрос обновляет до 20 городов одним запросом group API 2.5 (один вызов квоты и один токен pollingRequestsPerSecond
+        // на пачку). Идентификатор города OpenWeatherMap узнается первым обновлением места; если тариф ключа не дает
+        // доступа к API 2.5, опрос сам возвращается к вызову One Call на каждый город. Прогноз forecastServing
+        // приходит только из One Call, поэтому вместе с ним пакетный опрос не используется
+        public Builder groupPolling(boolean groupPolling) {
+            this.groupPolling = groupPolling;
+            return this;
+        }
+
+        // Города, которые SDK загружает в кэш сразу после создания (ход и готовность - WeatherSDK.getWarmUp)
+        public Builder warmUp(Collection<String> cities) {
+            if (cities == null) {
+                throw new IllegalArgumentException("cities cannot be null");
+            }
+            this.warmUpCities = List.copyOf(cities);
+            return this;
+        }
+
+        // Файл со списком городов для прогрева: один город на строку, # - комментарий. Читается при создании SDK
+        public Builder warmUp(Path file) {
+            this.warmUpFile = file;
+            return this;
+        }
+
+        public Builder warmUpCitiesPerSecond(double warmUpCitiesPerSecond) {
+            if (warmUpCitiesPerSecond <= 0) {
+                throw new IllegalArgumentException("warmUpCitiesPerSecond must be positive");
+            }
+            this.warmUpCitiesPerSecond = warmUpCitiesPerSecond;
+            return this;
+        }
+
+        // Файл, в котором сохраняются результаты геокодирования между перезапусками; null - не сохранять
+        public Builder geocodingStore(Path geocodingStorePath) {
+            this.geocodingStorePath = geocodingStorePath;
+            return this;
+        }
+
+        // Файл, через который процессы на одном хосте делятся загруженной погодой; null - не делиться
+        public Builder sharedCache(Path sharedCachePath) {
+            this.sharedCachePath = sharedCachePath;
+            return this;
+        }
+
+        public Builder sharedCache(Path sharedCachePath, int slots) {
+            if (slots <= 0 || Integer.bitCount(slots) != 1) {
+                throw new IllegalArgumentException("slots must be a positive power of two");
+            }
+            this.sharedCachePath = sharedCachePath;
+            this.sharedCacheSlots = slots;
+            return this;
+        }
+
+        // Запрос по координатам обслуживается любой свежей записью в пределах этого радиуса
+        public Builder coordinateLookupRadiusKm(double coordinateLookupRadiusKm) {
+            if (!(coordinateLookupRadiusKm > 0) || coordinateLookupRadiusKm > 1_000) {
+                throw new IllegalArgumentException("coordinateLookupRadiusKm must be in (0, 1000]");
+            }
+            this.coordinateLookupRadiusKm = coordinateLookupRadiusKm;
+            return this;
+        }
+
+        // Адрес API OpenWeatherMap; для нагрузочных тестов - локальная заглушка
+        public Builder baseUrl(String baseUrl) {
+            if (baseUrl == null || !(baseUrl.startsWith("http://") || baseUrl.startsWith("https://"))) {
+                throw new IllegalArgumentException("baseUrl must be an http:// or https:// URL");
+            }
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        // Публиковать ли метрики SDK как MBean в платформенном MBeanServer. По умолчанию выключено: MBean держит
+        // ссылку на SDK до shutDown, и SDK, которые забыли остановить, не собирались бы сборщиком мусора
+        public Builder jmxEnabled(boolean jmxEnabled) {
+            this.jmxEnabled = jmxEnabled;
+            return this;
+        }
+
+        // Максимальный возраст данных, которые можно отдать, если свежие получить не удалось
+        // (ошибка или разомкнутый автомат); Duration.ZERO - устаревшие данные не отдаются
+        public Builder serveStale(Duration maxStaleAge) {
+            if (maxStaleAge == null || maxStaleAge.isNegative()) {
+                throw new IllegalArgumentException("maxStaleAge cannot be null or negative");
+            }
+            this.maxStaleAge = maxStaleAge;
+            return this;
+        }
+
+        // Устаревшая (но не старше serveStale) запись отдается сразу, а обновляется в фоне
+        public Builder staleWhileRevalidate(boolean staleWhileRevalidate) {
+            this.staleWhileRevalidate = staleWhileRevalidate;
+            return this;
+        }
+
+        public Builder circuitBreaker(int failureThreshold, Duration openDuration) {
+            if (failureThreshold <= 0) {
+                throw new IllegalArgumentException("failureThreshold must be positive");
+            }
+            if (openDuration == null || openDuration.isNegative() || openDuration.isZero()) {
+                throw new IllegalArgumentException("openDuration must be positive");
+            }
+            this.circuitBreakerFailureThreshold = failureThreshold;
+            this.circuitBreakerOpenDuration = openDuration;
+            return this;
+        }
+
+        // Бюджет времени одного вызова SDK на все обращения к API (геокодирование и погода)
+        public Builder requestTimeout(Duration requestTimeout) {
+            if (requestTimeout == null || requestTimeout.isNegative() || requestTimeout.isZero()) {
+                throw new IllegalArgumentException("requestTimeout must be positive");
+            }
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        // Дублирующий запрос, если ответа нет дольше заданного перцентиля задержек (например, 95); 0 - выключено
+        public Builder hedgeAtPercentile(double hedgePercentile) {
+            if (!(hedgePercentile >= 0 && hedgePercentile < 100)) {
+                throw new IllegalArgumentException("hedgePercentile must be in [0, 100)");
+            }
+            this.hedgePercentile = hedgePercentile;
+            return this;
+        }
+
+        // Лимиты тарифа ключа (например, 60 в минуту и 1000 в сутки); 0 - без ограничения
+        public Builder quota(int callsPerMinute, long callsPerDay) {
+            if (callsPerMinute < 0 || callsPerDay < 0) {
+                throw new IllegalArgumentException("call limits cannot be negative");
+            }
+            this.quotaCallsPerMinute = callsPerMinute;
+            this.quotaCallsPerDay = callsPerDay;
+            return this;
+        }
+
+        // Запрос погоды приносит и почасовой прогноз; в пределах horizon от запроса погода в месте вычисляется
+        // по прогнозу на текущий момент, а следующий запрос уходит через horizon
+        public Builder forecastServing(Duration horizon) {
+            return forecastServing(horizon, horizon);
+        }
+
+        // observationRefresh - не реже этого интервала прогноз заменяется свежим наблюдением, даже если горизонт не исчерпан
+        public Builder forecastServing(Duration horizon, Duration observationRefresh) {
+            if (horizon == null || horizon.isNegative() || horizon.isZero() || horizon.compareTo(MAX_FORECAST_HORIZON) > 0) {
+                throw new IllegalArgumentException("forecast horizon must be positive and at most " + MAX_FORECAST_HORIZON);
+            }
+            if (observationRefresh == null || observationRefresh.isNegative() || observationRefresh.isZero()) {
+                throw new IllegalArgumentException("observationRefresh must be positive");
+            }
+            this.forecastHorizon = horizon;
+            this.observationRefresh = observationRefresh;
+            return this;
+        }
+
+        public WeatherSDKConfig build() {
+            if (staleWhileRevalidate && maxStaleAge.isZero()) {
+                throw new IllegalArgumentException("staleWhileRevalidate requires serveStale(maxStaleAge)");
+            }
+            // При spreadPolling обходов нет, и стратегия обхода молча не применялась бы
+            if (pollingStrategy != null && pollingJitter > 0) {
+                throw new IllegalArgumentException("pollingStrategy cannot be combined with spreadPolling");
+            }
+            return new WeatherSDKConfig(this);
+        }
+    }
+}
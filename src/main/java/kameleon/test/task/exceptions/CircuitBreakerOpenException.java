@@ -0,0 +1,10 @@
+package kameleon.test.task.exceptions;
+
+import java.io.IOException;
+
+// Запрос в OpenWeatherMap не выполнялся: после серии ошибок автомат разомкнут
+public class CircuitBreakerOpenException extends IOException {
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package kameleon.test.task.exceptions;
+
+import java.io.IOException;
+
+// Запрос в OpenWeatherMap не выполнялся: квота ключа исчерпана, действует пауза после 429
+// или запрос низкого приоритета отброшен, чтобы сохранить остаток квоты
+public class QuotaExceededException extends IOException {
+    public QuotaExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,18 @@
+package kameleon.test.task.exceptions;
+
+import java.io.IOException;
+import java.time.Duration;
+
+// OpenWeatherMap ответил 429: лимит запросов ключа исчерпан; retryAfter - из заголовка Retry-After, если он был
+public class RateLimitedException extends IOException {
+    private final Duration retryAfter;
+
+    public RateLimitedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
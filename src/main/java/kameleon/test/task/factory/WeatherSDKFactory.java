@@ -1,13 +1,19 @@
 package kameleon.test.task.factory;
 
+import kameleon.test.task.config.WeatherSDKConfig;
 import kameleon.test.task.modes.Mode;
+import kameleon.test.task.services.SharedResources;
 import kameleon.test.task.services.WeatherSDK;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 public final class WeatherSDKFactory {
     private static final WeatherSDKFactory INSTANCE = new WeatherSDKFactory();
     private final ConcurrentHashMap<String, WeatherSDK> instances = new ConcurrentHashMap<>();
+    // Общие ресурсы создаются с первым SDK и закрываются вместе с последним
+    private SharedResources.Builder sharedResourcesSettings = SharedResources.builder();
+    private SharedResources sharedResources;
 
     private WeatherSDKFactory() {
     }
@@ -17,6 +23,13 @@ public final class WeatherSDKFactory {
     }
 
     public WeatherSDK getNewWeatherSDK(String apiKey, Mode mode) {
+        return getNewWeatherSDK(apiKey, mode, WeatherSDKConfig.defaults());
+    }
+
+    public WeatherSDK getNewWeatherSDK(String apiKey, Mode mode, WeatherSDKConfig config) {
+        if (config == null) {
+            throw new IllegalArgumentException("config cannot be null");
+        }
         return instances.computeIfAbsent(apiKey, key -> {
             if (apiKey == null || apiKey.isEmpty()) {
                 throw new IllegalArgumentException("apiKey cannot be null or empty");
@@ -24,10 +37,36 @@ public final class WeatherSDKFactory {
             if (instances.containsKey(apiKey)) {
                 throw new IllegalArgumentException("apiKey " + apiKey + " already exists");
             }
-            return new WeatherSDK(apiKey, mode);
+            SharedResources resources = retainSharedResources();
+            try {
+                return new WeatherSDK(apiKey, mode, config, resources);
+            } catch (RuntimeException e) {
+                resources.release();
+                throw e;
+            }
         });
     }
 
+    private synchronized SharedResources retainSharedResources() {
+        if (sharedResources == null || !sharedResources.retain()) {
+            sharedResources = sharedResourcesSettings.build();
+            sharedResources.retain();
+        }
+        return sharedResources;
+    }
+
+    // Настройки общего HTTP-клиента и кэша геокодирования; применяются, когда ресурсы создаются заново,
+    // т.е. пока у фабрики нет ни одного SDK
+    public synchronized void configureSharedResources(SharedResources.Builder settings) {
+        if (settings == null) {
+            throw new IllegalArgumentException("settings cannot be null");
+        }
+        if (sharedResources != null && !sharedResources.isClosed()) {
+            throw new IllegalStateException("Shared resources are in use by " + sharedResources.getReferenceCount() + " SDK instances");
+        }
+        this.sharedResourcesSettings = settings;
+    }
+
     public WeatherSDK getWeatherSDK(String apiKey) {
         if (apiKey == null || apiKey.isEmpty()) {
             throw new IllegalArgumentException("apiKey cannot be null or empty");
@@ -35,6 +74,14 @@ public final class WeatherSDKFactory {
         return instances.get(apiKey);
     }
 
+    // Завершается, когда закончен прогрев кэша (WeatherSDKConfig.warmUp) всех созданных на этот момент SDK -
+    // например, для проверки готовности сервиса
+    public CompletableFuture<Void> getReadiness() {
+        return CompletableFuture.allOf(instances.values().stream()
+                .map(sdk -> sdk.getWarmUp().getReadiness())
+                .toArray(CompletableFuture[]::new));
+    }
+
     public void deleteWeatherSDK(String apiKey) {
         if (apiKey == null || apiKey.isEmpty()) {
             throw new IllegalArgumentException("apiKey cannot be null or empty");
@@ -0,0 +1,31 @@
+package kameleon.test.task.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Счетчики HTTP-статусов ответов; статус 0 - запрос завершился без ответа (таймаут, обрыв соединения)
+public final class StatusCodeCounter {
+    private static final int MAX_STATUS = 600;
+
+    private final AtomicLongArray counts = new AtomicLongArray(MAX_STATUS);
+
+    public void record(int status) {
+        counts.incrementAndGet(status > 0 && status < MAX_STATUS ? status : 0);
+    }
+
+    public long getCount(int status) {
+        return status >= 0 && status < MAX_STATUS ? counts.get(status) : 0;
+    }
+
+    public Map<Integer, Long> getCounts() {
+        Map<Integer, Long> result = new TreeMap<>();
+        for (int status = 0; status < MAX_STATUS; status++) {
+            long count = counts.get(status);
+            if (count > 0) {
+                result.put(status, count);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,71 @@
+package kameleon.test.task.metrics;
+
+import java.util.Map;
+
+// Метрики экземпляра WeatherSDK, публикуемые через JMX как kameleon.test.task:type=WeatherSDK,name=...
+public interface WeatherSDKMetricsMXBean {
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getCacheHitRatio();
+
+    long getCacheEvictions();
+
+    int getCacheSize();
+
+    long getStaleResponses();
+
+    String getCircuitBreakerState();
+
+    long getRateLimitedResponses();
+
+    long getShedRequests();
+
+    long getQuotaRemainingToday();
+
+    long getForecastResponses();
+
+    int getChangeSubscribers();
+
+    long getDroppedChangeEvents();
+
+    long getHedgedRequests();
+
+    long getGeocodingRequests();
+
+    double getGeocodingLatencyP50Millis();
+
+    double getGeocodingLatencyP99Millis();
+
+    double getGeocodingLatencyMaxMillis();
+
+    long getWeatherRequests();
+
+    double getWeatherLatencyP50Millis();
+
+    double getWeatherLatencyP99Millis();
+
+    double getWeatherLatencyMaxMillis();
+
+    Map<Integer, Long> getUpstreamStatusCounts();
+
+    double getSerializationP50Micros();
+
+    double getSerializationP99Micros();
+
+    long getPollingSweeps();
+
+    double getPollingSweepDurationP99Millis();
+
+    double getPollingSweepDurationMaxMillis();
+
+    long getPollingRefreshes();
+
+    long getPollingFailures();
+
+    double getPollingStalenessP99Seconds();
+
+    double getMaxCachedAgeSeconds();
+}
@@ -0,0 +1,39 @@
+package kameleon.test.task.model;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class BatchWeatherResult {
+    private final Map<String, String> results;
+    private final Map<String, Exception> errors;
+
+    public BatchWeatherResult(Map<String, String> results, Map<String, Exception> errors) {
+        this.results = Collections.unmodifiableMap(results);
+        this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    public Map<String, String> getResults() {
+        return results;
+    }
+
+    public Map<String, Exception> getErrors() {
+        return errors;
+    }
+
+    public String getResult(String city) {
+        return results.get(city);
+    }
+
+    public Exception getError(String city) {
+        return errors.get(city);
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchWeatherResult{results=" + results.keySet() + ", errors=" + errors.keySet() + '}';
+    }
+}
@@ -0,0 +1,140 @@
+package kameleon.test.task.model;
+
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+// Минимальные изменения числовых полей, о которых стоит сообщать подписчику (например, температура на 0.5);
+// по умолчанию значимо любое изменение. Строковые поля и время восхода/заката сравниваются на равенство
+public final class ChangeThresholds {
+    public static final ChangeThresholds ANY_CHANGE = builder().build();
+
+    private final double temperature;
+    private final double feelsLike;
+    private final double windSpeed;
+    private final int visibility;
+
+    private ChangeThresholds(Builder builder) {
+        this.temperature = builder.temperature;
+        this.feelsLike = builder.feelsLike;
+        this.windSpeed = builder.windSpeed;
+        this.visibility = builder.visibility;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // Пустое множество - значимых изменений нет; previous == null - все поля новые
+    public Set<WeatherField> changedFields(CurrentWeather previous, CurrentWeather current) {
+        if (previous == null) {
+            return EnumSet.allOf(WeatherField.class);
+        }
+        Set<WeatherField> changed = EnumSet.noneOf(WeatherField.class);
+        if (!Objects.equals(main(previous), main(current))) {
+            changed.add(WeatherField.MAIN);
+        }
+        if (!Objects.equals(description(previous), description(current))) {
+            changed.add(WeatherField.DESCRIPTION);
+        }
+        if (exceeds(temp(previous), temp(current), temperature)) {
+            changed.add(WeatherField.TEMPERATURE);
+        }
+        if (exceeds(feelsLike(previous), feelsLike(current), feelsLike)) {
+            changed.add(WeatherField.FEELS_LIKE);
+        }
+        if (exceeds(previous.getVisibility(), current.getVisibility(), visibility)) {
+            changed.add(WeatherField.VISIBILITY);
+        }
+        if (exceeds(windSpeed(previous), windSpeed(current), windSpeed)) {
+            changed.add(WeatherField.WIND_SPEED);
+        }
+        if (sunrise(previous) != sunrise(current)) {
+            changed.add(WeatherField.SUNRISE);
+        }
+        if (sunset(previous) != sunset(current)) {
+            changed.add(WeatherField.SUNSET);
+        }
+        if (previous.getTimezone() != current.getTimezone()) {
+            changed.add(WeatherField.TIMEZONE);
+        }
+        return changed;
+    }
+
+    private static boolean exceeds(double previous, double current, double threshold) {
+        double delta = Math.abs(current - previous);
+        return delta > 0 && delta >= threshold;
+    }
+
+    private static String main(CurrentWeather weather) {
+        return weather.getWeather() == null ? null : weather.getWeather().getMain();
+    }
+
+    private static String description(CurrentWeather weather) {
+        return weather.getWeather() == null ? null : weather.getWeather().getDescription();
+    }
+
+    private static double temp(CurrentWeather weather) {
+        return weather.getTemperature() == null ? 0 : weather.getTemperature().getTemp();
+    }
+
+    private static double feelsLike(CurrentWeather weather) {
+        return weather.getTemperature() == null ? 0 : weather.getTemperature().getFeelsLike();
+    }
+
+    private static double windSpeed(CurrentWeather weather) {
+        return weather.getWind() == null ? 0 : weather.getWind().getWindSpeed();
+    }
+
+    private static long sunrise(CurrentWeather weather) {
+        return weather.getSys() == null ? 0 : weather.getSys().getSunrise();
+    }
+
+    private static long sunset(CurrentWeather weather) {
+        return weather.getSys() == null ? 0 : weather.getSys().getSunset();
+    }
+
+    public static class Builder {
+        private double temperature;
+        private double feelsLike;
+        private double windSpeed;
+        private int visibility;
+
+        private Builder() {
+        }
+
+        public Builder temperature(double temperature) {
+            this.temperature = nonNegative(temperature, "temperature");
+            return this;
+        }
+
+        public Builder feelsLike(double feelsLike) {
+            this.feelsLike = nonNegative(feelsLike, "feelsLike");
+            return this;
+        }
+
+        public Builder windSpeed(double windSpeed) {
+            this.windSpeed = nonNegative(windSpeed, "windSpeed");
+            return this;
+        }
+
+        public Builder visibility(int visibility) {
+            if (visibility < 0) {
+                throw new IllegalArgumentException("visibility threshold cannot be negative");
+            }
+            this.visibility = visibility;
+            return this;
+        }
+
+        private static double nonNegative(double threshold, String field) {
+            if (!(threshold >= 0)) {
+                throw new IllegalArgumentException(field + " threshold cannot be negative");
+            }
+            return threshold;
+        }
+
+        public ChangeThresholds build() {
+            return new ChangeThresholds(this);
+        }
+    }
+}
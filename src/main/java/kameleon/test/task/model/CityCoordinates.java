@@ -1,14 +1,24 @@
 package kameleon.test.task.model;
 
+import java.util.List;
+import java.util.Locale;
+
 public class CityCoordinates {
     private final String cityName;
     private final double latitude;
     private final double longitude;
+    private final List<String> localNames;
+    private String locationId;
 
     public CityCoordinates(String cityName, double latitude, double longitude) {
+        this(cityName, latitude, longitude, List.of());
+    }
+
+    public CityCoordinates(String cityName, double latitude, double longitude, List<String> localNames) {
         this.cityName = cityName;
         this.latitude = latitude;
         this.longitude = longitude;
+        this.localNames = List.copyOf(localNames);
     }
 
     public String getCityName() {
@@ -22,4 +32,33 @@ public class CityCoordinates {
     public double getLongitude() {
         return longitude;
     }
+
+    // Названия города на других языках из ответа геокодера (local_names); в кэше не хранятся
+    public List<String> getLocalNames() {
+        return localNames;
+    }
+
+    // Канонический идентификатор места: координаты с точностью ~10 м, одинаковые для всех вариантов написания
+    public String getLocationId() {
+        // Вычисляется на каждом обращении к кэшу, поэтому форматируется один раз (гонка безвредна)
+        String result = locationId;
+        if (result == null) {
+            result = format(latitude, longitude);
+            locationId = result;
+        }
+        return result;
+    }
+
+    public static String format(double latitude, double longitude) {
+        return String.format(Locale.ROOT, "%.4f,%.4f", latitude, longitude);
+    }
+
+    public CityCoordinates withoutLocalNames() {
+        return localNames.isEmpty() ? this : new CityCoordinates(cityName, latitude, longitude);
+    }
+
+    @Override
+    public String toString() {
+        return "CityCoordinates{cityName='" + cityName + "', latitude=" + latitude + ", longitude=" + longitude + '}';
+    }
 }
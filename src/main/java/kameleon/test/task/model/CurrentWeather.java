@@ -42,7 +42,7 @@ public class CurrentWeather {
         this.sys = builder.sys;
         this.timezone = builder.timezone;
         this.cityName = builder.cityName;
-        this.timestamp = LocalDateTime.now();
+        this.timestamp = builder.timestamp != null ? builder.timestamp : LocalDateTime.now();
     }
 
     public Weather getWeather() {
@@ -108,6 +108,7 @@ public class CurrentWeather {
         private Sys sys;
         private int timezone;
         private String cityName;
+        private LocalDateTime timestamp;
 
         private Builder() {
         }
@@ -152,6 +153,12 @@ public class CurrentWeather {
             return this;
         }
 
+        // Момент получения данных, если снимок восстанавливается не из свежего ответа API
+        public Builder timestamp(LocalDateTime timestamp) {
+            this.timestamp = timestamp;
+            return this;
+        }
+
         public CurrentWeather build() {
             return new CurrentWeather(this);
         }
@@ -0,0 +1,56 @@
+package kameleon.test.task.model;
+
+import java.time.Duration;
+import java.time.Instant;
+
+public class PollingSweepReport {
+    private final Instant startedAt;
+    private final Duration duration;
+    private final int cities;
+    private final int refreshed;
+    private final int failed;
+    private final boolean overran;
+
+    public PollingSweepReport(Instant startedAt, Duration duration, int cities, int refreshed, int failed, boolean overran) {
+        this.startedAt = startedAt;
+        this.duration = duration;
+        this.cities = cities;
+        this.refreshed = refreshed;
+        this.failed = failed;
+        this.overran = overran;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public int getCities() {
+        return cities;
+    }
+
+    public int getRefreshed() {
+        return refreshed;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public boolean isOverran() {
+        return overran;
+    }
+
+    @Override
+    public String toString() {
+        return "PollingSweepReport{startedAt=" + startedAt +
+                ", duration=" + duration +
+                ", cities=" + cities +
+                ", refreshed=" + refreshed +
+                ", failed=" + failed +
+                ", overran=" + overran + '}';
+    }
+}
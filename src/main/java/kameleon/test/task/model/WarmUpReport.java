@@ -0,0 +1,44 @@
+package kameleon.test.task.model;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+public class WarmUpReport {
+    private final Duration duration;
+    private final int cities;
+    private final int loaded;
+    private final Map<String, Exception> errors;
+
+    public WarmUpReport(Duration duration, int cities, int loaded, Map<String, Exception> errors) {
+        this.duration = duration;
+        this.cities = cities;
+        this.loaded = loaded;
+        this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public int getCities() {
+        return cities;
+    }
+
+    public int getLoaded() {
+        return loaded;
+    }
+
+    public int getFailed() {
+        return errors.size();
+    }
+
+    public Map<String, Exception> getErrors() {
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUpReport{duration=" + duration + ", cities=" + cities + ", loaded=" + loaded + ", failed=" + errors.keySet() + '}';
+    }
+}
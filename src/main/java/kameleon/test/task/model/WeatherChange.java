@@ -0,0 +1,46 @@
+package kameleon.test.task.model;
+
+import java.util.Collections;
+import java.util.Set;
+
+// Событие подписки: погода в месте изменилась по сравнению с последним событием, доставленным этому подписчику
+public final class WeatherChange {
+    private final String locationId;
+    private final CurrentWeather previous;
+    private final WeatherSnapshot current;
+    private final Set<WeatherField> changedFields;
+
+    public WeatherChange(String locationId, CurrentWeather previous, WeatherSnapshot current, Set<WeatherField> changedFields) {
+        this.locationId = locationId;
+        this.previous = previous;
+        this.current = current;
+        this.changedFields = Collections.unmodifiableSet(changedFields);
+    }
+
+    public String getLocationId() {
+        return locationId;
+    }
+
+    // null - первое событие по этому месту для подписчика
+    public CurrentWeather getPrevious() {
+        return previous;
+    }
+
+    public CurrentWeather getCurrent() {
+        return current.getCurrentWeather();
+    }
+
+    // Тот же сериализованный снимок, что лежит в кэше: повторной сериализации нет
+    public WeatherSnapshot getSnapshot() {
+        return current;
+    }
+
+    public Set<WeatherField> getChangedFields() {
+        return changedFields;
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherChange{locationId='" + locationId + "', changedFields=" + changedFields + ", current=" + getCurrent() + '}';
+    }
+}
@@ -0,0 +1,15 @@
+package kameleon.test.task.model;
+
+// Поля CurrentWeather, изменения которых отслеживают подписки; datetime и момент получения меняются
+// при каждом обновлении и изменением не считаются
+public enum WeatherField {
+    MAIN,
+    DESCRIPTION,
+    TEMPERATURE,
+    FEELS_LIKE,
+    VISIBILITY,
+    WIND_SPEED,
+    SUNRISE,
+    SUNSET,
+    TIMEZONE
+}
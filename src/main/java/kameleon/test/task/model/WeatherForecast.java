@@ -0,0 +1,80 @@
+package kameleon.test.task.model;
+
+import java.util.List;
+
+// Ответ One Call с почасовым прогнозом: текущее наблюдение и следующие часы (до 48)
+public final class WeatherForecast {
+    private final CurrentWeather current;
+    private final List<Hour> hourly;
+
+    public WeatherForecast(CurrentWeather current, List<Hour> hourly) {
+        this.current = current;
+        this.hourly = List.copyOf(hourly);
+    }
+
+    public CurrentWeather getCurrent() {
+        return current;
+    }
+
+    public List<Hour> getHourly() {
+        return hourly;
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherForecast{current=" + current + ", hours=" + hourly.size() + '}';
+    }
+
+    public static final class Hour {
+        private final long datetime;
+        private final double temp;
+        private final double feelsLike;
+        private final int visibility;
+        private final double windSpeed;
+        private final String main;
+        private final String description;
+
+        public Hour(long datetime, double temp, double feelsLike, int visibility, double windSpeed, String main, String description) {
+            this.datetime = datetime;
+            this.temp = temp;
+            this.feelsLike = feelsLike;
+            this.visibility = visibility;
+            this.windSpeed = windSpeed;
+            this.main = main;
+            this.description = description;
+        }
+
+        public long getDatetime() {
+            return datetime;
+        }
+
+        public double getTemp() {
+            return temp;
+        }
+
+        public double getFeelsLike() {
+            return feelsLike;
+        }
+
+        public int getVisibility() {
+            return visibility;
+        }
+
+        public double getWindSpeed() {
+            return windSpeed;
+        }
+
+        public String getMain() {
+            return main;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public String toString() {
+            return "Hour{datetime=" + datetime + ", temp=" + temp + ", main='" + main + "'}";
+        }
+    }
+}
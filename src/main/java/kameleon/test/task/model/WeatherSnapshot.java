@@ -0,0 +1,64 @@
+package kameleon.test.task.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Снимок погоды вместе с уже сериализованным JSON: сериализация выполняется один раз при кэшировании,
+// а чтения из кэша только отдают готовые байты
+public final class WeatherSnapshot {
+    private static final ObjectWriter WRITER = new ObjectMapper().writerFor(CurrentWeather.class);
+
+    private final CurrentWeather currentWeather;
+    private final byte[] json;
+    private volatile String jsonString;
+
+    private WeatherSnapshot(CurrentWeather currentWeather, byte[] json) {
+        this.currentWeather = currentWeather;
+        this.json = json;
+    }
+
+    public static WeatherSnapshot of(CurrentWeather currentWeather) {
+        try {
+            return new WeatherSnapshot(currentWeather, WRITER.writeValueAsBytes(currentWeather));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public CurrentWeather getCurrentWeather() {
+        return currentWeather;
+    }
+
+    public String toJson() {
+        String result = jsonString;
+        if (result == null) {
+            result = new String(json, StandardCharsets.UTF_8);
+            jsonString = result;
+        }
+        return result;
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(json);
+    }
+
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(json).asReadOnlyBuffer();
+    }
+
+    public int getJsonLength() {
+        return json.length;
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherSnapshot{" + currentWeather + '}';
+    }
+}
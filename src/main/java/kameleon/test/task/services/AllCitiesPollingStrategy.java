@@ -0,0 +1,14 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.model.CityCoordinates;
+
+import java.time.Duration;
+import java.util.Map;
+
+public class AllCitiesPollingStrategy implements PollingStrategy {
+
+    @Override
+    public Map<String, CityCoordinates> selectCitiesToRefresh(CacheService cacheService, Duration pollingInterval) {
+        return cacheService.getCachedCityCoordinates();
+    }
+}
@@ -1,61 +1,539 @@
 package kameleon.test.task.services;
 
+import kameleon.test.task.metrics.LatencyHistogram;
 import kameleon.test.task.model.CityCoordinates;
 import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.model.WeatherSnapshot;
 
-import java.util.Comparator;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class CacheService {
-    private static final int MAX_SIZE = 10;
-    private final Map<String, CurrentWeather> cachedCurrentWeather;
-    private final Map<String, CityCoordinates> cachedCityCoordinates;
+    public static final long DEFAULT_MAXIMUM_SIZE = 10;
+    public static final Duration DEFAULT_FRESHNESS = Duration.ofMinutes(10);
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    private static final int MIN_SEGMENT_WEIGHT = 20;
+
+    private final ConcurrentHashMap<String, CacheEntry> entries;
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final Weigher weigher;
+    private final long freshnessNanos;
+    private final long expireAfterWriteNanos;
+    private final LongAdder evictions;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LatencyHistogram serializationTime;
+    // null - снимки хранятся объектами вместе с готовым JSON
+    private final CompactWeatherStore compactStore;
 
     public CacheService() {
-        this.cachedCurrentWeather = new ConcurrentHashMap<>();
-        this.cachedCityCoordinates = new ConcurrentHashMap<>();
+        this(builder());
+    }
+
+    private CacheService(Builder builder) {
+        int segmentCount = 1;
+        while (segmentCount < builder.concurrencyLevel && (long) segmentCount * 2 * MIN_SEGMENT_WEIGHT <= builder.maximumWeight) {
+            segmentCount <<= 1;
+        }
+        long segmentWeight = builder.maximumWeight / segmentCount;
+        long remainder = builder.maximumWeight % segmentCount;
+
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(segmentWeight + (i < remainder ? 1 : 0));
+        }
+        this.segmentMask = segmentCount - 1;
+        this.entries = new ConcurrentHashMap<>();
+        this.compactStore = builder.compact ? new CompactWeatherStore() : null;
+        this.weigher = builder.compact && builder.weighInBytes ? CacheService::estimateCompactSizeInBytes : builder.weigher;
+        this.freshnessNanos = builder.freshness.toNanos();
+        this.expireAfterWriteNanos = builder.expireAfterWrite == null ? 0 : builder.expireAfterWrite.toNanos();
+        this.evictions = new LongAdder();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.serializationTime = new LatencyHistogram();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private Segment segmentFor(String city) {
+        int hash = city.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & segmentMask];
+    }
+
+    public WeatherSnapshot cache(CurrentWeather currentWeather, CityCoordinates cityCoordinates) {
+        return cache(currentWeather.getCityName(), currentWeather, cityCoordinates);
+    }
+
+    // Явный ключ позволяет хранить город под каноническим идентификатором места, а не под введенным именем
+    public WeatherSnapshot cache(String city, CurrentWeather currentWeather, CityCoordinates cityCoordinates) {
+        WeatherSnapshot snapshot = serialize(currentWeather);
+        put(city, newEntry(city, currentWeather, snapshot, cityCoordinates));
+        return snapshot;
     }
 
-    // конечно, можно реализовать более элегантоно, но поскольку кэш максимум 10 элементов, то кмк O(n) здесь приемлимо
-    private String findOldestEntry() {
-        return cachedCurrentWeather.entrySet().stream()
-                .min(Comparator.comparing(entry -> entry.getValue().getTimestamp()))
-                .map(Map.Entry::getKey)
-                .orElse(null);
+    // Обновление уже закэшированного города (например, из PollingService); вытесненные города не воскрешаем
+    public WeatherSnapshot cache(CurrentWeather currentWeather, String city) {
+        CacheEntry existing = entries.get(city);
+        if (existing == null) {
+            return null;
+        }
+        CityCoordinates cityCoordinates = existing.cityCoordinates;
+        WeatherSnapshot snapshot = serialize(currentWeather);
+        put(city, newEntry(city, currentWeather, snapshot, cityCoordinates));
+        return snapshot;
+    }
+
+    private CacheEntry newEntry(String city, CurrentWeather currentWeather, WeatherSnapshot snapshot, CityCoordinates cityCoordinates) {
+        int weight = weigher.weigh(currentWeather, cityCoordinates);
+        if (compactStore == null) {
+            return new CacheEntry(city, snapshot, -1, 0, currentWeather.getTimestamp(), cityCoordinates, weight);
+        }
+        int slot = compactStore.allocate();
+        long stamp = compactStore.write(slot, currentWeather, cityCoordinates == null ? null : cityCoordinates.getCityName());
+        return new CacheEntry(city, null, slot, stamp, currentWeather.getTimestamp(), cityCoordinates, weight);
     }
 
-    public synchronized void cache(CurrentWeather currentWeather, CityCoordinates cityCoordinates) {
-        String city = currentWeather.getCityName();
+    private void put(String city, CacheEntry entry) {
+        Segment segment = segmentFor(city);
+        segment.lock();
+        try {
+            CacheEntry previous = entries.put(city, entry);
+            if (previous != null) {
+                segment.order.remove(city);
+                segment.weight -= previous.weight;
+                release(previous);
+                // История обращений переживает обновление данных, но постепенно затухает
+                entry.accesses = previous.accesses / 2;
+                entry.lastAccessNanos = previous.lastAccessNanos;
+            }
+            segment.order.put(city, entry);
+            segment.weight += entry.weight;
+            evictIfNeeded(segment);
+        } finally {
+            segment.unlock();
+        }
+    }
 
-        if (!cachedCurrentWeather.containsKey(city) && cachedCurrentWeather.size() >= MAX_SIZE) {
-            String oldestKey = findOldestEntry();
-            if (oldestKey != null) {
-                cachedCurrentWeather.remove(oldestKey);
-                cachedCityCoordinates.remove(oldestKey);
+    // CLOCK (second chance): чтения только помечают запись, поэтому они не берут блокировку,
+    // а вытеснение остается O(1) амортизированно
+    private void evictIfNeeded(Segment segment) {
+        Iterator<CacheEntry> iterator = segment.order.values().iterator();
+        while (segment.weight > segment.maxWeight && iterator.hasNext()) {
+            CacheEntry candidate = iterator.next();
+            if (candidate.referenced && segment.order.size() > 1) {
+                candidate.referenced = false;
+                iterator.remove();
+                segment.order.put(candidate.city, candidate);
+                iterator = segment.order.values().iterator();
+                continue;
             }
+            iterator.remove();
+            entries.remove(candidate.city, candidate);
+            segment.weight -= candidate.weight;
+            release(candidate);
+            evictions.increment();
+        }
+    }
+
+    // Ячейка компактного хранилища освобождается под блокировкой сегмента, когда запись уходит из кэша
+    private void release(CacheEntry entry) {
+        if (entry.slot >= 0) {
+            compactStore.free(entry.slot);
+        }
+    }
+
+    // null - компактную ячейку записи уже заняли снова (запись вытеснена или обновлена во время чтения)
+    private CurrentWeather weatherOf(CacheEntry entry) {
+        return entry.snapshot != null ? entry.snapshot.getCurrentWeather() : compactStore.read(entry.slot, entry.stamp);
+    }
+
+    // В компактном режиме снимок собирается заново при каждом чтении; serializationTime меряет только записи,
+    // иначе в нем смешались бы записи и попадания в кэш
+    private WeatherSnapshot snapshotOf(CacheEntry entry) {
+        if (entry.snapshot != null) {
+            return entry.snapshot;
         }
-        cachedCurrentWeather.put(city, currentWeather);
-        cachedCityCoordinates.put(city, cityCoordinates);
+        CurrentWeather currentWeather = compactStore.read(entry.slot, entry.stamp);
+        return currentWeather == null ? null : WeatherSnapshot.of(currentWeather);
     }
 
-    public synchronized void cache(CurrentWeather currentWeather, String city) {
-        cachedCurrentWeather.put(city, currentWeather);
+    private CacheEntry getEntry(String city) {
+        CacheEntry entry = entries.get(city);
+        if (entry == null) {
+            return null;
+        }
+        if (expireAfterWriteNanos > 0 && System.nanoTime() - entry.writeNanos >= expireAfterWriteNanos) {
+            invalidate(city, entry);
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return entry;
+    }
+
+    private void invalidate(String city, CacheEntry entry) {
+        Segment segment = segmentFor(city);
+        segment.lock();
+        try {
+            if (entries.remove(city, entry)) {
+                segment.order.remove(city);
+                segment.weight -= entry.weight;
+                release(entry);
+            }
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    public void invalidate(String city) {
+        CacheEntry entry = entries.get(city);
+        if (entry != null) {
+            invalidate(city, entry);
+        }
     }
 
     public boolean containsKey(String city) {
-        return cachedCurrentWeather.containsKey(city);
+        return getEntry(city) != null;
+    }
+
+    // В отличие от containsKey не отмечает запись как использованную и не проверяет срок
+    boolean holds(String city) {
+        return entries.containsKey(city);
     }
 
     public CurrentWeather getCurrentWeather(String city) {
-        return cachedCurrentWeather.get(city);
+        CacheEntry entry = getEntry(city);
+        if (entry == null) {
+            return null;
+        }
+        entry.recordAccess();
+        return weatherOf(entry);
+    }
+
+    public CurrentWeather getFreshCurrentWeather(String city) {
+        WeatherSnapshot snapshot = getFreshSnapshot(city);
+        return snapshot == null ? null : snapshot.getCurrentWeather();
+    }
+
+    // Возвращает данные только если они моложе окна свежести
+    public WeatherSnapshot getFreshSnapshot(String city) {
+        CacheEntry entry = getEntry(city);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        entry.recordAccess();
+        WeatherSnapshot snapshot = System.nanoTime() - entry.writeNanos < freshnessNanos ? snapshotOf(entry) : null;
+        if (snapshot == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return snapshot;
+    }
+
+    // Данные не старше maxAge, даже если окно свежести уже прошло (для отдачи устаревших данных)
+    public WeatherSnapshot getSnapshot(String city, Duration maxAge) {
+        CacheEntry entry = getEntry(city);
+        if (entry == null || System.nanoTime() - entry.writeNanos >= maxAge.toNanos()) {
+            return null;
+        }
+        entry.recordAccess();
+        return snapshotOf(entry);
+    }
+
+    // Повторная проверка внутри SDK: не учитывается ни в статистике попаданий, ни в истории обращений
+    WeatherSnapshot peekFreshSnapshot(String city) {
+        CacheEntry entry = entries.get(city);
+        if (entry == null || System.nanoTime() - entry.writeNanos >= freshnessNanos) {
+            return null;
+        }
+        return snapshotOf(entry);
+    }
+
+    // Промах, выявленный до обращения к кэшу (например, место по имени города еще неизвестно)
+    void recordMiss() {
+        misses.increment();
+    }
+
+    // Возраст данных города в наносекундах или -1, если города нет в кэше
+    public long getAgeNanos(String city) {
+        CacheEntry entry = entries.get(city);
+        return entry == null ? -1 : System.nanoTime() - entry.writeNanos;
     }
 
     public CityCoordinates getCityCoordinates(String city) {
-        return cachedCityCoordinates.get(city);
+        CacheEntry entry = getEntry(city);
+        return entry == null ? null : entry.cityCoordinates;
+    }
+
+    // Без отметки обращения: опрос не должен удерживать город от вытеснения
+    CityCoordinates peekCityCoordinates(String city) {
+        CacheEntry entry = entries.get(city);
+        return entry == null ? null : entry.cityCoordinates;
     }
 
     public Map<String, CityCoordinates> getCachedCityCoordinates() {
-        return cachedCityCoordinates;
+        Map<String, CityCoordinates> snapshot = new HashMap<>(entries.size());
+        for (CacheEntry entry : entries.values()) {
+            snapshot.put(entry.city, entry.cityCoordinates);
+        }
+        return snapshot;
+    }
+
+    public List<CityStatistics> getCityStatistics() {
+        long now = System.nanoTime();
+        List<CityStatistics> statistics = new ArrayList<>(entries.size());
+        for (CacheEntry entry : entries.values()) {
+            statistics.add(new CityStatistics(entry.city, entry.cityCoordinates,
+                    Duration.ofNanos(now - entry.writeNanos), Duration.ofNanos(now - entry.lastAccessNanos), entry.accesses));
+        }
+        return statistics;
+    }
+
+    public Duration getFreshness() {
+        return Duration.ofNanos(freshnessNanos);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // -1 - хранилище не компактное
+    int getCompactSlotCount() {
+        return compactStore == null ? -1 : compactStore.getSlotCount();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public LatencyHistogram getSerializationTime() {
+        return serializationTime;
+    }
+
+    private WeatherSnapshot serialize(CurrentWeather currentWeather) {
+        long start = System.nanoTime();
+        WeatherSnapshot snapshot = WeatherSnapshot.of(currentWeather);
+        serializationTime.recordSince(start);
+        return snapshot;
+    }
+
+    @FunctionalInterface
+    public interface Weigher {
+        int weigh(CurrentWeather currentWeather, CityCoordinates cityCoordinates);
+    }
+
+    // Грубая оценка занимаемой памяти: заголовки объектов, поля и сериализованный JSON плюс символы строк
+    public static int estimateSizeInBytes(CurrentWeather currentWeather, CityCoordinates cityCoordinates) {
+        int size = 600;
+        size += length(currentWeather.getCityName()) * 2;
+        if (currentWeather.getWeather() != null) {
+            size += length(currentWeather.getWeather().getMain()) * 2;
+            size += length(currentWeather.getWeather().getDescription()) * 2;
+        }
+        if (cityCoordinates != null) {
+            size += length(cityCoordinates.getCityName()) * 2;
+        }
+        return size;
+    }
+
+    // Для компактного хранения: запись, узлы ConcurrentHashMap и LinkedHashMap, строка столбцов и координаты
+    public static int estimateCompactSizeInBytes(CurrentWeather currentWeather, CityCoordinates cityCoordinates) {
+        int size = 320;
+        if (cityCoordinates != null) {
+            size += length(cityCoordinates.getCityName()) * 2;
+        }
+        if (cityCoordinates == null || !Objects.equals(cityCoordinates.getCityName(), currentWeather.getCityName())) {
+            size += 40 + length(currentWeather.getCityName()) * 2;
+        }
+        return size;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static final class CacheEntry {
+        private final String city;
+        private final WeatherSnapshot snapshot;
+        // Ячейка и ее версия в компактном хранилище; slot = -1, если снимок хранится объектом
+        private final int slot;
+        private final long stamp;
+        private final CityCoordinates cityCoordinates;
+        private final int weight;
+        private final long writeNanos;
+        private volatile boolean referenced;
+        // Счетчик без CAS: потерянные инкременты при гонках допустимы, нужна лишь оценка частоты
+        private volatile int accesses;
+        private volatile long lastAccessNanos;
+
+        private CacheEntry(String city, WeatherSnapshot snapshot, int slot, long stamp, LocalDateTime fetchedAt,
+                           CityCoordinates cityCoordinates, int weight) {
+            this.city = city;
+            this.snapshot = snapshot;
+            this.slot = slot;
+            this.stamp = stamp;
+            this.cityCoordinates = cityCoordinates;
+            this.weight = weight;
+            // Возраст отсчитывается от момента получения данных, а не от момента помещения в кэш
+            long age = Duration.between(fetchedAt, LocalDateTime.now()).toNanos();
+            this.writeNanos = System.nanoTime() - Math.max(0, age);
+            this.referenced = true;
+            this.lastAccessNanos = writeNanos;
+        }
+
+        private void recordAccess() {
+            accesses++;
+            lastAccessNanos = System.nanoTime();
+        }
+    }
+
+    public static final class CityStatistics {
+        private final String city;
+        private final CityCoordinates cityCoordinates;
+        private final Duration age;
+        private final Duration idle;
+        private final int accesses;
+
+        private CityStatistics(String city, CityCoordinates cityCoordinates, Duration age, Duration idle, int accesses) {
+            this.city = city;
+            this.cityCoordinates = cityCoordinates;
+            this.age = age;
+            this.idle = idle;
+            this.accesses = accesses;
+        }
+
+        public String getCity() {
+            return city;
+        }
+
+        public CityCoordinates getCityCoordinates() {
+            return cityCoordinates;
+        }
+
+        public Duration getAge() {
+            return age;
+        }
+
+        public Duration getIdle() {
+            return idle;
+        }
+
+        public int getAccesses() {
+            return accesses;
+        }
+    }
+
+    private static final class Segment extends ReentrantLock {
+        private final LinkedHashMap<String, CacheEntry> order;
+        private final long maxWeight;
+        private long weight;
+
+        private Segment(long maxWeight) {
+            this.order = new LinkedHashMap<>();
+            this.maxWeight = maxWeight;
+        }
+    }
+
+    public static class Builder {
+        private long maximumWeight = DEFAULT_MAXIMUM_SIZE;
+        private Weigher weigher = (currentWeather, cityCoordinates) -> 1;
+        private Duration freshness = DEFAULT_FRESHNESS;
+        private Duration expireAfterWrite;
+        private int concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
+        private boolean weighInBytes;
+        private boolean compact;
+
+        private Builder() {
+        }
+
+        public Builder maximumSize(long maximumSize) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("maximumSize must be positive");
+            }
+            this.maximumWeight = maximumSize;
+            this.weigher = (currentWeather, cityCoordinates) -> 1;
+            this.weighInBytes = false;
+            return this;
+        }
+
+        public Builder maximumWeight(long maximumWeight, Weigher weigher) {
+            if (maximumWeight <= 0) {
+                throw new IllegalArgumentException("maximumWeight must be positive");
+            }
+            if (weigher == null) {
+                throw new IllegalArgumentException("weigher cannot be null");
+            }
+            this.maximumWeight = maximumWeight;
+            this.weigher = weigher;
+            this.weighInBytes = false;
+            return this;
+        }
+
+        // Оценка размера зависит от способа хранения (см. compact)
+        public Builder maximumWeightInBytes(long maximumBytes) {
+            maximumWeight(maximumBytes, CacheService::estimateSizeInBytes);
+            this.weighInBytes = true;
+            return this;
+        }
+
+        // Хранить погоду столбцами примитивов: в несколько раз меньше памяти и объектов для GC на больших кэшах,
+        // но каждое чтение заново собирает CurrentWeather и сериализует JSON
+        public Builder compact(boolean compact) {
+            this.compact = compact;
+            return this;
+        }
+
+        public Builder freshFor(Duration freshness) {
+            if (freshness == null || freshness.isNegative() || freshness.isZero()) {
+                throw new IllegalArgumentException("freshness must be positive");
+            }
+            this.freshness = freshness;
+            return this;
+        }
+
+        public Builder expireAfterWrite(Duration expireAfterWrite) {
+            if (expireAfterWrite != null && (expireAfterWrite.isNegative() || expireAfterWrite.isZero())) {
+                throw new IllegalArgumentException("expireAfterWrite must be positive");
+            }
+            this.expireAfterWrite = expireAfterWrite;
+            return this;
+        }
+
+        public Builder concurrencyLevel(int concurrencyLevel) {
+            if (concurrencyLevel <= 0) {
+                throw new IllegalArgumentException("concurrencyLevel must be positive");
+            }
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
+        public CacheService build() {
+            return new CacheService(this);
+        }
     }
 }
@@ -0,0 +1,94 @@
+package kameleon.test.task.services;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Автомат вокруг обращений к OpenWeatherMap: после failureThreshold ошибок подряд запросы не выполняются
+// openDuration, затем один пробный запрос решает, замкнуть автомат снова или продлить паузу
+public class CircuitBreaker {
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private final AtomicInteger state = new AtomicInteger(CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong openedAtNanos = new AtomicLong();
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold must be positive");
+        }
+        if (openDuration == null || openDuration.isNegative() || openDuration.isZero()) {
+            throw new IllegalArgumentException("openDuration must be positive");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+    }
+
+    // true - запрос можно выполнять; после него обязательно вызвать onSuccess, onFailure или onIgnored
+    public boolean tryAcquirePermission() {
+        int current = state.get();
+        if (current == CLOSED) {
+            return true;
+        }
+        if (current == OPEN && System.nanoTime() - openedAtNanos.get() >= openDurationNanos) {
+            return state.compareAndSet(OPEN, HALF_OPEN);
+        }
+        return false;
+    }
+
+    public void onSuccess() {
+        consecutiveFailures.set(0);
+        state.set(CLOSED);
+    }
+
+    public void onFailure() {
+        int current = state.get();
+        // Ответ на запрос, начатый до размыкания: пауза отсчитывается от размыкания и не продлевается
+        if (current == OPEN) {
+            return;
+        }
+        if (current == HALF_OPEN) {
+            open(HALF_OPEN);
+            return;
+        }
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            open(CLOSED);
+        }
+    }
+
+    // Пробный запрос прерван без ответа: разрешаем следующий пробный запрос сразу
+    public void onIgnored() {
+        if (state.get() == HALF_OPEN) {
+            openedAtNanos.set(System.nanoTime() - openDurationNanos);
+            state.compareAndSet(HALF_OPEN, OPEN);
+        }
+    }
+
+    private void open(int expected) {
+        openedAtNanos.set(System.nanoTime());
+        state.compareAndSet(expected, OPEN);
+    }
+
+    public State getState() {
+        return switch (state.get()) {
+            case OPEN -> State.OPEN;
+            case HALF_OPEN -> State.HALF_OPEN;
+            default -> State.CLOSED;
+        };
+    }
+
+    public Duration getOpenDuration() {
+        return Duration.ofNanos(openDurationNanos);
+    }
+}
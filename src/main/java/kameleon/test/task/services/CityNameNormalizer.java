@@ -0,0 +1,41 @@
+package kameleon.test.task.services;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+// Приводит пользовательский ввод к единому виду: "Moscow ", "MOSCOW" и "moscow" дают один ключ.
+// Выполняется на каждом запросе, поэтому без регулярных выражений, за один проход по строке
+public final class CityNameNormalizer {
+
+    private CityNameNormalizer() {
+    }
+
+    public static String normalize(String city) {
+        if (city == null) {
+            throw new IllegalArgumentException("city cannot be null");
+        }
+        String composed = Normalizer.isNormalized(city, Normalizer.Form.NFKC)
+                ? city
+                : Normalizer.normalize(city, Normalizer.Form.NFKC);
+
+        StringBuilder normalized = new StringBuilder(composed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < composed.length(); i++) {
+            char c = composed.charAt(i);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                pendingSpace = normalized.length() > 0;
+            } else if (c == ',') {
+                // Пробелы вокруг запятой в "city, country" не значимы
+                pendingSpace = false;
+                normalized.append(',');
+            } else {
+                if (pendingSpace && normalized.charAt(normalized.length() - 1) != ',') {
+                    normalized.append(' ');
+                }
+                pendingSpace = false;
+                normalized.append(c == 'ё' ? 'е' : c == 'Ё' ? 'Е' : c);
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,221 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.model.CurrentWeather;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Компактное хранение погоды для больших кэшей: вместо объектов CurrentWeather, Weather, Temperature, Wind, Sys,
+// LocalDateTime и готового JSON на каждый город - столбцы примитивных массивов (struct-of-arrays), строки main
+// и description кодируются словарем, время получения - наносекунды от эпохи. Массивы выделяются блоками,
+// поэтому рост хранилища ничего не копирует. Освобожденная ячейка занимается снова, поэтому читатель сверяет
+// версию ячейки (как seqlock в SharedWeatherCache) и получает null, если ячейку уже отдали другому городу
+final class CompactWeatherStore {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // Какие части CurrentWeather заданы; отсутствующие восстанавливаются как null
+    private static final byte HAS_WEATHER = 1;
+    private static final byte HAS_TEMPERATURE = 2;
+    private static final byte HAS_WIND = 4;
+    private static final byte HAS_SYS = 8;
+
+    private static final VarHandle VERSIONS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final StringDictionary dictionary = new StringDictionary();
+    private volatile Chunk[] chunks = new Chunk[0];
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int nextSlot;
+
+    synchronized int allocate() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        int slot = nextSlot++;
+        Chunk[] current = chunks;
+        if ((slot >>> CHUNK_BITS) == current.length) {
+            Chunk[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = new Chunk();
+            chunks = grown;
+        }
+        return slot;
+    }
+
+    synchronized void free(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    // Пишет снимок в занятую ячейку и возвращает ее новую версию - по ней читатель проверяет, что ячейка все еще его.
+    // cityName - уже хранящийся экземпляр того же имени (например, из CityCoordinates), чтобы не держать копию
+    long write(int slot, CurrentWeather currentWeather, String cityName) {
+        Chunk chunk = chunks[slot >>> CHUNK_BITS];
+        int i = slot & CHUNK_MASK;
+        long version = (long) VERSIONS.getVolatile(chunk.versions, i) + 1;
+        VERSIONS.setVolatile(chunk.versions, i, version);
+        VarHandle.storeStoreFence();
+
+        byte parts = 0;
+        if (currentWeather.getWeather() != null) {
+            parts |= HAS_WEATHER;
+            chunk.main[i] = dictionary.encode(currentWeather.getWeather().getMain());
+            chunk.description[i] = dictionary.encode(currentWeather.getWeather().getDescription());
+        }
+        if (currentWeather.getTemperature() != null) {
+            parts |= HAS_TEMPERATURE;
+            chunk.temp[i] = currentWeather.getTemperature().getTemp();
+            chunk.feelsLike[i] = currentWeather.getTemperature().getFeelsLike();
+        }
+        if (currentWeather.getWind() != null) {
+            parts |= HAS_WIND;
+            chunk.windSpeed[i] = currentWeather.getWind().getWindSpeed();
+        }
+        if (currentWeather.getSys() != null) {
+            parts |= HAS_SYS;
+            chunk.sunrise[i] = currentWeather.getSys().getSunrise();
+            chunk.sunset[i] = currentWeather.getSys().getSunset();
+        }
+        chunk.parts[i] = parts;
+        chunk.visibility[i] = currentWeather.getVisibility();
+        chunk.datetime[i] = currentWeather.getDatetime();
+        chunk.timezone[i] = currentWeather.getTimezone();
+        chunk.cityName[i] = cityName != null && cityName.equals(currentWeather.getCityName()) ? cityName : currentWeather.getCityName();
+        chunk.fetchedAt[i] = toEpochNanos(currentWeather.getTimestamp());
+
+        VERSIONS.setRelease(chunk.versions, i, version + 1);
+        return version + 1;
+    }
+
+    // null - ячейку уже освободили и заняли снова (город вытеснен или обновлен во время чтения)
+    CurrentWeather read(int slot, long stamp) {
+        Chunk chunk = chunks[slot >>> CHUNK_BITS];
+        int i = slot & CHUNK_MASK;
+        if ((long) VERSIONS.getAcquire(chunk.versions, i) != stamp) {
+            return null;
+        }
+        byte parts = chunk.parts[i];
+        int main = chunk.main[i];
+        int description = chunk.description[i];
+        double temp = chunk.temp[i];
+        double feelsLike = chunk.feelsLike[i];
+        double windSpeed = chunk.windSpeed[i];
+        long sunrise = chunk.sunrise[i];
+        long sunset = chunk.sunset[i];
+        int visibility = chunk.visibility[i];
+        long datetime = chunk.datetime[i];
+        int timezone = chunk.timezone[i];
+        String cityName = chunk.cityName[i];
+        long fetchedAt = chunk.fetchedAt[i];
+        VarHandle.loadLoadFence();
+        if ((long) VERSIONS.getVolatile(chunk.versions, i) != stamp) {
+            return null;
+        }
+
+        CurrentWeather.Builder builder = CurrentWeather.builder()
+                .visibility(visibility)
+                .datetime(datetime)
+                .timezone(timezone)
+                .cityName(cityName)
+                .timestamp(fromEpochNanos(fetchedAt));
+        if ((parts & HAS_WEATHER) != 0) {
+            builder.weather(dictionary.decode(main), dictionary.decode(description));
+        }
+        if ((parts & HAS_TEMPERATURE) != 0) {
+            builder.temperature(temp, feelsLike);
+        }
+        if ((parts & HAS_WIND) != 0) {
+            builder.wind(windSpeed);
+        }
+        if ((parts & HAS_SYS) != 0) {
+            builder.sys(sunrise, sunset);
+        }
+        return builder.build();
+    }
+
+    // Время получения в CurrentWeather - локальное, без часового пояса: храним его как есть, без пересчета через пояс
+    private static long toEpochNanos(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + timestamp.getNano();
+    }
+
+    private static LocalDateTime fromEpochNanos(long epochNanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochNanos, 1_000_000_000L),
+                (int) Math.floorMod(epochNanos, 1_000_000_000L), ZoneOffset.UTC);
+    }
+
+    synchronized int getCapacity() {
+        return chunks.length * CHUNK_SIZE;
+    }
+
+    // Сколько ячеек когда-либо выдано: при повторном использовании не растет выше пика числа записей
+    synchronized int getSlotCount() {
+        return nextSlot;
+    }
+
+    int getDictionarySize() {
+        return dictionary.size();
+    }
+
+    private static final class Chunk {
+        private final long[] versions = new long[CHUNK_SIZE];
+        private final byte[] parts = new byte[CHUNK_SIZE];
+        private final int[] main = new int[CHUNK_SIZE];
+        private final int[] description = new int[CHUNK_SIZE];
+        private final double[] temp = new double[CHUNK_SIZE];
+        private final double[] feelsLike = new double[CHUNK_SIZE];
+        private final double[] windSpeed = new double[CHUNK_SIZE];
+        private final long[] sunrise = new long[CHUNK_SIZE];
+        private final long[] sunset = new long[CHUNK_SIZE];
+        private final int[] visibility = new int[CHUNK_SIZE];
+        private final long[] datetime = new long[CHUNK_SIZE];
+        private final int[] timezone = new int[CHUNK_SIZE];
+        private final String[] cityName = new String[CHUNK_SIZE];
+        private final long[] fetchedAt = new long[CHUNK_SIZE];
+    }
+
+    // Словарь только растет: у OpenWeatherMap несколько десятков состояний погоды на каждый язык ответа
+    private static final class StringDictionary {
+        private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+        private volatile String[] values = new String[64];
+        private int size;
+
+        // -1 - null
+        int encode(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = codes.get(value);
+            return code != null ? code : add(value);
+        }
+
+        private synchronized int add(String value) {
+            Integer code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            String[] current = values;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = value;
+            values = current;
+            codes.put(value, size);
+            return size++;
+        }
+
+        String decode(int code) {
+            return code < 0 ? null : values[code];
+        }
+
+        int size() {
+            return codes.size();
+        }
+    }
+}
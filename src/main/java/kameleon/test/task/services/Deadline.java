@@ -0,0 +1,44 @@
+package kameleon.test.task.services;
+
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+
+// Бюджет времени одного вызова SDK: вызывающий ждет геокодирование и запрос погоды не дольше, чем в сумме
+// отпущено. Общие запросы к API, к которым присоединяются другие вызовы, получают по собственному бюджету
+// requestTimeout на каждый шаг и после ухода вызывающего продолжаются в фоне
+public final class Deadline {
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline after(Duration timeout) {
+        if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        long nanos = timeout.compareTo(Duration.ofDays(365)) > 0 ? Duration.ofDays(365).toNanos() : timeout.toNanos();
+        return new Deadline(System.nanoTime() + nanos);
+    }
+
+    public long remainingNanos() {
+        return Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(remainingNanos());
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() == 0;
+    }
+
+    HttpTimeoutException exceeded(String operation) {
+        return new HttpTimeoutException("Deadline exceeded while waiting for " + operation);
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{remaining=" + remaining() + '}';
+    }
+}
@@ -0,0 +1,193 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.model.WeatherForecast;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Почасовые прогнозы мест из ответов One Call: пока прогноз в пределах горизонта, погода в месте вычисляется
+// линейной интерполяцией прогноза на текущий момент, без обращения к API. Ряд хранится столбцами примитивов
+// и обрезается по горизонту: при горизонте в несколько часов это несколько точек на место
+final class ForecastCache {
+    static final int DEFAULT_MAX_SERIES = 100_000;
+
+    private final ConcurrentHashMap<String, Series> series = new ConcurrentHashMap<>();
+    private final long usableSeconds;
+    private final int maxSeries;
+
+    // Прогноз используется, пока не прошел горизонт или интервал обновления наблюдения - что наступит раньше
+    ForecastCache(Duration horizon, Duration observationRefresh) {
+        this(horizon, observationRefresh, DEFAULT_MAX_SERIES);
+    }
+
+    ForecastCache(Duration horizon, Duration observationRefresh, int maxSeries) {
+        if (maxSeries <= 0) {
+            throw new IllegalArgumentException("maxSeries must be positive");
+        }
+        this.usableSeconds = Math.min(horizon.toSeconds(), observationRefresh.toSeconds());
+        this.maxSeries = maxSeries;
+    }
+
+    void put(String locationId, WeatherForecast forecast) {
+        put(locationId, forecast, Instant.now().getEpochSecond());
+    }
+
+    void put(String locationId, WeatherForecast forecast, long nowSeconds) {
+        series.put(locationId, Series.of(forecast, nowSeconds + usableSeconds));
+        if (series.size() > maxSeries) {
+            prune(nowSeconds);
+        }
+    }
+
+    // null - прогноза нет или он исчерпан, нужен настоящий запрос
+    CurrentWeather interpolate(String locationId) {
+        return interpolate(locationId, Instant.now().getEpochSecond());
+    }
+
+    CurrentWeather interpolate(String locationId, long nowSeconds) {
+        Series entry = series.get(locationId);
+        if (entry == null) {
+            return null;
+        }
+        if (nowSeconds >= entry.usableUntil) {
+            series.remove(locationId, entry);
+            return null;
+        }
+        return entry.interpolate(nowSeconds);
+    }
+
+    // Сначала исчерпанные ряды, затем любые - места, вытесненные из кэша погоды, уходят отсюда тем же путем
+    private void prune(long nowSeconds) {
+        series.values().removeIf(entry -> nowSeconds >= entry.usableUntil);
+        Iterator<String> iterator = series.keySet().iterator();
+        while (series.size() > maxSeries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    int size() {
+        return series.size();
+    }
+
+    private static final class Series {
+        private final long start;
+        private final long usableUntil;
+        // Точки ряда: смещение от наблюдения в секундах и значения; первая точка - само наблюдение
+        private final int[] offsets;
+        private final float[] temp;
+        private final float[] feelsLike;
+        private final float[] windSpeed;
+        private final int[] visibility;
+        private final byte[] condition;
+        // Различные пары main/description ряда: main с четным индексом, description - со следующим
+        private final String[] conditions;
+        private final long sunrise;
+        private final long sunset;
+        private final int timezone;
+        private final String cityName;
+
+        private Series(long start, long usableUntil, int points, String[] conditions, CurrentWeather observation) {
+            this.start = start;
+            this.usableUntil = usableUntil;
+            this.offsets = new int[points];
+            this.temp = new float[points];
+            this.feelsLike = new float[points];
+            this.windSpeed = new float[points];
+            this.visibility = new int[points];
+            this.condition = new byte[points];
+            this.conditions = conditions;
+            this.sunrise = observation.getSys() == null ? 0 : observation.getSys().getSunrise();
+            this.sunset = observation.getSys() == null ? 0 : observation.getSys().getSunset();
+            this.timezone = observation.getTimezone();
+            this.cityName = observation.getCityName();
+        }
+
+        private static Series of(WeatherForecast forecast, long usableUntil) {
+            CurrentWeather observation = forecast.getCurrent();
+            long start = observation.getDatetime();
+            List<WeatherForecast.Hour> hours = new ArrayList<>();
+            for (WeatherForecast.Hour hour : forecast.getHourly()) {
+                // Часы до наблюдения не нужны, после горизонта - одна точка, чтобы интерполировать до его конца
+                if (hour.getDatetime() > start) {
+                    hours.add(hour);
+                    if (hour.getDatetime() >= usableUntil) {
+                        break;
+                    }
+                }
+            }
+            int points = hours.size() + 1;
+            List<String> conditions = new ArrayList<>();
+            int[] codes = new int[points];
+            CurrentWeather.Weather weather = observation.getWeather();
+            codes[0] = conditionCode(conditions, weather == null ? "" : weather.getMain(), weather == null ? "" : weather.getDescription());
+            for (int i = 0; i < hours.size(); i++) {
+                codes[i + 1] = conditionCode(conditions, hours.get(i).getMain(), hours.get(i).getDescription());
+            }
+
+            long lastPoint = hours.isEmpty() ? start : hours.get(hours.size() - 1).getDatetime();
+            Series series = new Series(start, Math.min(usableUntil, lastPoint), points, conditions.toArray(new String[0]), observation);
+            series.set(0, start, observation.getTemperature() == null ? 0 : observation.getTemperature().getTemp(),
+                    observation.getTemperature() == null ? 0 : observation.getTemperature().getFeelsLike(),
+                    observation.getWind() == null ? 0 : observation.getWind().getWindSpeed(), observation.getVisibility(), codes[0]);
+            for (int i = 0; i < hours.size(); i++) {
+                WeatherForecast.Hour hour = hours.get(i);
+                series.set(i + 1, hour.getDatetime(), hour.getTemp(), hour.getFeelsLike(), hour.getWindSpeed(), hour.getVisibility(), codes[i + 1]);
+            }
+            return series;
+        }
+
+        private void set(int i, long datetime, double temp, double feelsLike, double windSpeed, int visibility, int condition) {
+            this.offsets[i] = (int) (datetime - start);
+            this.temp[i] = (float) temp;
+            this.feelsLike[i] = (float) feelsLike;
+            this.windSpeed[i] = (float) windSpeed;
+            this.visibility[i] = visibility;
+            this.condition[i] = (byte) condition;
+        }
+
+        private static int conditionCode(List<String> conditions, String main, String description) {
+            for (int i = 0; i < conditions.size(); i += 2) {
+                if (conditions.get(i).equals(main) && conditions.get(i + 1).equals(description)) {
+                    return i / 2;
+                }
+            }
+            conditions.add(main);
+            conditions.add(description);
+            return conditions.size() / 2 - 1;
+        }
+
+        private CurrentWeather interpolate(long nowSeconds) {
+            long offset = Math.max(0, nowSeconds - start);
+            int i = 0;
+            while (i + 1 < offsets.length && offsets[i + 1] <= offset) {
+                i++;
+            }
+            int next = Math.min(i + 1, offsets.length - 1);
+            double fraction = next == i ? 0 : (double) (offset - offsets[i]) / (offsets[next] - offsets[i]);
+            // Состояние погоды не интерполируется: берется у ближайшей по времени точки
+            int code = (fraction < 0.5 ? condition[i] : condition[next]) * 2;
+            return CurrentWeather.builder()
+                    .weather(conditions[code], conditions[code + 1])
+                    .temperature(lerp(temp, i, next, fraction), lerp(feelsLike, i, next, fraction))
+                    .visibility((int) Math.round(visibility[i] + (visibility[next] - visibility[i]) * fraction))
+                    .wind(lerp(windSpeed, i, next, fraction))
+                    .datetime(nowSeconds)
+                    .sys(sunrise, sunset)
+                    .timezone(timezone)
+                    .cityName(cityName)
+                    .build();
+        }
+
+        // Точность ответов OpenWeatherMap - сотые доли
+        private static double lerp(float[] values, int i, int next, double fraction) {
+            double value = values[i] + (values[next] - values[i]) * fraction;
+            return Math.round(value * 100) / 100.0;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.model.CityCoordinates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+// Пространственный индекс закэшированных мест: равномерная сетка по широте и долготе с шагом,
+// равным радиусу поиска, поэтому кандидаты лежат в соседних ячейках
+public class GeoGridIndex {
+    static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+    private static final int MIN_PRUNE_THRESHOLD = 64;
+
+    private final double radiusKm;
+    private final double cellDegrees;
+    private final Map<Long, Map<String, CityCoordinates>> cells;
+    private final Map<String, Long> cellsByLocation;
+    // Место еще в кэше: ушедшие места выбрасываются, когда индекс вырастает вдвое с прошлой чистки
+    private final Predicate<String> retained;
+    private volatile int pruneThreshold = MIN_PRUNE_THRESHOLD;
+
+    public GeoGridIndex(double radiusKm) {
+        this(radiusKm, location -> true);
+    }
+
+    GeoGridIndex(double radiusKm, Predicate<String> retained) {
+        if (!(radiusKm > 0)) {
+            throw new IllegalArgumentException("radiusKm must be positive");
+        }
+        this.radiusKm = radiusKm;
+        this.cellDegrees = radiusKm / KM_PER_DEGREE;
+        this.cells = new ConcurrentHashMap<>();
+        this.cellsByLocation = new ConcurrentHashMap<>();
+        this.retained = retained;
+    }
+
+    public void add(String locationId, CityCoordinates cityCoordinates) {
+        long cell = cellOf(cityCoordinates.getLatitude(), cityCoordinates.getLongitude());
+        Long previous = cellsByLocation.put(locationId, cell);
+        if (previous != null && previous != cell) {
+            removeFromCell(previous, locationId);
+        }
+        cells.computeIfAbsent(cell, key -> new ConcurrentHashMap<>()).put(locationId, cityCoordinates);
+        if (cellsByLocation.size() > pruneThreshold) {
+            prune();
+        }
+    }
+
+    private synchronized void prune() {
+        if (cellsByLocation.size() <= pruneThreshold) {
+            return;
+        }
+        for (String locationId : cellsByLocation.keySet()) {
+            if (!retained.test(locationId)) {
+                remove(locationId);
+            }
+        }
+        pruneThreshold = Math.max(MIN_PRUNE_THRESHOLD, cellsByLocation.size() * 2);
+    }
+
+    public void remove(String locationId) {
+        Long cell = cellsByLocation.remove(locationId);
+        if (cell != null) {
+            removeFromCell(cell, locationId);
+        }
+    }
+
+    private void removeFromCell(long cell, String locationId) {
+        cells.computeIfPresent(cell, (key, locations) -> {
+            locations.remove(locationId);
+            return locations.isEmpty() ? null : locations;
+        });
+    }
+
+    // Места в пределах радиуса, от ближайшего к дальнему
+    public List<Neighbor> findWithinRadius(double latitude, double longitude) {
+        int row = row(latitude);
+        // Градус долготы короче к полюсам, поэтому по долготе может понадобиться больше ячеек
+        double cos = Math.cos(Math.toRadians(Math.min(89, Math.abs(latitude) + cellDegrees)));
+        int columnSpan = (int) Math.min(Math.ceil(1 / cos), columns() / 2);
+        int column = column(longitude);
+
+        List<Neighbor> neighbors = new ArrayList<>();
+        for (int r = row - 1; r <= row + 1; r++) {
+            for (int c = column - columnSpan; c <= column + columnSpan; c++) {
+                Map<String, CityCoordinates> locations = cells.get(key(r, Math.floorMod(c, columns())));
+                if (locations == null) {
+                    continue;
+                }
+                for (Map.Entry<String, CityCoordinates> entry : locations.entrySet()) {
+                    CityCoordinates candidate = entry.getValue();
+                    double distance = distanceKm(latitude, longitude, candidate.getLatitude(), candidate.getLongitude());
+                    if (distance <= radiusKm) {
+                        neighbors.add(new Neighbor(entry.getKey(), candidate, distance));
+                    }
+                }
+            }
+        }
+        neighbors.sort((a, b) -> Double.compare(a.distanceKm, b.distanceKm));
+        return neighbors;
+    }
+
+    // Центр ячейки сетки: до него от любой точки ячейки не больше radiusKm * sqrt(2) / 2
+    public CityCoordinates cellCenter(double latitude, double longitude) {
+        double centerLatitude = Math.max(-90, Math.min(90, (row(latitude) + 0.5) * cellDegrees - 90));
+        double centerLongitude = (column(longitude) + 0.5) * cellDegrees - 180;
+        return new CityCoordinates(CityCoordinates.format(centerLatitude, centerLongitude), centerLatitude, centerLongitude);
+    }
+
+    public String cellId(double latitude, double longitude) {
+        return row(latitude) + ":" + column(longitude);
+    }
+
+    public double getRadiusKm() {
+        return radiusKm;
+    }
+
+    public int size() {
+        return cellsByLocation.size();
+    }
+
+    private long cellOf(double latitude, double longitude) {
+        return key(row(latitude), column(longitude));
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor((latitude + 90) / cellDegrees);
+    }
+
+    private int column(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180) / cellDegrees), columns());
+    }
+
+    private int columns() {
+        return Math.max(1, (int) Math.floor(360 / cellDegrees));
+    }
+
+    private static long key(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    // Формула гаверсинусов
+    static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    public static final class Neighbor {
+        private final String locationId;
+        private final CityCoordinates cityCoordinates;
+        private final double distanceKm;
+
+        private Neighbor(String locationId, CityCoordinates cityCoordinates, double distanceKm) {
+            this.locationId = locationId;
+            this.cityCoordinates = cityCoordinates;
+            this.distanceKm = distanceKm;
+        }
+
+        public String getLocationId() {
+            return locationId;
+        }
+
+        public CityCoordinates getCityCoordinates() {
+            return cityCoordinates;
+        }
+
+        public double getDistanceKm() {
+            return distanceKm;
+        }
+    }
+}
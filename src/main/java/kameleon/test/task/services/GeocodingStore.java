@@ -0,0 +1,227 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.model.CityCoordinates;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+// Постоянное хранилище результатов геокодирования: координаты города практически не меняются,
+// поэтому они переживают перезапуск и не вытесняются вместе с погодой.
+// Формат файла - только дозапись записей [длина][CRC32][запрос, имя, широта, долгота];
+// недописанный хвост после аварийного завершения отбрасывается при загрузке.
+// Хранится не больше maxEntries запросов, при переполнении забываются самые давно записанные. Устаревшие
+// записи файл сбрасывает при открытии и когда их набирается больше, чем живых: файл переписывается целиком
+public class GeocodingStore implements AutoCloseable {
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    private static final Logger logger = Logger.getLogger(GeocodingStore.class.getName());
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+    // Меньше записей переписывать не стоит: файл и так несколько десятков килобайт
+    private static final int MIN_COMPACTION_RECORDS = 1024;
+
+    private final Path path;
+    private final int maxEntries;
+    // Порядок - от самой давно записанной; доступ и запись в файл под блокировкой хранилища
+    private final LinkedHashMap<String, CityCoordinates> coordinates;
+    private FileChannel channel;
+    // Записей в файле, включая устаревшие
+    private long records;
+
+    private GeocodingStore(Path path, int maxEntries, FileChannel channel, LinkedHashMap<String, CityCoordinates> coordinates, long records) {
+        this.path = path;
+        this.maxEntries = maxEntries;
+        this.channel = channel;
+        this.coordinates = coordinates;
+        this.records = records;
+    }
+
+    public static GeocodingStore open(Path path) throws IOException {
+        return open(path, DEFAULT_MAX_ENTRIES);
+    }
+
+    public static GeocodingStore open(Path path, int maxEntries) throws IOException {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            LinkedHashMap<String, CityCoordinates> coordinates = new LinkedHashMap<>();
+            long[] records = new long[1];
+            long validLength = load(channel, coordinates, records, maxEntries);
+            if (validLength < channel.size()) {
+                logger.warning("Discarding " + (channel.size() - validLength) + " corrupted bytes at the end of " + path);
+                channel.truncate(validLength);
+            }
+            channel.position(validLength);
+            GeocodingStore store = new GeocodingStore(path, maxEntries, channel, coordinates, records[0]);
+            if (records[0] > coordinates.size()) {
+                store.compact();
+            }
+            return store;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // records[0] - сколько целых записей прочитано, включая устаревшие
+    private static long load(FileChannel channel, LinkedHashMap<String, CityCoordinates> coordinates, long[] records,
+                             int maxEntries) throws IOException {
+        channel.position(0);
+        InputStream inputStream = new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024);
+        DataInputStream input = new DataInputStream(inputStream);
+        long validLength = 0;
+        byte[] payload = new byte[256];
+        CRC32 crc = new CRC32();
+
+        while (true) {
+            int length;
+            int checksum;
+            try {
+                length = input.readInt();
+                checksum = input.readInt();
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    return validLength;
+                }
+                if (payload.length < length) {
+                    payload = new byte[length];
+                }
+                input.readFully(payload, 0, length);
+            } catch (EOFException e) {
+                return validLength;
+            }
+
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                return validLength;
+            }
+
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+            String query = record.readUTF();
+            CityCoordinates cityCoordinates = new CityCoordinates(record.readUTF(), record.readDouble(), record.readDouble());
+            remember(coordinates, query, cityCoordinates, maxEntries);
+            records[0]++;
+            validLength += HEADER_SIZE + length;
+        }
+    }
+
+    // Повторная запись переносит запрос в конец очереди вытеснения
+    private static void remember(LinkedHashMap<String, CityCoordinates> coordinates, String query, CityCoordinates cityCoordinates,
+                                 int maxEntries) {
+        coordinates.remove(query);
+        coordinates.put(query, cityCoordinates);
+        Iterator<String> eldest = coordinates.keySet().iterator();
+        while (coordinates.size() > maxEntries) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    public synchronized CityCoordinates get(String query) {
+        return coordinates.get(query);
+    }
+
+    public synchronized void put(String query, CityCoordinates location) throws IOException {
+        CityCoordinates cityCoordinates = location.withoutLocalNames();
+        CityCoordinates previous = coordinates.get(query);
+        if (previous != null && previous.getCityName().equals(cityCoordinates.getCityName())
+                && previous.getLatitude() == cityCoordinates.getLatitude()
+                && previous.getLongitude() == cityCoordinates.getLongitude()) {
+            return;
+        }
+        remember(coordinates, query, cityCoordinates, maxEntries);
+
+        ByteBuffer buffer = encode(query, cityCoordinates);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        records++;
+        if (records > 2L * Math.max(coordinates.size(), MIN_COMPACTION_RECORDS)) {
+            compact();
+        }
+    }
+
+    private static ByteBuffer encode(String query, CityCoordinates cityCoordinates) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeInt(0);
+        record.writeInt(0);
+        record.writeUTF(query);
+        record.writeUTF(cityCoordinates.getCityName());
+        record.writeDouble(cityCoordinates.getLatitude());
+        record.writeDouble(cityCoordinates.getLongitude());
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        int length = buffer.remaining() - HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, length);
+        buffer.putInt(0, length);
+        buffer.putInt(4, (int) crc.getValue());
+        return buffer;
+    }
+
+    // Живые записи пишутся во временный файл, который затем атомарно заменяет прежний:
+    // при сбое посередине остается старый файл целиком
+    private synchronized void compact() throws IOException {
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel output = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, CityCoordinates> entry : coordinates.entrySet()) {
+                ByteBuffer buffer = encode(entry.getKey(), entry.getValue());
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+            }
+            output.force(false);
+        }
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        records = coordinates.size();
+    }
+
+    public synchronized Map<String, CityCoordinates> getAll() {
+        return Map.copyOf(coordinates);
+    }
+
+    public synchronized int size() {
+        return coordinates.size();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.metrics.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+// Когда отправлять дублирующий запрос: после заданного перцентиля задержек эндпоинта.
+// Снимок гистограммы дорогой, поэтому задержка пересчитывается не чаще раза в секунду
+final class HedgingPolicy {
+    static final long MIN_SAMPLES = 100;
+    private static final long RECOMPUTE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final double percentile;
+    private final LatencyHistogram latency;
+    private volatile long delayNanos;
+    private volatile long computedAtNanos;
+
+    HedgingPolicy(double percentile, LatencyHistogram latency) {
+        this.percentile = percentile;
+        this.latency = latency;
+    }
+
+    // 0 - не дублировать: хеджирование выключено или задержек записано слишком мало
+    long delayNanos() {
+        if (percentile <= 0 || latency.getCount() < MIN_SAMPLES) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        if (delayNanos == 0 || now - computedAtNanos >= RECOMPUTE_INTERVAL_NANOS) {
+            delayNanos = Math.max(1, latency.snapshot().getPercentileNanos(percentile));
+            computedAtNanos = now;
+        }
+        return delayNanos;
+    }
+}
@@ -0,0 +1,113 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.model.CityCoordinates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Индекс вариантов написания города -> координаты (и через них канонический идентификатор места).
+// Пополняется из ответов геокодера: сам запрос, каноническое имя и названия на других языках.
+// Больше maxEntries единиц не хранится: единица - вариант запроса или все имена одного места разом (их бывает
+// под сотню), поэтому имена крупных городов не вытесняют запросы пользователей. При переполнении вытесняются
+// самые давно выученные единицы
+public class LocationAliasIndex {
+    public static final int DEFAULT_MAX_ALIASES = 100_000;
+
+    private final Map<String, CityCoordinates> aliases;
+    // Единицы вытеснения в порядке, в котором они появились в индексе
+    private final Queue<Unit> learnOrder;
+    private final AtomicInteger units;
+    // Места, имена которых уже выучены
+    private final Set<String> namedLocations;
+    private final int maxEntries;
+
+    public LocationAliasIndex() {
+        this(DEFAULT_MAX_ALIASES);
+    }
+
+    public LocationAliasIndex(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.aliases = new ConcurrentHashMap<>();
+        this.learnOrder = new ConcurrentLinkedQueue<>();
+        this.units = new AtomicInteger();
+        this.namedLocations = ConcurrentHashMap.newKeySet();
+        this.maxEntries = maxEntries;
+    }
+
+    public CityCoordinates resolve(String normalizedCity) {
+        return aliases.get(normalizedCity);
+    }
+
+    public void learn(String normalizedQuery, CityCoordinates cityCoordinates) {
+        CityCoordinates location = cityCoordinates.withoutLocalNames();
+        // Ответ геокодера на конкретный запрос всегда верен для этого запроса
+        aliases.put(normalizedQuery, location);
+        learned(new Unit(null, location, List.of(normalizedQuery)));
+
+        // Уточненный запрос ("paris,us") мог выбрать не самый известный город с таким именем,
+        // поэтому имена из такого ответа не закрепляем за местом
+        if (normalizedQuery.indexOf(',') >= 0 || !namedLocations.add(location.getLocationId())) {
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        learnIfAbsent(names, cityCoordinates.getCityName(), location);
+        for (String localName : cityCoordinates.getLocalNames()) {
+            learnIfAbsent(names, localName, location);
+        }
+        learned(new Unit(location.getLocationId(), location, names));
+    }
+
+    private void learnIfAbsent(List<String> names, String name, CityCoordinates location) {
+        if (name == null || name.isBlank()) {
+            return;
+        }
+        String alias = CityNameNormalizer.normalize(name);
+        if (aliases.putIfAbsent(alias, location) == null) {
+            names.add(alias);
+        }
+    }
+
+    private void learned(Unit unit) {
+        learnOrder.add(unit);
+        units.incrementAndGet();
+        while (units.get() > maxEntries) {
+            Unit eldest = learnOrder.poll();
+            if (eldest == null) {
+                return;
+            }
+            units.decrementAndGet();
+            // Вариант, который позже выучен заново для другого ответа, остается
+            for (String alias : eldest.aliases) {
+                aliases.remove(alias, eldest.location);
+            }
+            if (eldest.locationId != null) {
+                namedLocations.remove(eldest.locationId);
+            }
+        }
+    }
+
+    public int size() {
+        return aliases.size();
+    }
+
+    // locationId == null - вариант запроса; иначе имена места
+    private static final class Unit {
+        private final String locationId;
+        private final CityCoordinates location;
+        private final List<String> aliases;
+
+        private Unit(String locationId, CityCoordinates location, List<String> aliases) {
+            this.locationId = locationId;
+            this.location = location;
+            this.aliases = aliases;
+        }
+    }
+}
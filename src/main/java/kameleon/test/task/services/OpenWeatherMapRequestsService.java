@@ -1,101 +1,503 @@
 package kameleon.test.task.services;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import kameleon.test.task.exceptions.APIKeyException;
 import kameleon.test.task.exceptions.CoordinateException;
+import kameleon.test.task.exceptions.RateLimitedException;
+import kameleon.test.task.metrics.LatencyHistogram;
+import kameleon.test.task.metrics.StatusCodeCounter;
 import kameleon.test.task.model.CityCoordinates;
 import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.model.WeatherForecast;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
 
 public class OpenWeatherMapRequestsService {
+    public static final String DEFAULT_BASE_URL = "https://api.openweathermap.org";
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    // Больше идентификаторов в одном запросе group OpenWeatherMap не принимает
+    public static final int MAX_GROUP_SIZE = 20;
+
     private final String URL_FOR_WEATHER;
+    private final String URL_FOR_FORECAST;
     private final String URL_FOR_COORDINATES;
-    private final ObjectMapper mapper;
+    private final String URL_FOR_GROUP;
+    private final String URL_FOR_CITY_WEATHER;
     private final HttpClient httpClient;
+    private final boolean ownsHttpClient;
+    private final boolean gzip;
+    private final LatencyHistogram geocodingLatency = new LatencyHistogram();
+    private final LatencyHistogram weatherLatency = new LatencyHistogram();
+    private final StatusCodeCounter statusCodes = new StatusCodeCounter();
+    private final HedgingPolicy geocodingHedging;
+    private final HedgingPolicy weatherHedging;
+    // Дублирующая попытка - отдельный вызов API: отправляется, только если ее разрешает квота ключа
+    private volatile BooleanSupplier hedgePermit = () -> true;
+    private final LongAdder hedgedRequests = new LongAdder();
 
     public OpenWeatherMapRequestsService(String apiKey) {
-        this.mapper = new ObjectMapper();
-        this.URL_FOR_WEATHER = String.format("https://api.openweathermap.org/data/3.0/onecall" +
+        this(apiKey, DEFAULT_BASE_URL);
+    }
+
+    public OpenWeatherMapRequestsService(String apiKey, String baseUrl) {
+        this(apiKey, baseUrl, 0);
+    }
+
+    // baseUrl позволяет направить SDK на локальную заглушку или прокси, например "http://localhost:8089".
+    // hedgePercentile (0, 100) - если ответа нет дольше этого перцентиля задержек, отправляется дублирующий запрос;
+    // 0 - без дублирования
+    public OpenWeatherMapRequestsService(String apiKey, String baseUrl, double hedgePercentile) {
+        this(apiKey, baseUrl, hedgePercentile, null, true);
+    }
+
+    // httpClient - общий клиент фабрики (не закрывается в shutDown); null - собственный клиент этого сервиса
+    OpenWeatherMapRequestsService(String apiKey, String baseUrl, double hedgePercentile, HttpClient httpClient, boolean gzip) {
+        if (hedgePercentile < 0 || hedgePercentile >= 100) {
+            throw new IllegalArgumentException("hedgePercentile must be in [0, 100)");
+        }
+        String base = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.URL_FOR_WEATHER = String.format(base + "/data/3.0/onecall" +
                 "?exclude=minutely,hourly,daily" +
                 "&appid=%s", apiKey);
-        this.URL_FOR_COORDINATES = String.format("http://api.openweathermap.org/geo/1.0/direct?limit=1&appid=%s", apiKey);
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
-    }
-
-    private JsonNode checkResponse(String response, String city) throws JsonProcessingException, CoordinateException, APIKeyException {
-        JsonNode jsonNode = mapper.readTree(response);
-        if (jsonNode.has("cod")) {
-            if (jsonNode.get("cod").asText().equals("401")) {
-                throw new APIKeyException(jsonNode.path("message").asText());
-            } else {
-                throw new CoordinateException(jsonNode.path("message").asText());
-            }
+        // Почасовой прогноз в том же вызове One Call: минутный (только осадки) и дневной не нужны
+        this.URL_FOR_FORECAST = String.format(base + "/data/3.0/onecall" +
+                "?exclude=minutely,daily,alerts" +
+                "&appid=%s", apiKey);
+        this.URL_FOR_COORDINATES = String.format(base + "/geo/1.0/direct?limit=1&appid=%s", apiKey);
+        // Пакетное обновление по идентификаторам городов есть только в API 2.5; единицы те же, что у One Call
+        this.URL_FOR_GROUP = String.format(base + "/data/2.5/group?units=standard&appid=%s", apiKey);
+        this.URL_FOR_CITY_WEATHER = String.format(base + "/data/2.5/weather?units=standard&appid=%s", apiKey);
+        this.ownsHttpClient = httpClient == null;
+        this.httpClient = ownsHttpClient
+                ? HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build()
+                : httpClient;
+        this.gzip = gzip;
+        this.geocodingHedging = new HedgingPolicy(hedgePercentile, geocodingLatency);
+        this.weatherHedging = new HedgingPolicy(hedgePercentile, weatherLatency);
+    }
+
+    private HttpRequest weatherRequest(CityCoordinates city, Deadline deadline) {
+        return request(String.format(URL_FOR_WEATHER + "&lat=%s&lon=%s", city.getLatitude(), city.getLongitude()), deadline);
+    }
+
+    private HttpRequest forecastRequest(CityCoordinates city, Deadline deadline) {
+        return request(String.format(URL_FOR_FORECAST + "&lat=%s&lon=%s", city.getLatitude(), city.getLongitude()), deadline);
+    }
+
+    private HttpRequest coordinatesRequest(String city, Deadline deadline) {
+        return request(String.format(URL_FOR_COORDINATES + "&q=%s", URLEncoder.encode(city, StandardCharsets.UTF_8)), deadline);
+    }
+
+    private HttpRequest groupRequest(Set<Long> cityIds, Deadline deadline) {
+        StringJoiner ids = new StringJoiner(",");
+        cityIds.forEach(id -> ids.add(Long.toString(id)));
+        return request(URL_FOR_GROUP + "&id=" + ids, deadline);
+    }
+
+    private HttpRequest cityWeatherRequest(CityCoordinates city, Deadline deadline) {
+        return request(String.format(URL_FOR_CITY_WEATHER + "&lat=%s&lon=%s", city.getLatitude(), city.getLongitude()), deadline);
+    }
+
+    private HttpRequest request(String uri, Deadline deadline) {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .timeout(Duration.ofNanos(Math.max(1, deadline.remainingNanos())))
+                .GET();
+        if (gzip) {
+            request.header("Accept-Encoding", "gzip");
         }
+        return request.build();
+    }
 
-        if (jsonNode.get(0) == null) {
-            throw new CoordinateException(String.format("The city %s was not found", city));
+    // HttpClient не распаковывает ответы сам; сжатое тело разбирается через GZIPInputStream без буфера под распакованный JSON
+    private static CurrentWeather parseCurrentWeather(HttpResponse<byte[]> response, String city) throws IOException {
+        if (!isGzip(response)) {
+            return OpenWeatherMapResponseParser.parseCurrentWeather(response.body(), city);
         }
+        try (InputStream body = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            return OpenWeatherMapResponseParser.parseCurrentWeather(body, city);
+        }
+    }
 
-        return jsonNode.get(0);
+    private static WeatherForecast parseForecast(HttpResponse<byte[]> response, String city) throws IOException {
+        if (!isGzip(response)) {
+            return OpenWeatherMapResponseParser.parseForecast(response.body(), city);
+        }
+        try (InputStream body = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            return OpenWeatherMapResponseParser.parseForecast(body, city);
+        }
     }
 
-    private CurrentWeather getCurrentWeatherFromJSON(String json, String city) throws JsonProcessingException {
-        JsonNode root = mapper.readTree(json);
-        JsonNode current = root.path("current");
-        JsonNode weather = current.path("weather").get(0);
+    private static CityCoordinates parseCityCoordinates(HttpResponse<byte[]> response, String city) throws IOException, CoordinateException, APIKeyException {
+        if (!isGzip(response)) {
+            return OpenWeatherMapResponseParser.parseCityCoordinates(response.body(), city);
+        }
+        try (InputStream body = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            return OpenWeatherMapResponseParser.parseCityCoordinates(body, city);
+        }
+    }
 
-        return CurrentWeather.builder()
-                .weather(weather.path("main").asText(), weather.path("description").asText())
-                .visibility(current.path("visibility").asInt())
-                .temperature(current.path("temp").asDouble(), current.path("feels_like").asDouble())
-                .wind(current.path("wind_speed").asDouble())
-                .datetime(current.path("dt").asLong())
-                .sys(current.path("sunrise").asLong(), current.path("sunset").asLong())
-                .timezone(root.path("timezone_offset").asInt())
-                .cityName(city)
-                .build();
+    private static Map<Long, CurrentWeather> parseGroup(HttpResponse<byte[]> response, Map<Long, String> cities) throws IOException {
+        if (!isGzip(response)) {
+            return OpenWeatherMapResponseParser.parseGroup(response.body(), cities);
+        }
+        try (InputStream body = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            return OpenWeatherMapResponseParser.parseGroup(body, cities);
+        }
     }
 
-    private CityCoordinates getCoordinatesFromJSON(JsonNode json) {
-        String cityName = json.path("name").asText();
-        double lat = json.path("lat").asDouble();
-        double lon = json.path("lon").asDouble();
+    private static Map.Entry<Long, CurrentWeather> parseCityWeather(HttpResponse<byte[]> response, String city) throws IOException {
+        if (!isGzip(response)) {
+            return OpenWeatherMapResponseParser.parseCityWeather(response.body(), city);
+        }
+        try (InputStream body = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            return OpenWeatherMapResponseParser.parseCityWeather(body, city);
+        }
+    }
 
-        return new CityCoordinates(cityName, lat, lon);
+    private static boolean isGzip(HttpResponse<?> response) {
+        return response.headers().firstValue("Content-Encoding").map("gzip"::equalsIgnoreCase).orElse(false);
     }
 
-    public CurrentWeather getCurrentWeather(CityCoordinates city) throws IOException, InterruptedException {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(String.format(URL_FOR_WEATHER + "&lat=%s&lon=%s", city.getLatitude(), city.getLongitude())))
-                .GET()
-                .build();
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    public CurrentWeather getCurrentWeather(CityCoordinates city) throws IOException, InterruptedException, APIKeyException, CoordinateException {
+        return getCurrentWeather(city, Deadline.after(DEFAULT_REQUEST_TIMEOUT));
+    }
 
-        return getCurrentWeatherFromJSON(response.body(), city.getCityName());
+    public CurrentWeather getCurrentWeather(CityCoordinates city, Deadline deadline) throws IOException, InterruptedException, APIKeyException, CoordinateException {
+        if (deadline.isExpired()) {
+            throw deadline.exceeded("One Call response");
+        }
+        HttpResponse<byte[]> response = await(exchange(weatherRequest(city, deadline), deadline, weatherLatency, weatherHedging));
+        checkStatus(response);
+        checkOneCall(response);
+        return parseCurrentWeather(response, city.getCityName());
+    }
+
+    // Текущая погода и почасовой прогноз одним вызовом One Call (учитывается как запрос погоды)
+    public WeatherForecast getForecast(CityCoordinates city, Deadline deadline) throws IOException, InterruptedException, APIKeyException, CoordinateException {
+        if (deadline.isExpired()) {
+            throw deadline.exceeded("One Call response");
+        }
+        HttpResponse<byte[]> response = await(exchange(forecastRequest(city, deadline), deadline, weatherLatency, weatherHedging));
+        checkStatus(response);
+        checkOneCall(response);
+        return parseForecast(response, city.getCityName());
+    }
+
+    // Текущая погода до MAX_GROUP_SIZE городов одним запросом. cities - идентификатор города OpenWeatherMap -> имя,
+    // под которым город хранится в SDK; городов, о которых OpenWeatherMap не ответил, в результате нет.
+    // APIKeyException - тариф ключа не дает доступа к API 2.5
+    public Map<Long, CurrentWeather> getCurrentWeatherByCityIds(Map<Long, String> cities, Deadline deadline)
+            throws IOException, InterruptedException, APIKeyException {
+        if (cities.isEmpty() || cities.size() > MAX_GROUP_SIZE) {
+            throw new IllegalArgumentException("Group request takes from 1 to " + MAX_GROUP_SIZE + " cities");
+        }
+        if (deadline.isExpired()) {
+            throw deadline.exceeded("group weather response");
+        }
+        HttpResponse<byte[]> response = await(exchange(groupRequest(cities.keySet(), deadline), deadline, weatherLatency, weatherHedging));
+        checkStatus(response);
+        checkPlan(response);
+        return parseGroup(response, cities);
+    }
+
+    // Погода по координатам из API 2.5 вместе с идентификатором ближайшего города OpenWeatherMap -
+    // по нему город дальше обновляется запросами group
+    public Map.Entry<Long, CurrentWeather> getCurrentWeatherWithCityId(CityCoordinates city, Deadline deadline)
+            throws IOException, InterruptedException, APIKeyException {
+        if (deadline.isExpired()) {
+            throw deadline.exceeded("weather response");
+        }
+        HttpResponse<byte[]> response = await(exchange(cityWeatherRequest(city, deadline), deadline, weatherLatency, weatherHedging));
+        checkStatus(response);
+        checkPlan(response);
+        return parseCityWeather(response, city.getCityName());
     }
 
     public CityCoordinates getCityCoordinates(String city) throws IOException, CoordinateException, InterruptedException, APIKeyException {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(String.format(URL_FOR_COORDINATES + "&q=%s", city)))
-                .GET()
-                .build();
+        return getCityCoordinates(city, Deadline.after(DEFAULT_REQUEST_TIMEOUT));
+    }
+
+    public CityCoordinates getCityCoordinates(String city, Deadline deadline) throws IOException, CoordinateException, InterruptedException, APIKeyException {
+        if (deadline.isExpired()) {
+            throw deadline.exceeded("geocoding response");
+        }
+        HttpResponse<byte[]> response = await(exchange(coordinatesRequest(city, deadline), deadline, geocodingLatency, geocodingHedging));
+        checkStatus(response);
+        return parseCityCoordinates(response, city);
+    }
+
+    // Ограничение частоты и ошибки сервера - временные сбои, а не "город не найден" или неверный ключ:
+    // тело таких ответов не разбираем
+    private static void checkStatus(HttpResponse<?> response) throws IOException {
+        int status = response.statusCode();
+        if (status == 429) {
+            throw new RateLimitedException(String.format("OpenWeatherMap responded with HTTP 429 for %s", response.uri().getPath()),
+                    retryAfter(response));
+        }
+        if (status >= 500) {
+            throw new IOException(String.format("OpenWeatherMap responded with HTTP %d for %s", status, response.uri().getPath()));
+        }
+    }
 
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        JsonNode json = this.checkResponse(response.body(), city);
-        return this.getCoordinatesFromJSON(json);
+    // 401/403 - ключ без доступа к API 2.5 (метод отключен для тарифа), это не зависит от городов в запросе.
+    // Прочие ошибки клиента относятся к конкретному запросу (например, неизвестный городу идентификатор)
+    private static void checkPlan(HttpResponse<?> response) throws IOException, APIKeyException {
+        int status = response.statusCode();
+        String message = String.format("OpenWeatherMap responded with HTTP %d for %s", status, response.uri().getPath());
+        if (status == 401 || status == 403) {
+            throw new APIKeyException(message);
+        }
+        if (status >= 400) {
+            throw new IOException(message);
+        }
+    }
+
+    // 401/403 - ключ без подписки на One Call 3.0, а не сбой сервиса. Прочие ошибки клиента относятся
+    // к конкретному запросу (например, координаты вне диапазона): автомат их сбоем не считает
+    private static void checkOneCall(HttpResponse<?> response) throws APIKeyException, CoordinateException {
+        int status = response.statusCode();
+        if (status < 400) {
+            return;
+        }
+        String message = String.format("OpenWeatherMap responded with HTTP %d for %s", status, response.uri().getPath());
+        if (status == 401 || status == 403) {
+            throw new APIKeyException(message);
+        }
+        throw new CoordinateException(message);
+    }
+
+    // Retry-After бывает числом секунд или HTTP-датой; null - заголовка нет или он не разобран
+    static Duration retryAfter(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").map(String::strip).orElse(null);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            try {
+                Duration untilDate = Duration.between(Instant.now(), ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME));
+                return untilDate.isNegative() ? Duration.ZERO : untilDate;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    // Асинхронные варианты: разбор выполняется на переданном executor, ошибки приходят обернутыми в CompletionException
+    public CompletableFuture<CurrentWeather> getCurrentWeatherAsync(CityCoordinates city, Executor executor) {
+        return getCurrentWeatherAsync(city, Deadline.after(DEFAULT_REQUEST_TIMEOUT), executor);
+    }
+
+    public CompletableFuture<CurrentWeather> getCurrentWeatherAsync(CityCoordinates city, Deadline deadline, Executor executor) {
+        if (deadline.isExpired()) {
+            return CompletableFuture.failedFuture(deadline.exceeded("One Call response"));
+        }
+        CompletableFuture<HttpResponse<byte[]>> sent = exchange(weatherRequest(city, deadline), deadline, weatherLatency, weatherHedging);
+        return cancelling(sent, sent.thenApplyAsync(response -> {
+            try {
+                checkStatus(response);
+                checkOneCall(response);
+                return parseCurrentWeather(response, city.getCityName());
+            } catch (IOException | APIKeyException | CoordinateException e) {
+                throw new CompletionException(e);
+            }
+        }, executor));
+    }
+
+    public CompletableFuture<WeatherForecast> getForecastAsync(CityCoordinates city, Deadline deadline, Executor executor) {
+        if (deadline.isExpired()) {
+            return CompletableFuture.failedFuture(deadline.exceeded("One Call response"));
+        }
+        CompletableFuture<HttpResponse<byte[]>> sent = exchange(forecastRequest(city, deadline), deadline, weatherLatency, weatherHedging);
+        return cancelling(sent, sent.thenApplyAsync(response -> {
+            try {
+                checkStatus(response);
+                checkOneCall(response);
+                return parseForecast(response, city.getCityName());
+            } catch (IOException | APIKeyException | CoordinateException e) {
+                throw new CompletionException(e);
+            }
+        }, executor));
+    }
+
+    public CompletableFuture<CityCoordinates> getCityCoordinatesAsync(String city, Executor executor) {
+        return getCityCoordinatesAsync(city, Deadline.after(DEFAULT_REQUEST_TIMEOUT), executor);
+    }
+
+    public CompletableFuture<CityCoordinates> getCityCoordinatesAsync(String city, Deadline deadline, Executor executor) {
+        if (deadline.isExpired()) {
+            return CompletableFuture.failedFuture(deadline.exceeded("geocoding response"));
+        }
+        CompletableFuture<HttpResponse<byte[]>> sent = exchange(coordinatesRequest(city, deadline), deadline, geocodingLatency, geocodingHedging);
+        return cancelling(sent, sent.thenApplyAsync(response -> {
+            try {
+                checkStatus(response);
+                return parseCityCoordinates(response, city);
+            } catch (IOException | CoordinateException | APIKeyException e) {
+                throw new CompletionException(e);
+            }
+        }, executor));
+    }
+
+    // Один логический запрос: ответ вместе с телом должен прийти до дедлайна. Если включено хеджирование
+    // и первая попытка молчит дольше перцентиля, уходит вторая; побеждает первый полученный ответ,
+    // проигравшая попытка отменяется. Задержка и статус записываются один раз, по ответу-победителю
+    private CompletableFuture<HttpResponse<byte[]>> exchange(HttpRequest request, Deadline deadline,
+                                                             LatencyHistogram latency, HedgingPolicy hedging) {
+        long start = System.nanoTime();
+        long remaining = deadline.remainingNanos();
+        HedgedExchange exchange = new HedgedExchange(request);
+        exchange.launch();
+        long hedgeDelay = hedging.delayNanos();
+        if (hedgeDelay > 0 && hedgeDelay < remaining) {
+            CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.NANOSECONDS).execute(() -> {
+                if (!exchange.result.isDone() && hedgePermit.getAsBoolean() && exchange.launch()) {
+                    hedgedRequests.increment();
+                }
+            });
+        }
+        CompletableFuture<HttpResponse<byte[]>> handled = exchange.result
+                .orTimeout(remaining, TimeUnit.NANOSECONDS)
+                .handle((response, error) -> {
+                    exchange.cancel();
+                    statusCodes.record(response == null ? 0 : response.statusCode());
+                    latency.recordSince(start);
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        throw new CompletionException(cause instanceof TimeoutException
+                                ? deadline.exceeded(request.uri().getPath())
+                                : cause instanceof IOException ? cause : new IOException(cause));
+                    }
+                    return response;
+                });
+        // Отмена у вызывающего (прерывание await, отмена асинхронного вызова) не доходит до исходных future сама:
+        // без этого попытки продолжали бы занимать соединения до ответа или до deadline
+        handled.whenComplete((response, error) -> {
+            if (error instanceof CancellationException) {
+                exchange.cancel();
+            }
+        });
+        return handled;
+    }
+
+    // Отмена результата асинхронного вызова отменяет и сам обмен с сервером
+    private static <T> CompletableFuture<T> cancelling(CompletableFuture<?> sent, CompletableFuture<T> result) {
+        result.whenComplete((value, error) -> {
+            if (error instanceof CancellationException) {
+                sent.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HttpTimeoutException timeout) {
+                // Исключение создано в другом потоке: стек вызывающего полезнее для диагностики
+                throw new HttpTimeoutException(timeout.getMessage());
+            }
+            throw cause instanceof IOException io ? io : new IOException(cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    // Попытки одного логического запроса: не больше двух, результат - первый ответ; ошибка - только если
+    // не удались все отправленные попытки
+    private final class HedgedExchange {
+        private final HttpRequest request;
+        private final CompletableFuture<HttpResponse<byte[]>> result = new CompletableFuture<>();
+        private final List<CompletableFuture<HttpResponse<byte[]>>> attempts = new ArrayList<>(2);
+        private int failedAttempts;
+
+        private HedgedExchange(HttpRequest request) {
+            this.request = request;
+        }
+
+        synchronized boolean launch() {
+            if (result.isDone()) {
+                return false;
+            }
+            CompletableFuture<HttpResponse<byte[]>> attempt = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+            attempts.add(attempt);
+            attempt.whenComplete(this::onAttempt);
+            return true;
+        }
+
+        private synchronized void onAttempt(HttpResponse<byte[]> response, Throwable error) {
+            if (error == null) {
+                result.complete(response);
+            } else if (++failedAttempts == attempts.size()) {
+                result.completeExceptionally(error);
+            }
+        }
+
+        synchronized void cancel() {
+            result.cancel(true);
+            for (CompletableFuture<HttpResponse<byte[]>> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+    }
+
+    // SDK списывает дублирующие попытки со своей квоты и не хеджирует, пока она на исходе или идет пауза после 429
+    void setHedgePermit(BooleanSupplier hedgePermit) {
+        this.hedgePermit = hedgePermit;
+    }
+
+    public LatencyHistogram getGeocodingLatency() {
+        return geocodingLatency;
+    }
+
+    public LatencyHistogram getWeatherLatency() {
+        return weatherLatency;
+    }
+
+    public StatusCodeCounter getStatusCodes() {
+        return statusCodes;
+    }
+
+    public long getHedgedRequestCount() {
+        return hedgedRequests.sum();
     }
 
     public void shutDown() {
-        httpClient.close();
+        if (ownsHttpClient) {
+            httpClient.close();
+        }
     }
 }
@@ -0,0 +1,383 @@
+package kameleon.test.task.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import kameleon.test.task.exceptions.APIKeyException;
+import kameleon.test.task.exceptions.CoordinateException;
+import kameleon.test.task.model.CityCoordinates;
+import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.model.WeatherForecast;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Потоковый разбор ответов OpenWeatherMap: читаются только нужные поля, остальное пропускается
+// без построения дерева JsonNode. Тело ответа уже прочитано в массив байт (его можно отменить вместе с запросом);
+// варианты с InputStream разбирают сжатое тело по мере распаковки
+public final class OpenWeatherMapResponseParser {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private OpenWeatherMapResponseParser() {
+    }
+
+    public static CurrentWeather parseCurrentWeather(InputStream body, String city) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return parseCurrentWeather(parser, city);
+        }
+    }
+
+    public static CurrentWeather parseCurrentWeather(byte[] body, String city) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return parseCurrentWeather(parser, city);
+        }
+    }
+
+    public static WeatherForecast parseForecast(InputStream body, String city) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return parseForecast(parser, city);
+        }
+    }
+
+    public static WeatherForecast parseForecast(byte[] body, String city) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return parseForecast(parser, city);
+        }
+    }
+
+    // Ответ group API 2.5: names - идентификатор города OpenWeatherMap -> имя, под которым город хранится в SDK
+    public static Map<Long, CurrentWeather> parseGroup(InputStream body, Map<Long, String> names) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return parseGroup(parser, names);
+        }
+    }
+
+    public static Map<Long, CurrentWeather> parseGroup(byte[] body, Map<Long, String> names) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return parseGroup(parser, names);
+        }
+    }
+
+    // Ответ /data/2.5/weather: погода и идентификатор города OpenWeatherMap
+    public static Map.Entry<Long, CurrentWeather> parseCityWeather(InputStream body, String city) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return parseCityWeather(parser, city);
+        }
+    }
+
+    public static Map.Entry<Long, CurrentWeather> parseCityWeather(byte[] body, String city) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return parseCityWeather(parser, city);
+        }
+    }
+
+    public static CityCoordinates parseCityCoordinates(InputStream body, String city) throws IOException, CoordinateException, APIKeyException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return parseCityCoordinates(parser, city);
+        }
+    }
+
+    public static CityCoordinates parseCityCoordinates(byte[] body, String city) throws IOException, CoordinateException, APIKeyException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return parseCityCoordinates(parser, city);
+        }
+    }
+
+    private static CurrentWeather parseCurrentWeather(JsonParser parser, String city) throws IOException {
+        return parseOneCall(parser, city, null);
+    }
+
+    private static WeatherForecast parseForecast(JsonParser parser, String city) throws IOException {
+        List<WeatherForecast.Hour> hourly = new ArrayList<>(48);
+        CurrentWeather current = parseOneCall(parser, city, hourly);
+        return new WeatherForecast(current, hourly);
+    }
+
+    // hourly == null - почасовой прогноз (если он есть в ответе) пропускается
+    private static CurrentWeather parseOneCall(JsonParser parser, String city, List<WeatherForecast.Hour> hourly) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        CurrentWeather.Builder builder = CurrentWeather.builder().cityName(city);
+        boolean hasCurrent = false;
+        String errorCode = null;
+        String errorMessage = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "timezone_offset" -> builder.timezone(parser.getValueAsInt());
+                case "current" -> {
+                    parseCurrent(parser, builder);
+                    hasCurrent = true;
+                }
+                case "hourly" -> {
+                    if (hourly != null && parser.currentToken() == JsonToken.START_ARRAY) {
+                        parseHourly(parser, hourly);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                case "cod" -> errorCode = parser.getValueAsString();
+                case "message" -> errorMessage = parser.getValueAsString();
+                default -> parser.skipChildren();
+            }
+        }
+
+        if (!hasCurrent) {
+            throw new IOException(String.format("Unexpected OpenWeatherMap response for %s: %s %s", city, errorCode, errorMessage));
+        }
+        return builder.build();
+    }
+
+    private static void parseCurrent(JsonParser parser, CurrentWeather.Builder builder) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        double temp = 0;
+        double feelsLike = 0;
+        long sunrise = 0;
+        long sunset = 0;
+        String main = "";
+        String description = "";
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "temp" -> temp = parser.getValueAsDouble();
+                case "feels_like" -> feelsLike = parser.getValueAsDouble();
+                case "visibility" -> builder.visibility(parser.getValueAsInt());
+                case "wind_speed" -> builder.wind(parser.getValueAsDouble());
+                case "dt" -> builder.datetime(parser.getValueAsLong());
+                case "sunrise" -> sunrise = parser.getValueAsLong();
+                case "sunset" -> sunset = parser.getValueAsLong();
+                case "weather" -> {
+                    String[] condition = parseCondition(parser, value);
+                    main = condition[0];
+                    description = condition[1];
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        builder.temperature(temp, feelsLike)
+                .sys(sunrise, sunset)
+                .weather(main, description);
+    }
+
+    private static Map<Long, CurrentWeather> parseGroup(JsonParser parser, Map<Long, String> names) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        Map<Long, CurrentWeather> weather = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (!field.equals("list") || value != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (parser.currentToken() != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                CurrentWeather.Builder builder = CurrentWeather.builder();
+                long id = parseLegacyWeather(parser, builder);
+                // Города, которых не было в запросе, не принимаем
+                String name = names.get(id);
+                if (name != null) {
+                    weather.put(id, builder.cityName(name).build());
+                }
+            }
+        }
+        return weather;
+    }
+
+    private static Map.Entry<Long, CurrentWeather> parseCityWeather(JsonParser parser, String city) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        CurrentWeather.Builder builder = CurrentWeather.builder().cityName(city);
+        long id = parseLegacyWeather(parser, builder);
+        if (id == 0) {
+            throw new IOException("Unexpected OpenWeatherMap response for " + city + ": no city id");
+        }
+        return Map.entry(id, builder.build());
+    }
+
+    // Погода в формате API 2.5; возвращает идентификатор города (0 - его нет в ответе).
+    // В ответе group смещение часового пояса лежит внутри sys, в ответе weather - на верхнем уровне
+    private static long parseLegacyWeather(JsonParser parser, CurrentWeather.Builder builder) throws IOException {
+        long id = 0;
+        double temp = 0;
+        double feelsLike = 0;
+        long sunrise = 0;
+        long sunset = 0;
+        String[] condition = {"", ""};
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getValueAsLong();
+                case "dt" -> builder.datetime(parser.getValueAsLong());
+                case "visibility" -> builder.visibility(parser.getValueAsInt());
+                case "timezone" -> builder.timezone(parser.getValueAsInt());
+                case "weather" -> condition = parseCondition(parser, value);
+                case "main", "wind", "sys" -> {
+                    if (value != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        break;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String nested = field + "." + parser.currentName();
+                        parser.nextToken();
+                        switch (nested) {
+                            case "main.temp" -> temp = parser.getValueAsDouble();
+                            case "main.feels_like" -> feelsLike = parser.getValueAsDouble();
+                            case "wind.speed" -> builder.wind(parser.getValueAsDouble());
+                            case "sys.sunrise" -> sunrise = parser.getValueAsLong();
+                            case "sys.sunset" -> sunset = parser.getValueAsLong();
+                            case "sys.timezone" -> builder.timezone(parser.getValueAsInt());
+                            default -> parser.skipChildren();
+                        }
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        builder.temperature(temp, feelsLike)
+                .sys(sunrise, sunset)
+                .weather(condition[0], condition[1]);
+        return id;
+    }
+
+    private static void parseHourly(JsonParser parser, List<WeatherForecast.Hour> hourly) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            long datetime = 0;
+            double temp = 0;
+            double feelsLike = 0;
+            int visibility = 0;
+            double windSpeed = 0;
+            String[] condition = {"", ""};
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "dt" -> datetime = parser.getValueAsLong();
+                    case "temp" -> temp = parser.getValueAsDouble();
+                    case "feels_like" -> feelsLike = parser.getValueAsDouble();
+                    case "visibility" -> visibility = parser.getValueAsInt();
+                    case "wind_speed" -> windSpeed = parser.getValueAsDouble();
+                    case "weather" -> condition = parseCondition(parser, value);
+                    default -> parser.skipChildren();
+                }
+            }
+            hourly.add(new WeatherForecast.Hour(datetime, temp, feelsLike, visibility, windSpeed, condition[0], condition[1]));
+        }
+    }
+
+    // main и description первого элемента массива weather, остальные элементы пропускаются
+    private static String[] parseCondition(JsonParser parser, JsonToken value) throws IOException {
+        String[] condition = {"", ""};
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return condition;
+        }
+        boolean first = true;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (!first || parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            first = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String weatherField = parser.currentName();
+                parser.nextToken();
+                switch (weatherField) {
+                    case "main" -> condition[0] = parser.getValueAsString("");
+                    case "description" -> condition[1] = parser.getValueAsString("");
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return condition;
+    }
+
+    private static CityCoordinates parseCityCoordinates(JsonParser parser, String city) throws IOException, CoordinateException, APIKeyException {
+        JsonToken root = parser.nextToken();
+        if (root == JsonToken.START_OBJECT) {
+            throwError(parser, city);
+        }
+        if (root != JsonToken.START_ARRAY || parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new CoordinateException(String.format("The city %s was not found", city));
+        }
+
+        // Разбираем только первый найденный город, остаток ответа не читаем
+        String cityName = "";
+        double lat = 0;
+        double lon = 0;
+        List<String> localNames = List.of();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "name" -> cityName = parser.getValueAsString("");
+                case "lat" -> lat = parser.getValueAsDouble();
+                case "lon" -> lon = parser.getValueAsDouble();
+                case "local_names" -> localNames = value == JsonToken.START_OBJECT ? parseLocalNames(parser) : skip(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return new CityCoordinates(cityName, lat, lon, localNames);
+    }
+
+    private static List<String> parseLocalNames(JsonParser parser) throws IOException {
+        List<String> localNames = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            parser.nextToken();
+            String name = parser.getValueAsString();
+            if (name != null && !name.isEmpty()) {
+                localNames.add(name);
+            }
+        }
+        return localNames;
+    }
+
+    private static List<String> skip(JsonParser parser) throws IOException {
+        parser.skipChildren();
+        return List.of();
+    }
+
+    private static void throwError(JsonParser parser, String city) throws IOException, CoordinateException, APIKeyException {
+        String code = null;
+        String message = "";
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "cod" -> code = parser.getValueAsString();
+                case "message" -> message = parser.getValueAsString("");
+                default -> parser.skipChildren();
+            }
+        }
+        if (code == null) {
+            throw new CoordinateException(String.format("The city %s was not found", city));
+        }
+        if (code.equals("401")) {
+            throw new APIKeyException(message);
+        }
+        throw new CoordinateException(message);
+    }
+
+    private static void expect(JsonParser parser, JsonToken token) throws IOException {
+        if (parser.nextToken() != token) {
+            throw new IOException("Unexpected OpenWeatherMap response: expected " + token + " but got " + parser.currentToken());
+        }
+    }
+}
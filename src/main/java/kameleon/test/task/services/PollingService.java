@@ -1,82 +1,538 @@
 package kameleon.test.task.services;
 
+import kameleon.test.task.exceptions.QuotaExceededException;
+import kameleon.test.task.metrics.LatencyHistogram;
 import kameleon.test.task.model.CityCoordinates;
 import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.model.PollingSweepReport;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 
 public class PollingService {
     private static final Logger logger = Logger.getLogger(PollingService.class.getName());
+    public static final int DEFAULT_CONCURRENCY = 4;
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 10;
+    public static final double DEFAULT_JITTER = 0.1;
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_WHEEL_SIZE = 4096;
+    // Повтор после ошибки: 30 с, удваивается с каждой ошибкой подряд, но не дольше интервала опроса
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // Сколько наступившие сроки ждут полной пачки group: не дольше десятой части интервала
+    private static final long GROUP_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
 
     private final AtomicBoolean isRunning;
     private final long pollingIntervalMinutes;
+    private final int concurrency;
+    private final RateLimiter rateLimiter;
+    private final PollingStrategy pollingStrategy;
+    private final CityRefresher cityRefresher;
+    private final BatchRefresher batchRefresher;
+    // null - обход всех городов раз в интервал; иначе у каждого города свой срок обновления
+    private final TimingWheel<String> wheel;
+    private final double jitter;
+    private final long intervalNanos;
+    private final Map<String, Integer> failuresInRow = new ConcurrentHashMap<>();
+    // Обновления по срокам: свой виртуальный поток на пачку, не больше concurrency одновременно
+    private final ExecutorService refreshExecutor;
+    private final Semaphore refreshPermits;
+    // Наступившие сроки, которые ждут, пока наберется пачка для batchRefresher
+    private Map<String, CityCoordinates> grouping = new LinkedHashMap<>();
+    private long groupingSinceNanos;
+    private final long groupWindowNanos;
+    private long nextDiscoveryNanos;
     private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    // Поток текущего обхода на общем планировщике: stop прерывает его и дожидается завершения
+    private final Object sweepLock = new Object();
+    private Thread sweepThread;
+    private volatile ScheduledFuture<?> scheduledSweeps;
     private final CacheService cacheService;
     private final OpenWeatherMapRequestsService openWeatherMapRequestsService;
+    private volatile PollingSweepReport lastSweepReport;
+    private final LatencyHistogram sweepDuration = new LatencyHistogram();
+    // Возраст данных города в момент его обновления: насколько устаревшими они успели стать
+    private final LatencyHistogram staleness = new LatencyHistogram();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
 
     public PollingService(CacheService cacheService,
                           long pollingIntervalMinutes,
                           OpenWeatherMapRequestsService openWeatherMapRequestsService) {
-        this.openWeatherMapRequestsService = openWeatherMapRequestsService;
-        this.cacheService = cacheService;
-        this.pollingIntervalMinutes = pollingIntervalMinutes;
-        this.scheduler = Executors.newScheduledThreadPool(1);
+        this(builder(cacheService, pollingIntervalMinutes, openWeatherMapRequestsService));
+    }
+
+    private PollingService(Builder builder) {
+        this.openWeatherMapRequestsService = builder.openWeatherMapRequestsService;
+        this.cacheService = builder.cacheService;
+        this.pollingIntervalMinutes = builder.pollingIntervalMinutes;
+        this.concurrency = builder.concurrency;
+        this.rateLimiter = builder.rateLimiter != null ? builder.rateLimiter : new RateLimiter(DEFAULT_REQUESTS_PER_SECOND);
+        this.pollingStrategy = builder.pollingStrategy != null ? builder.pollingStrategy : new AllCitiesPollingStrategy();
+        this.cityRefresher = builder.cityRefresher != null ? builder.cityRefresher : this::updateCityWeather;
+        this.batchRefresher = builder.batchRefresher;
+        this.jitter = builder.jitter;
+        this.intervalNanos = TimeUnit.MINUTES.toNanos(pollingIntervalMinutes);
+        // Оборот колеса покрывает самый дальний срок, поэтому каждый город проверяется только в свой тик
+        long maxDelayTicks = (long) (intervalNanos * (1 + jitter) / TICK_NANOS) + 1;
+        int wheelSize = (int) Math.min(MAX_WHEEL_SIZE, Long.highestOneBit(maxDelayTicks) << 1);
+        long now = System.nanoTime();
+        this.wheel = jitter > 0 ? new TimingWheel<>(TICK_NANOS, wheelSize, now) : null;
+        this.refreshExecutor = wheel != null ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        this.refreshPermits = new Semaphore(concurrency);
+        this.groupWindowNanos = Math.min(GROUP_WINDOW_NANOS, intervalNanos / 10);
+        this.nextDiscoveryNanos = now;
+        this.ownsScheduler = builder.scheduler == null;
+        this.scheduler = ownsScheduler ? Executors.newScheduledThreadPool(1) : builder.scheduler;
         this.isRunning = new AtomicBoolean(false);
     }
 
+    public static Builder builder(CacheService cacheService, long pollingIntervalMinutes,
+                                  OpenWeatherMapRequestsService openWeatherMapRequestsService) {
+        return new Builder(cacheService, pollingIntervalMinutes, openWeatherMapRequestsService);
+    }
+
     public void start() {
         if (isRunning.compareAndSet(false, true)) {
-            scheduler.scheduleAtFixedRate(this::updateAllCachedCities,
-                    0, pollingIntervalMinutes, TimeUnit.MINUTES);
+            // Общий поток планировщика только запускает обходы: сам обход идет на виртуальном потоке,
+            // чтобы долгий обход одного SDK не задерживал остальные
+            if (wheel != null) {
+                Runnable tick = () -> advanceSchedule(System.nanoTime());
+                scheduledSweeps = scheduler.scheduleAtFixedRate(ownsScheduler ? tick : () -> startSweep(tick),
+                        0, TICK_NANOS, TimeUnit.NANOSECONDS);
+                return;
+            }
+            Runnable sweep = ownsScheduler ? this::updateAllCachedCities : () -> startSweep(this::updateAllCachedCities);
+            scheduledSweeps = scheduler.scheduleAtFixedRate(sweep, 0, pollingIntervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    private void startSweep(Runnable sweep) {
+        synchronized (sweepLock) {
+            if (!isRunning.get() || !sweeping.compareAndSet(false, true)) {
+                return;
+            }
+            sweepThread = Thread.ofVirtual().name("weather-polling-sweep").start(() -> {
+                try {
+                    sweep.run();
+                } finally {
+                    sweeping.set(false);
+                }
+            });
         }
     }
 
     public void stop() {
         if (isRunning.compareAndSet(true, false)) {
-            scheduler.shutdown();
-            try {
-                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+            if (!ownsScheduler) {
+                scheduledSweeps.cancel(false);
+                Thread sweep;
+                synchronized (sweepLock) {
+                    sweep = sweepThread;
+                }
+                if (sweep != null) {
+                    sweep.interrupt();
+                    try {
+                        if (!sweep.join(Duration.ofSeconds(5))) {
+                            logger.warning("Polling sweep did not stop within 5 seconds");
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            } else {
+                scheduler.shutdown();
+                try {
+                    if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                        scheduler.shutdownNow();
+                    }
+                } catch (InterruptedException e) {
                     scheduler.shutdownNow();
+                    Thread.currentThread().interrupt();
                 }
-            } catch (InterruptedException e) {
-                scheduler.shutdownNow();
-                Thread.currentThread().interrupt();
+            }
+            // Обновления по срокам прерываются: города не считаются обновленными
+            if (refreshExecutor != null) {
+                refreshExecutor.shutdownNow();
             }
         }
     }
 
-    private void updateAllCachedCities() {
+    // Обход: все города, выбранные pollingStrategy, обновляются за один раз
+    void updateAllCachedCities() {
+        Instant startedAt = Instant.now();
+        long start = System.nanoTime();
+        AtomicInteger refreshed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        Map<String, CityCoordinates> cities = Map.of();
+
         try {
-            Map<String, CityCoordinates> cities = cacheService.getCachedCityCoordinates();
+            cities = pollingStrategy.selectCitiesToRefresh(cacheService, Duration.ofMinutes(pollingIntervalMinutes));
+            dispatch(cities, refreshed, failed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warning(("Critical error in polling service: " + e.getMessage()));
+        }
 
-            for (String city : cities.keySet()) {
-                try {
-                    updateCityWeather(cities.get(city));
-                    // Небольшая пауза между запросами чтобы не нагружать API
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                } catch (Exception e) {
-                    logger.warning("Failed to update weather for city: " + city + " - " + e.getMessage());
+        Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        sweepDuration.record(duration.toNanos());
+        boolean overran = duration.compareTo(Duration.ofMinutes(pollingIntervalMinutes)) > 0;
+        lastSweepReport = new PollingSweepReport(startedAt, duration, cities.size(), refreshed.get(), failed.get(), overran);
+        if (overran) {
+            logger.warning("Polling sweep took " + duration + " which is longer than the polling interval of "
+                    + pollingIntervalMinutes + " minutes: " + lastSweepReport);
+        }
+    }
+
+    // Города (или пачки городов) обновляются параллельно (не больше concurrency одновременно),
+    // темп запросов ограничивает rateLimiter
+    private Map<String, Exception> dispatch(Map<String, CityCoordinates> cities, AtomicInteger refreshed, AtomicInteger failed)
+            throws InterruptedException {
+        Map<String, Exception> errors = new ConcurrentHashMap<>();
+        Semaphore permits = new Semaphore(concurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                for (Map<String, CityCoordinates> batch : batches(cities)) {
+                    permits.acquire();
+                    try {
+                        rateLimiter.acquire();
+                    } catch (InterruptedException e) {
+                        permits.release();
+                        throw e;
+                    }
+                    executor.execute(() -> {
+                        try {
+                            errors.putAll(refresh(batch, refreshed, failed));
+                        } finally {
+                            permits.release();
+                        }
+                    });
                 }
+            } catch (InterruptedException e) {
+                // Обход остановлен: прерываем и уже начатые обновления, иначе close будет ждать их ответов
+                executor.shutdownNow();
+                throw e;
             }
-        } catch (Exception e) {
-            logger.warning(("Critical error in polling service: " + e.getMessage()));
         }
+        return errors;
+    }
+
+    // Тик колеса: новые города кэша получают срок, наступившие сроки отправляются на обновление. Тик не ждет
+    // обновлений: каждый город получает следующий срок по результату своего обновления, поэтому зависший запрос
+    // одного города не задерживает сроки остальных. Весь кэш просматривается только раз в интервал - чтобы найти
+    // города, добавленные в обход track. Возвращает завершение обновлений, отправленных этим тиком
+    synchronized CompletableFuture<Void> advanceSchedule(long nowNanos) {
+        if (nowNanos - nextDiscoveryNanos >= 0) {
+            nextDiscoveryNanos = nowNanos + intervalNanos;
+            for (String city : cacheService.getCachedCityCoordinates().keySet()) {
+                wheel.scheduleIfAbsent(city, nowNanos + (long) (ThreadLocalRandom.current().nextDouble() * intervalNanos));
+            }
+        }
+
+        Map<String, CityCoordinates> due = new LinkedHashMap<>();
+        for (String city : wheel.advance(nowNanos)) {
+            CityCoordinates cityCoordinates = cacheService.peekCityCoordinates(city);
+            if (cityCoordinates == null) {
+                // Город вытеснен из кэша: срок ему больше не нужен
+                failuresInRow.remove(city);
+                continue;
+            }
+            due.put(city, cityCoordinates);
+        }
+        // Сроки разнесены по интервалу, поэтому за один тик наступают единицы городов: для запросов group они
+        // копятся, пока не наберется полная пачка или не пройдет окно ожидания
+        if (batchRefresher != null) {
+            if (grouping.isEmpty()) {
+                groupingSinceNanos = nowNanos;
+            }
+            grouping.putAll(due);
+            if (grouping.size() < OpenWeatherMapRequestsService.MAX_GROUP_SIZE && nowNanos - groupingSinceNanos < groupWindowNanos) {
+                return CompletableFuture.completedFuture(null);
+            }
+            due = grouping;
+            grouping = new LinkedHashMap<>();
+        }
+
+        List<CompletableFuture<Void>> refreshes = new ArrayList<>();
+        if (refreshExecutor.isShutdown()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        for (Map<String, CityCoordinates> batch : batches(due)) {
+            refreshes.add(CompletableFuture.runAsync(() -> reschedule(batch, refreshLimited(batch), nowNanos), refreshExecutor));
+        }
+        return CompletableFuture.allOf(refreshes.toArray(CompletableFuture[]::new));
     }
 
-    private void updateCityWeather(CityCoordinates city) {
+    // Место из concurrency и токен rateLimiter берутся уже на потоке обновления, а не в тике
+    private Map<String, Exception> refreshLimited(Map<String, CityCoordinates> batch) {
         try {
-            CurrentWeather currentWeather = openWeatherMapRequestsService.getCurrentWeather(city);
-            cacheService.cache(currentWeather, city.getCityName());
-        } catch (Exception e) {
-            logger.warning(("Failed to fetch weather for " + city.getCityName() + ": " + e.getMessage()));
+            refreshPermits.acquire();
+        } catch (InterruptedException e) {
+            return notRefreshed(batch, e);
+        }
+        try {
+            rateLimiter.acquire();
+            return refresh(batch, new AtomicInteger(), new AtomicInteger());
+        } catch (InterruptedException e) {
+            return notRefreshed(batch, e);
+        } finally {
+            refreshPermits.release();
+        }
+    }
+
+    // Обновление прервано (остановка опроса): города не обновлены и повторяются как после ошибки
+    private static Map<String, Exception> notRefreshed(Map<String, CityCoordinates> batch, InterruptedException e) {
+        Thread.currentThread().interrupt();
+        Map<String, Exception> errors = new HashMap<>();
+        batch.keySet().forEach(city -> errors.put(city, e));
+        return errors;
+    }
+
+    private void reschedule(Map<String, CityCoordinates> batch, Map<String, Exception> errors, long dueNanos) {
+        for (String city : batch.keySet()) {
+            if (!errors.containsKey(city)) {
+                failuresInRow.remove(city);
+                wheel.schedule(city, dueNanos + jittered(intervalNanos));
+                continue;
+            }
+            int failures = failuresInRow.merge(city, 1, Integer::sum);
+            long retry = RETRY_NANOS << Math.min(failures - 1, 20);
+            wheel.schedule(city, dueNanos + jittered(Math.min(intervalNanos, retry)));
+        }
+    }
+
+    // Новый город кэша получает срок сразу, не дожидаясь просмотра кэша; в режиме обходов ничего не делает
+    void track(String city) {
+        if (wheel != null) {
+            wheel.scheduleIfAbsent(city, System.nanoTime() + jittered(intervalNanos));
+        }
+    }
+
+    private long jittered(long nanos) {
+        return (long) (nanos * (1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1)));
+    }
+
+    int getScheduledCityCount() {
+        return wheel == null ? 0 : wheel.size();
+    }
+
+    // Каждая пачка - ровно один запрос: города, которые нельзя объединить с другими (groupKey null или уже
+    // занятый в пачке), идут отдельными пачками по одному городу
+    private List<Map<String, CityCoordinates>> batches(Map<String, CityCoordinates> cities) {
+        int batchSize = batchRefresher != null ? OpenWeatherMapRequestsService.MAX_GROUP_SIZE : 1;
+        List<Map<String, CityCoordinates>> batches = new ArrayList<>();
+        Map<String, CityCoordinates> batch = new LinkedHashMap<>();
+        Set<Object> keys = new HashSet<>();
+        for (Map.Entry<String, CityCoordinates> city : cities.entrySet()) {
+            Object key = batchRefresher != null ? batchRefresher.groupKey(city.getKey()) : city.getKey();
+            if (key == null || !keys.add(key)) {
+                batches.add(Map.of(city.getKey(), city.getValue()));
+                continue;
+            }
+            batch.put(city.getKey(), city.getValue());
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new LinkedHashMap<>();
+                keys.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private Map<String, Exception> refresh(Map<String, CityCoordinates> batch, AtomicInteger refreshed, AtomicInteger failed) {
+        Map<String, Long> ages = new HashMap<>();
+        batch.keySet().forEach(city -> ages.put(city, cacheService.getAgeNanos(city)));
+        Map<String, Exception> errors = new HashMap<>();
+        if (batchRefresher == null) {
+            Map.Entry<String, CityCoordinates> city = batch.entrySet().iterator().next();
+            try {
+                cityRefresher.refresh(city.getKey(), city.getValue());
+            } catch (Exception e) {
+                errors.put(city.getKey(), e);
+            }
+        } else {
+            try {
+                errors.putAll(batchRefresher.refresh(batch));
+            } catch (Exception e) {
+                batch.keySet().forEach(city -> errors.put(city, e));
+            }
+        }
+
+        for (String city : batch.keySet()) {
+            Exception error = errors.get(city);
+            if (error == null) {
+                refreshed.incrementAndGet();
+                refreshes.increment();
+                long age = ages.get(city);
+                if (age >= 0) {
+                    staleness.record(age);
+                }
+                continue;
+            }
+            failed.incrementAndGet();
+            failures.increment();
+            if (error instanceof QuotaExceededException) {
+                // Опрос отброшен, чтобы сохранить квоту для пользователей: город обновится в следующий раз
+                logger.fine("Skipped weather update for city: " + city + " - " + error.getMessage());
+            } else {
+                logger.warning("Failed to update weather for city: " + city + " - " + error.getMessage());
+            }
+        }
+        return errors;
+    }
+
+    private void updateCityWeather(String city, CityCoordinates cityCoordinates) throws Exception {
+        CurrentWeather currentWeather = openWeatherMapRequestsService.getCurrentWeather(cityCoordinates);
+        cacheService.cache(currentWeather, city);
+    }
+
+    public PollingSweepReport getLastSweepReport() {
+        return lastSweepReport;
+    }
+
+    public LatencyHistogram getSweepDuration() {
+        return sweepDuration;
+    }
+
+    public LatencyHistogram getStaleness() {
+        return staleness;
+    }
+
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    // Обновление пачки городов (ключ кэша -> координаты); возвращает ошибки по городам, остальные считаются
+    // обновленными. Исключение - не обновлен ни один город пачки
+    @FunctionalInterface
+    public interface BatchRefresher {
+        Map<String, Exception> refresh(Map<String, CityCoordinates> cities) throws Exception;
+
+        // Города с равными ключами не попадают в одну пачку; null - город обновляется отдельным запросом
+        default Object groupKey(String city) {
+            return city;
+        }
+    }
+
+    // Способ обновления одного города; по умолчанию - запрос в API и запись в кэш
+    @FunctionalInterface
+    public interface CityRefresher {
+        void refresh(String city, CityCoordinates cityCoordinates) throws Exception;
+    }
+    public static class Builder {
+        private final CacheService cacheService;
+        private final long pollingIntervalMinutes;
+        private final OpenWeatherMapRequestsService openWeatherMapRequestsService;
+        private int concurrency = DEFAULT_CONCURRENCY;
+        private RateLimiter rateLimiter;
+        private PollingStrategy pollingStrategy;
+        private CityRefresher cityRefresher;
+        private ScheduledExecutorService scheduler;
+        private BatchRefresher batchRefresher;
+        private double jitter;
+
+        private Builder(CacheService cacheService, long pollingIntervalMinutes, OpenWeatherMapRequestsService openWeatherMapRequestsService) {
+            if (cacheService == null) {
+                throw new IllegalArgumentException("cacheService cannot be null");
+            }
+            if (pollingIntervalMinutes <= 0) {
+                throw new IllegalArgumentException("pollingIntervalMinutes must be positive");
+            }
+            this.cacheService = cacheService;
+            this.pollingIntervalMinutes = pollingIntervalMinutes;
+            this.openWeatherMapRequestsService = openWeatherMapRequestsService;
+        }
+
+        public Builder concurrency(int concurrency) {
+            if (concurrency <= 0) {
+                throw new IllegalArgumentException("concurrency must be positive");
+            }
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        public Builder rateLimiter(RateLimiter rateLimiter) {
+            if (rateLimiter == null) {
+                throw new IllegalArgumentException("rateLimiter cannot be null");
+            }
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        // Какие города обновлять в очередном обходе; по умолчанию - все закэшированные
+        public Builder pollingStrategy(PollingStrategy pollingStrategy) {
+            if (pollingStrategy == null) {
+                throw new IllegalArgumentException("pollingStrategy cannot be null");
+            }
+            this.pollingStrategy = pollingStrategy;
+            return this;
+        }
+
+        // null - город обновляется запросом One Call напрямую в кэш
+        public Builder cityRefresher(CityRefresher cityRefresher) {
+            this.cityRefresher = cityRefresher;
+            return this;
+        }
+
+        // Общий планировщик фабрики (не останавливается в stop); null - собственный поток-планировщик
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        // Обновление пачками до MAX_GROUP_SIZE городов: пачка занимает одно место из concurrency
+        // и один токен rateLimiter; null - города обновляются по одному через cityRefresher
+        public Builder batchRefresher(BatchRefresher batchRefresher) {
+            this.batchRefresher = batchRefresher;
+            return this;
+        }
+
+        // jitter (0, 1] - вместо обходов каждый город обновляется по своему сроку: первый срок случаен в пределах
+        // интервала, следующие - интервал +-jitter от него. Так запросы распределяются по интервалу равномерно и не
+        // совпадают у узлов, запущенных одновременно; 0 - обходы
+        public Builder spread(double jitter) {
+            if (jitter < 0 || jitter > 1) {
+                throw new IllegalArgumentException("jitter must be in [0, 1]");
+            }
+            this.jitter = jitter;
+            return this;
+        }
+
+        public PollingService build() {
+            // Сроки по городам заменяют обходы, поэтому стратегия обхода при них не применялась бы
+            if (pollingStrategy != null && jitter > 0) {
+                throw new IllegalArgumentException("pollingStrategy cannot be combined with spread polling");
+            }
+            return new PollingService(this);
         }
     }
-}
\ No newline at end of file
+}
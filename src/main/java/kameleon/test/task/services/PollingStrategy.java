@@ -0,0 +1,11 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.model.CityCoordinates;
+
+import java.time.Duration;
+import java.util.Map;
+
+public interface PollingStrategy {
+    // Возвращает города (ключ кэша -> координаты), которые нужно обновить в текущем цикле опроса
+    Map<String, CityCoordinates> selectCitiesToRefresh(CacheService cacheService, Duration pollingInterval);
+}
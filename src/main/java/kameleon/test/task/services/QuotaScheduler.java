@@ -0,0 +1,245 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.exceptions.QuotaExceededException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// Единая очередь обращений к API для одного ключа: учитывает минутный и суточный лимиты, пропускает
+// запросы пользователей раньше фоновых, после 429 делает паузу (экспоненциальную, не короче Retry-After).
+// Когда остаток квоты мал, первыми отбрасываются запросы опроса, затем фоновые обновления
+public class QuotaScheduler {
+    public enum Priority {
+        // промах кэша, которого ждет пользователь
+        INTERACTIVE,
+        // фоновое обновление устаревшей записи, прогрев
+        PREFETCH,
+        // плановый опрос в режиме POLLING
+        POLLING
+    }
+
+    public static final double DEFAULT_RESERVE = 0.1;
+    static final Duration INITIAL_BACKOFF = Duration.ofSeconds(1);
+    static final Duration MAX_BACKOFF = Duration.ofMinutes(5);
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long DAY_NANOS = TimeUnit.DAYS.toNanos(1);
+
+    private final int callsPerMinute;
+    private final long callsPerDay;
+    private final double reserve;
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final int[] waiting = new int[Priority.values().length];
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private long minuteStartNanos;
+    private int minuteCalls;
+    private long dayStartNanos;
+    private long dayCalls;
+    private long blockedUntilNanos;
+    private int consecutiveRateLimits;
+    private volatile boolean backingOff;
+
+    // 0 - лимит не ограничен
+    public QuotaScheduler(int callsPerMinute, long callsPerDay) {
+        this(callsPerMinute, callsPerDay, DEFAULT_RESERVE);
+    }
+
+    // reserve - доля лимита, при остатке меньше которой отбрасывается опрос (фоновые обновления - при вдвое меньшем)
+    public QuotaScheduler(int callsPerMinute, long callsPerDay, double reserve) {
+        this(callsPerMinute, callsPerDay, reserve, System::nanoTime);
+    }
+
+    // clock - источник System.nanoTime(), в тестах подменяется, чтобы не ждать смены минутного окна
+    QuotaScheduler(int callsPerMinute, long callsPerDay, double reserve, LongSupplier clock) {
+        if (callsPerMinute < 0 || callsPerDay < 0) {
+            throw new IllegalArgumentException("call limits cannot be negative");
+        }
+        if (!(reserve >= 0 && reserve < 1)) {
+            throw new IllegalArgumentException("reserve must be in [0, 1)");
+        }
+        this.callsPerMinute = callsPerMinute;
+        this.callsPerDay = callsPerDay;
+        this.reserve = reserve;
+        this.clock = clock;
+        long now = clock.getAsLong();
+        this.minuteStartNanos = now;
+        this.dayStartNanos = now;
+    }
+
+    // Ждет разрешения на один запрос не дольше deadline; запросы более высокого приоритета проходят первыми
+    public void acquire(Priority priority, Deadline deadline) throws InterruptedException, QuotaExceededException {
+        lock.lockInterruptibly();
+        try {
+            waiting[priority.ordinal()]++;
+            try {
+                while (true) {
+                    long now = clock.getAsLong();
+                    rollWindows(now);
+                    if (priority != Priority.INTERACTIVE && (now < blockedUntilNanos || isLow(priority))) {
+                        shed.increment();
+                        throw new QuotaExceededException(now < blockedUntilNanos
+                                ? "OpenWeatherMap rate limit backoff in effect, " + priority + " request skipped"
+                                : "Remaining OpenWeatherMap quota is reserved for user requests, " + priority + " request skipped");
+                    }
+                    long waitNanos = waitNanos(now);
+                    if (waitNanos == 0 && !hasHigherPriorityWaiters(priority)) {
+                        minuteCalls++;
+                        dayCalls++;
+                        return;
+                    }
+                    long remaining = deadline == null ? 0 : deadline.remainingNanos();
+                    if (waitNanos > remaining || remaining == 0) {
+                        throw new QuotaExceededException("OpenWeatherMap quota allows the next request in "
+                                + Duration.ofNanos(waitNanos) + ", which is past the deadline");
+                    }
+                    changed.awaitNanos(waitNanos > 0 ? waitNanos : remaining);
+                }
+            } finally {
+                waiting[priority.ordinal()]--;
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Без ожидания: для асинхронных вызовов, которые не должны блокировать поток
+    public void tryAcquire(Priority priority) throws QuotaExceededException {
+        try {
+            acquire(priority, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QuotaExceededException("Interrupted while acquiring OpenWeatherMap quota");
+        }
+    }
+
+    // Необязательный вызов (дублирующая попытка хеджирования): проходит только сразу, без очереди, без паузы
+    // после 429 и пока квота не опустилась до запаса фоновых обновлений
+    public boolean tryAcquireOptional() {
+        lock.lock();
+        try {
+            long now = clock.getAsLong();
+            rollWindows(now);
+            if (waitNanos(now) > 0 || isLow(Priority.POLLING) || hasHigherPriorityWaiters(Priority.POLLING)
+                    || waiting[Priority.POLLING.ordinal()] > 0) {
+                return false;
+            }
+            minuteCalls++;
+            dayCalls++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Ответ 429: пауза удваивается с каждым ответом подряд, но не меньше retryAfter сервера
+    public void onRateLimited(Duration retryAfter) {
+        rateLimited.increment();
+        lock.lock();
+        try {
+            consecutiveRateLimits++;
+            long backoff = INITIAL_BACKOFF.toNanos() << Math.min(consecutiveRateLimits - 1, 20);
+            backoff = Math.min(backoff, MAX_BACKOFF.toNanos());
+            if (retryAfter != null) {
+                backoff = Math.max(backoff, retryAfter.toNanos());
+            }
+            blockedUntilNanos = Math.max(blockedUntilNanos, clock.getAsLong() + backoff);
+            backingOff = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onSuccess() {
+        if (!backingOff) {
+            return;
+        }
+        lock.lock();
+        try {
+            consecutiveRateLimits = 0;
+            backingOff = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void rollWindows(long now) {
+        if (now - minuteStartNanos >= MINUTE_NANOS) {
+            minuteStartNanos = now;
+            minuteCalls = 0;
+        }
+        if (now - dayStartNanos >= DAY_NANOS) {
+            dayStartNanos = now;
+            dayCalls = 0;
+        }
+    }
+
+    private long waitNanos(long now) {
+        long wait = Math.max(0, blockedUntilNanos - now);
+        if (callsPerMinute > 0 && minuteCalls >= callsPerMinute) {
+            wait = Math.max(wait, minuteStartNanos + MINUTE_NANOS - now);
+        }
+        if (callsPerDay > 0 && dayCalls >= callsPerDay) {
+            wait = Math.max(wait, dayStartNanos + DAY_NANOS - now);
+        }
+        return wait;
+    }
+
+    private boolean isLow(Priority priority) {
+        double share = priority == Priority.POLLING ? reserve : reserve / 2;
+        return (callsPerMinute > 0 && callsPerMinute - minuteCalls <= callsPerMinute * share)
+                || (callsPerDay > 0 && callsPerDay - dayCalls <= callsPerDay * share);
+    }
+
+    private boolean hasHigherPriorityWaiters(Priority priority) {
+        for (int i = 0; i < priority.ordinal(); i++) {
+            if (waiting[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // -1 - суточный лимит не задан
+    public long getRemainingToday() {
+        lock.lock();
+        try {
+            rollWindows(clock.getAsLong());
+            return callsPerDay == 0 ? -1 : Math.max(0, callsPerDay - dayCalls);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean hasWaiters() {
+        lock.lock();
+        try {
+            return hasHigherPriorityWaiters(Priority.POLLING) || waiting[Priority.POLLING.ordinal()] > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Duration getBackoffRemaining() {
+        lock.lock();
+        try {
+            return Duration.ofNanos(Math.max(0, blockedUntilNanos - clock.getAsLong()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+}
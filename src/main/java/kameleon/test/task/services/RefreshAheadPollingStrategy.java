@@ -0,0 +1,58 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.model.CityCoordinates;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Обновляет только востребованные города и делает это заранее: если запись устареет до следующего цикла,
+// она обновляется сейчас. Города, которые никто не читал дольше idleTimeout, выпадают из опроса.
+public class RefreshAheadPollingStrategy implements PollingStrategy {
+    private final Duration idleTimeout;
+    private final int maxRefreshesPerCycle;
+
+    public RefreshAheadPollingStrategy(Duration idleTimeout) {
+        this(idleTimeout, 0);
+    }
+
+    public RefreshAheadPollingStrategy(Duration idleTimeout, int maxRefreshesPerCycle) {
+        if (idleTimeout == null || idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("idleTimeout must be positive");
+        }
+        if (maxRefreshesPerCycle < 0) {
+            throw new IllegalArgumentException("maxRefreshesPerCycle cannot be negative");
+        }
+        this.idleTimeout = idleTimeout;
+        this.maxRefreshesPerCycle = maxRefreshesPerCycle;
+    }
+
+    @Override
+    public Map<String, CityCoordinates> selectCitiesToRefresh(CacheService cacheService, Duration pollingInterval) {
+        Duration refreshAfter = cacheService.getFreshness().minus(pollingInterval);
+
+        List<CacheService.CityStatistics> candidates = cacheService.getCityStatistics().stream()
+                .filter(city -> city.getIdle().compareTo(idleTimeout) <= 0)
+                .filter(city -> city.getAge().compareTo(refreshAfter) >= 0)
+                .sorted(Comparator.comparingInt(CacheService.CityStatistics::getAccesses).reversed()
+                        .thenComparing(CacheService.CityStatistics::getAge, Comparator.reverseOrder()))
+                .toList();
+
+        int limit = maxRefreshesPerCycle == 0 ? candidates.size() : Math.min(maxRefreshesPerCycle, candidates.size());
+        Map<String, CityCoordinates> selected = new LinkedHashMap<>();
+        for (CacheService.CityStatistics city : candidates.subList(0, limit)) {
+            selected.put(city.getCity(), city.getCityCoordinates());
+        }
+        return selected;
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public int getMaxRefreshesPerCycle() {
+        return maxRefreshesPerCycle;
+    }
+}
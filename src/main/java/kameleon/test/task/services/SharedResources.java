@@ -0,0 +1,123 @@
+package kameleon.test.task.services;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+// Ресурсы, общие для всех SDK фабрики: один HttpClient с пулом соединений, один поток-планировщик опроса
+// и один кэш геокодирования (координаты города не зависят от ключа API). Закрываются, когда освобождены
+// последним SDK
+public final class SharedResources {
+    private final HttpClient httpClient;
+    private final ExecutorService httpExecutor;
+    private final boolean gzip;
+    private final ScheduledExecutorService pollingScheduler;
+    private final LocationAliasIndex geocodingCache;
+    private int references;
+    private boolean closed;
+
+    private SharedResources(Builder builder) {
+        this.httpExecutor = builder.virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        HttpClient.Builder client = HttpClient.newBuilder().connectTimeout(builder.connectTimeout);
+        if (httpExecutor != null) {
+            client.executor(httpExecutor);
+        }
+        this.httpClient = client.build();
+        this.gzip = builder.gzip;
+        this.pollingScheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("weather-polling-scheduler")
+                .daemon(true)
+                .factory());
+        this.geocodingCache = new LocationAliasIndex(builder.geocodingCacheSize);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // false - ресурсы уже закрыты, нужно создать новые
+    public synchronized boolean retain() {
+        if (closed) {
+            return false;
+        }
+        references++;
+        return true;
+    }
+
+    public synchronized void release() {
+        if (closed || references == 0) {
+            return;
+        }
+        if (--references == 0) {
+            closed = true;
+            pollingScheduler.shutdownNow();
+            httpClient.close();
+            if (httpExecutor != null) {
+                httpExecutor.close();
+            }
+        }
+    }
+
+    public synchronized int getReferenceCount() {
+        return references;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    OpenWeatherMapRequestsService newRequestsService(String apiKey, String baseUrl, double hedgePercentile) {
+        return new OpenWeatherMapRequestsService(apiKey, baseUrl, hedgePercentile, httpClient, gzip);
+    }
+
+    ScheduledExecutorService getPollingScheduler() {
+        return pollingScheduler;
+    }
+
+    LocationAliasIndex getGeocodingCache() {
+        return geocodingCache;
+    }
+
+    public static class Builder {
+        private boolean virtualThreads;
+        private boolean gzip = true;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private int geocodingCacheSize = LocationAliasIndex.DEFAULT_MAX_ALIASES;
+
+        private Builder() {
+        }
+
+        // Обработка ответов HttpClient на виртуальных потоках вместо его собственного пула
+        public Builder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        public Builder gzip(boolean gzip) {
+            this.gzip = gzip;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            if (connectTimeout == null || connectTimeout.isNegative() || connectTimeout.isZero()) {
+                throw new IllegalArgumentException("connectTimeout must be positive");
+            }
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder geocodingCacheSize(int geocodingCacheSize) {
+            if (geocodingCacheSize <= 0) {
+                throw new IllegalArgumentException("geocodingCacheSize must be positive");
+            }
+            this.geocodingCacheSize = geocodingCacheSize;
+            return this;
+        }
+
+        public SharedResources build() {
+            return new SharedResources(this);
+        }
+    }
+}
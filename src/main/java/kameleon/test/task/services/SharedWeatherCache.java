@@ -0,0 +1,492 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.model.CityCoordinates;
+import kameleon.test.task.model.CurrentWeather;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+// Общий для нескольких JVM на одном хосте кэш погоды в файле, отображенном в память.
+// Файл - заголовок и хэш-таблица с открытой адресацией из записей фиксированного размера.
+// Чтение без блокировок по схеме seqlock: писатель делает счетчик записи нечетным на время изменения,
+// читатель повторяет чтение, если счетчик изменился. Нечетный счетчик хранит время начала записи: запись,
+// не законченная за WRITE_TIMEOUT_MILLIS (процесс-писатель умер), сбрасывается следующим читателем или
+// писателем, иначе она осталась бы недоступной навсегда. Поле claim позволяет одному процессу
+// "забронировать" обновление устаревшей записи, чтобы остальные не ходили в API за тем же городом.
+// Записи не удаляются: когда в окне проб нет свободной ячейки, новый ключ занимает запись, которая дольше всех
+// не обновлялась
+public class SharedWeatherCache implements AutoCloseable {
+    public static final int DEFAULT_SLOTS = 4096;
+
+    private static final Logger logger = Logger.getLogger(SharedWeatherCache.class.getName());
+
+    private static final long MAGIC = 0x4B414D454C454F4EL;
+    // 2 - счетчик записи хранит время начала записи; 3 - время последней записи для вытеснения
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 512;
+    private static final int MAX_PROBES = 64;
+    private static final int MAX_READ_ATTEMPTS = 16;
+    // Запись занимает микросекунды: незаконченная дольше брошена писателем
+    private static final long WRITE_TIMEOUT_MILLIS = 5_000;
+
+    // Раскладка записи
+    private static final int SEQ = 0;
+    private static final int CLAIM = 8;
+    private static final int KEY_HASH = 16;
+    private static final int FETCHED_AT = 24;
+    private static final int DATETIME = 32;
+    private static final int SUNRISE = 40;
+    private static final int SUNSET = 48;
+    private static final int TEMP = 56;
+    private static final int FEELS_LIKE = 64;
+    private static final int WIND_SPEED = 72;
+    private static final int LATITUDE = 80;
+    private static final int LONGITUDE = 88;
+    private static final int VISIBILITY = 96;
+    private static final int TIMEZONE = 100;
+    private static final int KEY = 104;
+    private static final int KEY_SIZE = 128;
+    private static final int CITY_NAME = KEY + KEY_SIZE;
+    private static final int CITY_NAME_SIZE = 128;
+    private static final int MAIN = CITY_NAME + CITY_NAME_SIZE;
+    private static final int MAIN_SIZE = 32;
+    private static final int DESCRIPTION = MAIN + MAIN_SIZE;
+    private static final int DESCRIPTION_SIZE = 96;
+    private static final int WRITTEN_AT = DESCRIPTION + DESCRIPTION_SIZE;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final int slotMask;
+    private final AtomicBoolean fullReported = new AtomicBoolean();
+
+    private SharedWeatherCache(Path path, FileChannel channel, MappedByteBuffer buffer, int slots) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slots = slots;
+        this.slotMask = slots - 1;
+    }
+
+    public static SharedWeatherCache open(Path path) throws IOException {
+        return open(path, DEFAULT_SLOTS);
+    }
+
+    public static SharedWeatherCache open(Path path, int slots) throws IOException {
+        if (slots <= 0 || Integer.bitCount(slots) != 1) {
+            throw new IllegalArgumentException("slots must be a positive power of two");
+        }
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try (FileLock ignored = channel.lock()) {
+            long size = HEADER_SIZE + (long) slots * RECORD_SIZE;
+            if (channel.size() == 0) {
+                channel.truncate(size);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.nativeOrder());
+                buffer.putInt(8, VERSION);
+                buffer.putInt(12, slots);
+                buffer.putInt(16, RECORD_SIZE);
+                buffer.putLong(0, MAGIC);
+                buffer.force();
+                return new SharedWeatherCache(path, channel, buffer, slots);
+            }
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.nativeOrder());
+            if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION || header.getInt(16) != RECORD_SIZE) {
+                throw new IOException(path + " is not a shared weather cache file of version " + VERSION);
+            }
+            int existingSlots = header.getInt(12);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) existingSlots * RECORD_SIZE);
+            buffer.order(ByteOrder.nativeOrder());
+            return new SharedWeatherCache(path, channel, buffer, existingSlots);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    // Ищет запись по ключу; при create занимает свободную ячейку, а если окно проб заполнено - самую давно
+    // записанную. Возвращает смещение записи или -1
+    private int findRecord(long keyHash, byte[] key, boolean create) {
+        int slot = (int) (keyHash ^ (keyHash >>> 32)) & slotMask;
+        long now = System.currentTimeMillis();
+        int victim = -1;
+        long victimWrittenAt = Long.MAX_VALUE;
+        for (int probe = 0; probe < Math.min(MAX_PROBES, slots); probe++) {
+            int offset = slotOffset((slot + probe) & slotMask);
+            long current = (long) LONGS.getVolatile(buffer, offset + KEY_HASH);
+            if (current == keyHash) {
+                return offset;
+            }
+            if (current == 0) {
+                if (!create) {
+                    return -1;
+                }
+                if (LONGS.compareAndSet(buffer, offset + KEY_HASH, 0L, keyHash)) {
+                    writeString(offset + KEY, KEY_SIZE, key);
+                    return offset;
+                }
+                if ((long) LONGS.getVolatile(buffer, offset + KEY_HASH) == keyHash) {
+                    return offset;
+                }
+                continue;
+            }
+            // Забронированную запись не вытесняем: за ней уже идет в API другой процесс
+            long writtenAt = buffer.getLong(offset + WRITTEN_AT);
+            if (create && writtenAt < victimWrittenAt && (long) LONGS.getVolatile(buffer, offset + CLAIM) <= now) {
+                victim = offset;
+                victimWrittenAt = writtenAt;
+            }
+        }
+        return victim < 0 ? -1 : replace(victim, keyHash, key);
+    }
+
+    // Отдает запись другому ключу под той же схемой seqlock: читатель старого ключа увидит чужой ключ и промах
+    private int replace(int offset, long keyHash, byte[] key) {
+        if (fullReported.compareAndSet(false, true)) {
+            logger.warning("Shared weather cache " + path + " is full, replacing the least recently written records; "
+                    + "consider more slots than " + slots);
+        }
+        long writing = beginWrite(offset);
+        if (writing < 0) {
+            return -1;
+        }
+        try {
+            LONGS.setVolatile(buffer, offset + KEY_HASH, keyHash);
+            LONGS.setVolatile(buffer, offset + CLAIM, 0L);
+            buffer.putLong(offset + FETCHED_AT, 0L);
+            buffer.putLong(offset + WRITTEN_AT, System.currentTimeMillis());
+            writeString(offset + KEY, KEY_SIZE, key);
+            writeString(offset + CITY_NAME, CITY_NAME_SIZE, new byte[0]);
+        } finally {
+            endWrite(offset, writing);
+        }
+        return offset;
+    }
+
+    // Под блокировкой записи: пока ключ искали, запись могли отдать другому ключу
+    private boolean ownedBy(int offset, long keyHash, long writing) {
+        if ((long) LONGS.getVolatile(buffer, offset + KEY_HASH) == keyHash) {
+            return true;
+        }
+        endWrite(offset, writing);
+        return false;
+    }
+
+    public SharedEntry get(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > KEY_SIZE - 2) {
+            return null;
+        }
+        int offset = findRecord(hash(keyBytes), keyBytes, false);
+        if (offset < 0) {
+            return null;
+        }
+
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            long seq = (long) LONGS.getAcquire(buffer, offset + SEQ);
+            if ((seq & 1) != 0) {
+                waitForWriter(offset, seq);
+                continue;
+            }
+            long fetchedAt = buffer.getLong(offset + FETCHED_AT);
+            String storedKey = readString(offset + KEY, KEY_SIZE);
+            CityCoordinates cityCoordinates = new CityCoordinates(readString(offset + CITY_NAME, CITY_NAME_SIZE),
+                    buffer.getDouble(offset + LATITUDE), buffer.getDouble(offset + LONGITUDE));
+            CurrentWeather currentWeather = CurrentWeather.builder()
+                    .weather(readString(offset + MAIN, MAIN_SIZE), readString(offset + DESCRIPTION, DESCRIPTION_SIZE))
+                    .temperature(buffer.getDouble(offset + TEMP), buffer.getDouble(offset + FEELS_LIKE))
+                    .visibility(buffer.getInt(offset + VISIBILITY))
+                    .wind(buffer.getDouble(offset + WIND_SPEED))
+                    .datetime(buffer.getLong(offset + DATETIME))
+                    .sys(buffer.getLong(offset + SUNRISE), buffer.getLong(offset + SUNSET))
+                    .timezone(buffer.getInt(offset + TIMEZONE))
+                    .cityName(cityCoordinates.getCityName())
+                    .timestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(fetchedAt), ZoneId.systemDefault()))
+                    .build();
+
+            VarHandle.acquireFence();
+            if ((long) LONGS.getVolatile(buffer, offset + SEQ) != seq) {
+                continue;
+            }
+            if (fetchedAt == 0 || !storedKey.equals(key)) {
+                return null;
+            }
+            return new SharedEntry(currentWeather, cityCoordinates, Instant.ofEpochMilli(fetchedAt));
+        }
+        return null;
+    }
+
+    public boolean put(String key, CityCoordinates cityCoordinates, CurrentWeather currentWeather) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > KEY_SIZE - 2) {
+            return false;
+        }
+        long keyHash = hash(keyBytes);
+        int offset = findRecord(keyHash, keyBytes, true);
+        if (offset < 0) {
+            return false;
+        }
+
+        long writing = beginWrite(offset);
+        if (writing < 0) {
+            // Запись прямо сейчас обновляет другой процесс - его данные не хуже наших
+            return false;
+        }
+        if (!ownedBy(offset, keyHash, writing)) {
+            return false;
+        }
+        try {
+            buffer.putLong(offset + WRITTEN_AT, System.currentTimeMillis());
+            long fetchedAt = currentWeather.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            buffer.putLong(offset + FETCHED_AT, fetchedAt);
+            buffer.putLong(offset + DATETIME, currentWeather.getDatetime());
+            buffer.putLong(offset + SUNRISE, currentWeather.getSys().getSunrise());
+            buffer.putLong(offset + SUNSET, currentWeather.getSys().getSunset());
+            buffer.putDouble(offset + TEMP, currentWeather.getTemperature().getTemp());
+            buffer.putDouble(offset + FEELS_LIKE, currentWeather.getTemperature().getFeelsLike());
+            buffer.putDouble(offset + WIND_SPEED, currentWeather.getWind().getWindSpeed());
+            buffer.putDouble(offset + LATITUDE, cityCoordinates.getLatitude());
+            buffer.putDouble(offset + LONGITUDE, cityCoordinates.getLongitude());
+            buffer.putInt(offset + VISIBILITY, currentWeather.getVisibility());
+            buffer.putInt(offset + TIMEZONE, currentWeather.getTimezone());
+            writeString(offset + KEY, KEY_SIZE, keyBytes);
+            writeString(offset + CITY_NAME, CITY_NAME_SIZE, utf8(cityCoordinates.getCityName()));
+            writeString(offset + MAIN, MAIN_SIZE, utf8(currentWeather.getWeather().getMain()));
+            writeString(offset + DESCRIPTION, DESCRIPTION_SIZE, utf8(currentWeather.getWeather().getDescription()));
+        } finally {
+            endWrite(offset, writing);
+        }
+        return true;
+    }
+
+    // Запись только с координатами (например, вариант написания города -> место) без данных о погоде
+    public boolean putCityCoordinates(String key, CityCoordinates cityCoordinates) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > KEY_SIZE - 2) {
+            return false;
+        }
+        long keyHash = hash(keyBytes);
+        int offset = findRecord(keyHash, keyBytes, true);
+        if (offset < 0) {
+            return false;
+        }
+
+        long writing = beginWrite(offset);
+        if (writing < 0) {
+            return false;
+        }
+        if (!ownedBy(offset, keyHash, writing)) {
+            return false;
+        }
+        try {
+            buffer.putLong(offset + WRITTEN_AT, System.currentTimeMillis());
+            buffer.putDouble(offset + LATITUDE, cityCoordinates.getLatitude());
+            buffer.putDouble(offset + LONGITUDE, cityCoordinates.getLongitude());
+            writeString(offset + KEY, KEY_SIZE, keyBytes);
+            writeString(offset + CITY_NAME, CITY_NAME_SIZE, utf8(cityCoordinates.getCityName()));
+        } finally {
+            endWrite(offset, writing);
+        }
+        return true;
+    }
+
+    public CityCoordinates getCityCoordinates(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > KEY_SIZE - 2) {
+            return null;
+        }
+        int offset = findRecord(hash(keyBytes), keyBytes, false);
+        if (offset < 0) {
+            return null;
+        }
+
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            long seq = (long) LONGS.getAcquire(buffer, offset + SEQ);
+            if ((seq & 1) != 0) {
+                waitForWriter(offset, seq);
+                continue;
+            }
+            String storedKey = readString(offset + KEY, KEY_SIZE);
+            String cityName = readString(offset + CITY_NAME, CITY_NAME_SIZE);
+            double latitude = buffer.getDouble(offset + LATITUDE);
+            double longitude = buffer.getDouble(offset + LONGITUDE);
+
+            VarHandle.acquireFence();
+            if ((long) LONGS.getVolatile(buffer, offset + SEQ) != seq) {
+                continue;
+            }
+            if (cityName.isEmpty() || !storedKey.equals(key)) {
+                return null;
+            }
+            return new CityCoordinates(cityName, latitude, longitude);
+        }
+        return null;
+    }
+
+    // Делает счетчик нечетным (с временем начала записи); -1 - запись уже изменяет живой писатель.
+    // Брошенную запись забирает себе: ее поля могли остаться наполовину записанными, поэтому погода в ней
+    // сбрасывается до записи новых данных
+    private long beginWrite(int offset) {
+        long seq = (long) LONGS.getVolatile(buffer, offset + SEQ);
+        boolean abandoned = (seq & 1) != 0;
+        if (abandoned && System.currentTimeMillis() - (seq >>> 1) < WRITE_TIMEOUT_MILLIS) {
+            return -1;
+        }
+        // Новое значение всегда больше прежнего: читатель, начавший до записи, заметит изменение
+        long writing = Math.max(System.currentTimeMillis() << 1, seq + 1) | 1;
+        if (!LONGS.compareAndSet(buffer, offset + SEQ, seq, writing)) {
+            return -1;
+        }
+        if (abandoned) {
+            buffer.putLong(offset + FETCHED_AT, 0L);
+            writeString(offset + CITY_NAME, CITY_NAME_SIZE, new byte[0]);
+        }
+        return writing;
+    }
+
+    private void endWrite(int offset, long writing) {
+        LONGS.setRelease(buffer, offset + SEQ, writing + 1);
+    }
+
+    // Читатель ждет писателя; брошенную запись сбрасывает сам, чтобы она снова стала доступной
+    private void waitForWriter(int offset, long seq) {
+        if (System.currentTimeMillis() - (seq >>> 1) < WRITE_TIMEOUT_MILLIS) {
+            Thread.onSpinWait();
+            return;
+        }
+        long writing = beginWrite(offset);
+        if (writing >= 0) {
+            endWrite(offset, writing);
+        }
+    }
+
+    // Бронирует обновление записи на claimDuration; false - обновлением уже занимается другой процесс
+    public boolean tryClaimRefresh(String key, Duration claimDuration) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > KEY_SIZE - 2) {
+            return true;
+        }
+        int offset = findRecord(hash(keyBytes), keyBytes, true);
+        if (offset < 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        long claim = (long) LONGS.getVolatile(buffer, offset + CLAIM);
+        if (claim > now) {
+            return false;
+        }
+        return LONGS.compareAndSet(buffer, offset + CLAIM, claim, now + claimDuration.toMillis());
+    }
+
+    public void releaseClaim(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > KEY_SIZE - 2) {
+            return;
+        }
+        int offset = findRecord(hash(keyBytes), keyBytes, false);
+        if (offset >= 0) {
+            LONGS.setRelease(buffer, offset + CLAIM, 0L);
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void writeString(int offset, int size, byte[] value) {
+        int length = Math.min(value.length, size - 2);
+        // Не разрезаем многобайтовый символ UTF-8 посередине
+        while (length > 0 && length < value.length && (value[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        buffer.putShort(offset, (short) length);
+        buffer.put(offset + 2, value, 0, length);
+    }
+
+    private String readString(int offset, int size) {
+        int length = Math.min(Math.max(buffer.getShort(offset), 0), size - 2);
+        byte[] value = new byte[length];
+        buffer.get(offset + 2, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static final class SharedEntry {
+        private final CurrentWeather currentWeather;
+        private final CityCoordinates cityCoordinates;
+        private final Instant fetchedAt;
+
+        private SharedEntry(CurrentWeather currentWeather, CityCoordinates cityCoordinates, Instant fetchedAt) {
+            this.currentWeather = currentWeather;
+            this.cityCoordinates = cityCoordinates;
+            this.fetchedAt = fetchedAt;
+        }
+
+        public CurrentWeather getCurrentWeather() {
+            return currentWeather;
+        }
+
+        public CityCoordinates getCityCoordinates() {
+            return cityCoordinates;
+        }
+
+        public Instant getFetchedAt() {
+            return fetchedAt;
+        }
+
+        public boolean isFresherThan(Duration maxAge) {
+            return Duration.between(fetchedAt, Instant.now()).compareTo(maxAge) < 0;
+        }
+    }
+}
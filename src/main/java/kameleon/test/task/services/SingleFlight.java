@@ -0,0 +1,139 @@
+package kameleon.test.task.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight;
+    private final LongAdder coalescedCalls;
+
+    public SingleFlight() {
+        this.inFlight = new ConcurrentHashMap<>();
+        this.coalescedCalls = new LongAdder();
+    }
+
+    // Первый поток по ключу выполняет запрос, остальные ждут его результат (или исключение)
+    public V execute(K key, Call<V> call) throws Exception {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalescedCalls.increment();
+            return await(existing);
+        }
+
+        try {
+            V value = call.call();
+            flight.complete(value);
+            return value;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    // Вариант с бюджетом времени: запрос выполняется на отдельном виртуальном потоке со своим бюджетом,
+    // а каждый вызывающий, включая первого, ждет результат не дольше своего deadline. Короткий бюджет
+    // одного вызывающего не обрывает общий запрос для остальных
+    public V execute(K key, Deadline deadline, Call<V> call) throws Exception {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalescedCalls.increment();
+            return await(existing, deadline);
+        }
+
+        Thread.ofVirtual().name("single-flight").start(() -> {
+            try {
+                flight.complete(call.call());
+            } catch (Throwable e) {
+                flight.completeExceptionally(e);
+            } finally {
+                inFlight.remove(key, flight);
+            }
+        });
+        return await(flight, deadline);
+    }
+
+    // Асинхронный вариант: ведущий вызов не блокирует поток, ожидающие получают копию общего future,
+    // чтобы отмена у одного вызывающего не отменяла запрос для остальных
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalescedCalls.increment();
+            return existing.copy();
+        }
+
+        try {
+            call.get().whenComplete((value, error) -> {
+                inFlight.remove(key, flight);
+                if (error != null) {
+                    flight.completeExceptionally(unwrap(error));
+                } else {
+                    flight.complete(value);
+                }
+            });
+        } catch (Throwable e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+        }
+        return flight.copy();
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+    private V await(CompletableFuture<V> flight) throws Exception {
+        try {
+            return flight.get();
+        } catch (ExecutionException e) {
+            throw cause(e);
+        }
+    }
+
+    private V await(CompletableFuture<V> flight, Deadline deadline) throws Exception {
+        try {
+            return flight.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw deadline.exceeded("coalesced request");
+        } catch (ExecutionException e) {
+            throw cause(e);
+        }
+    }
+
+    private static Exception cause(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Exception exception) {
+            return exception;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return e;
+    }
+
+    public long getCoalescedCallsCount() {
+        return coalescedCalls.sum();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    @FunctionalInterface
+    public interface Call<V> {
+        V call() throws Exception;
+    }
+}
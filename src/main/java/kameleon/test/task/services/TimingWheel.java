@@ -0,0 +1,132 @@
+package kameleon.test.task.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Хешированное колесо таймеров (Varghese & Lauck): срок попадает в слот по номеру своего тика, слоты - двусвязные
+// списки. Постановка, перенос и отмена - O(1), тик просматривает один слот. Сроки дальше одного оборота
+// остаются в том же слоте и пропускаются, пока не наступит их тик
+final class TimingWheel<K> {
+    private final long tickNanos;
+    private final long origin;
+    private final Node<K>[] slots;
+    private final int mask;
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+    // Последний обработанный тик
+    private long currentTick;
+
+    TimingWheel(long tickNanos, int wheelSize, long originNanos) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("tickNanos must be positive");
+        }
+        if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize must be a positive power of two");
+        }
+        this.tickNanos = tickNanos;
+        this.origin = originNanos;
+        @SuppressWarnings("unchecked")
+        Node<K>[] slots = (Node<K>[]) new Node<?>[wheelSize];
+        this.slots = slots;
+        this.mask = wheelSize - 1;
+    }
+
+    // Ставит или переносит срок ключа; прошедший срок сработает на ближайшем тике
+    synchronized void schedule(K key, long deadlineNanos) {
+        Node<K> node = nodes.get(key);
+        if (node != null) {
+            unlink(node);
+        } else {
+            node = new Node<>(key);
+            nodes.put(key, node);
+        }
+        node.tick = Math.max(currentTick + 1, Math.ceilDiv(deadlineNanos - origin, tickNanos));
+        link(node);
+    }
+
+    // false - у ключа уже есть срок, он не меняется
+    synchronized boolean scheduleIfAbsent(K key, long deadlineNanos) {
+        if (nodes.containsKey(key)) {
+            return false;
+        }
+        schedule(key, deadlineNanos);
+        return true;
+    }
+
+    synchronized boolean cancel(K key) {
+        Node<K> node = nodes.remove(key);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    synchronized boolean contains(K key) {
+        return nodes.containsKey(key);
+    }
+
+    // Продвигает колесо до текущего момента и снимает с него ключи, срок которых наступил
+    synchronized List<K> advance(long nowNanos) {
+        long nowTick = Math.floorDiv(nowNanos - origin, tickNanos);
+        List<K> expired = new ArrayList<>();
+        if (nowTick <= currentTick) {
+            return expired;
+        }
+        // После долгой паузы каждый слот достаточно просмотреть один раз
+        long first = nowTick - currentTick > slots.length ? nowTick - slots.length + 1 : currentTick + 1;
+        for (long tick = first; tick <= nowTick; tick++) {
+            Node<K> node = slots[(int) (tick & mask)];
+            while (node != null) {
+                Node<K> next = node.next;
+                if (node.tick <= nowTick) {
+                    unlink(node);
+                    nodes.remove(node.key);
+                    expired.add(node.key);
+                }
+                node = next;
+            }
+        }
+        currentTick = nowTick;
+        return expired;
+    }
+
+    synchronized int size() {
+        return nodes.size();
+    }
+
+    private void link(Node<K> node) {
+        int slot = (int) (node.tick & mask);
+        node.prev = null;
+        node.next = slots[slot];
+        if (node.next != null) {
+            node.next.prev = node;
+        }
+        slots[slot] = node;
+    }
+
+    private void unlink(Node<K> node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            slots[(int) (node.tick & mask)] = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+
+    private static final class Node<K> {
+        private final K key;
+        private long tick;
+        private Node<K> prev;
+        private Node<K> next;
+
+        private Node(K key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.model.WarmUpReport;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Ход прогрева кэша списком городов. Готовность завершается отчетом, когда обработаны все города, - в том числе
+// если часть из них загрузить не удалось: решить, достаточно ли этого, может только вызывающий (например, по getFailed)
+public final class WarmUp {
+    private final List<String> cities;
+    private final long startNanos = System.nanoTime();
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final Map<String, Exception> errors = new ConcurrentHashMap<>();
+    private final CompletableFuture<WarmUpReport> readiness = new CompletableFuture<>();
+    private volatile Thread worker;
+
+    WarmUp(List<String> cities) {
+        this.cities = List.copyOf(cities);
+    }
+
+    // Прогрев без городов готов сразу
+    static WarmUp completed() {
+        WarmUp warmUp = new WarmUp(List.of());
+        warmUp.finish();
+        return warmUp;
+    }
+
+    // Один город на строку; пустые строки и строки, начинающиеся с #, пропускаются, повторы - тоже
+    static List<String> readCities(Path file) throws IOException {
+        Set<String> cities = new LinkedHashSet<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String city = line.strip();
+            if (!city.isEmpty() && !city.startsWith("#")) {
+                cities.add(city);
+            }
+        }
+        return List.copyOf(cities);
+    }
+
+    List<String> getCities() {
+        return cities;
+    }
+
+    void start(Runnable task) {
+        worker = Thread.ofVirtual().name("weather-warm-up").start(task);
+    }
+
+    void onLoaded() {
+        loaded.incrementAndGet();
+    }
+
+    void onFailed(String city, Exception e) {
+        errors.put(city, e);
+    }
+
+    void finish() {
+        readiness.complete(new WarmUpReport(Duration.ofNanos(System.nanoTime() - startNanos), cities.size(), loaded.get(), Map.copyOf(errors)));
+    }
+
+    // Останавливает прогрев (запросы, которые уже отправлены, завершаются); готовность завершается CancellationException
+    public void cancel() {
+        if (readiness.completeExceptionally(new CancellationException("Warm-up cancelled"))) {
+            Thread current = worker;
+            if (current != null) {
+                current.interrupt();
+            }
+        }
+    }
+
+    boolean isCancelled() {
+        return readiness.isCompletedExceptionally();
+    }
+
+    public int getTotal() {
+        return cities.size();
+    }
+
+    public int getLoaded() {
+        return loaded.get();
+    }
+
+    public int getFailed() {
+        return errors.size();
+    }
+
+    // Доля обработанных городов от 0 до 1
+    public double getProgress() {
+        return cities.isEmpty() ? 1 : (double) (loaded.get() + errors.size()) / cities.size();
+    }
+
+    public boolean isDone() {
+        return readiness.isDone();
+    }
+
+    // Копия: отмена или завершение возвращенного future не влияет на прогрев
+    public CompletableFuture<WarmUpReport> getReadiness() {
+        return readiness.copy();
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUp{total=" + getTotal() + ", loaded=" + getLoaded() + ", failed=" + getFailed() + ", done=" + isDone() + '}';
+    }
+}
@@ -0,0 +1,159 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.model.ChangeThresholds;
+import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.model.WeatherChange;
+import kameleon.test.task.model.WeatherField;
+import kameleon.test.task.model.WeatherSnapshot;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+// Рассылка изменений погоды подписчикам: каждый подписчик получает собственный SubmissionPublisher с ограниченным
+// буфером, события передаются через offer без ожидания. Если подписчик не успевает и буфер полон, событие
+// для него отбрасывается, а опрос и запросы пользователей не задерживаются. Изменение считается относительно
+// последнего события, доставленного именно этому подписчику, поэтому медленный дрейф тоже будет замечен
+public class WeatherChangePublisher implements AutoCloseable {
+    private static final int MIN_PRUNE_THRESHOLD = 64;
+
+    // Место еще в кэше: по ушедшим местам подписки забывают последнюю доставленную погоду
+    private final Predicate<String> retained;
+    private final CopyOnWriteArrayList<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean closed;
+
+    public WeatherChangePublisher() {
+        this(location -> true);
+    }
+
+    WeatherChangePublisher(Predicate<String> retained) {
+        this.retained = retained;
+    }
+
+    // Publisher, каждый subscribe которого создает отдельную подписку со своими порогами и буфером
+    public Flow.Publisher<WeatherChange> publisher(ChangeThresholds thresholds, int bufferCapacity) {
+        if (thresholds == null) {
+            throw new IllegalArgumentException("thresholds cannot be null");
+        }
+        if (bufferCapacity <= 0) {
+            throw new IllegalArgumentException("bufferCapacity must be positive");
+        }
+        return subscriber -> subscribe(subscriber, thresholds, bufferCapacity);
+    }
+
+    private void subscribe(Flow.Subscriber<? super WeatherChange> subscriber, ChangeThresholds thresholds, int bufferCapacity) {
+        ChangeSubscription subscription = new ChangeSubscription(new SubmissionPublisher<>(executor, bufferCapacity), thresholds);
+        subscription.publisher.subscribe(subscriber);
+        subscriptions.add(subscription);
+        // После закрытия новый подписчик сразу получает onComplete
+        if (closed) {
+            subscriptions.remove(subscription);
+            subscription.publisher.close();
+        }
+    }
+
+    // Вызывается после записи в кэш; без подписчиков ничего не делает
+    void publish(String locationId, WeatherSnapshot snapshot) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        for (ChangeSubscription subscription : subscriptions) {
+            if (!subscription.publisher.hasSubscribers()) {
+                // Подписчик отменил подписку
+                subscriptions.remove(subscription);
+                subscription.publisher.close();
+                continue;
+            }
+            subscription.offer(locationId, snapshot);
+        }
+    }
+
+    public int getSubscriberCount() {
+        int count = 0;
+        for (ChangeSubscription subscription : subscriptions) {
+            if (subscription.publisher.hasSubscribers()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    int getTrackedLocationCount() {
+        int count = 0;
+        for (ChangeSubscription subscription : subscriptions) {
+            count += subscription.delivered.size();
+        }
+        return count;
+    }
+
+    // Подписчики получают onComplete после уже принятых событий
+    @Override
+    public void close() {
+        closed = true;
+        for (ChangeSubscription subscription : subscriptions) {
+            subscription.publisher.close();
+        }
+        subscriptions.clear();
+        executor.shutdown();
+    }
+
+    private final class ChangeSubscription {
+        private final SubmissionPublisher<WeatherChange> publisher;
+        private final ChangeThresholds thresholds;
+        // Последняя доставленная подписчику погода по месту
+        private final Map<String, CurrentWeather> delivered = new ConcurrentHashMap<>();
+        // Чистка запускается, когда мест вдвое больше, чем осталось после прошлой: в среднем O(1) на событие
+        private volatile int pruneThreshold = MIN_PRUNE_THRESHOLD;
+
+        private ChangeSubscription(SubmissionPublisher<WeatherChange> publisher, ChangeThresholds thresholds) {
+            this.publisher = publisher;
+            this.thresholds = thresholds;
+        }
+
+        private void offer(String locationId, WeatherSnapshot snapshot) {
+            CurrentWeather current = snapshot.getCurrentWeather();
+            delivered.compute(locationId, (key, previous) -> {
+                Set<WeatherField> changed = thresholds.changedFields(previous, current);
+                if (changed.isEmpty()) {
+                    return previous;
+                }
+                int lag;
+                try {
+                    lag = publisher.offer(new WeatherChange(locationId, previous, snapshot, changed), (subscriber, change) -> {
+                        dropped.increment();
+                        return false;
+                    });
+                } catch (IllegalStateException e) {
+                    // Подписка закрыта одновременно с рассылкой
+                    return previous;
+                }
+                // Отброшенное событие подписчик не видел: следующее сравнивается с тем, что он получил
+                return lag < 0 ? previous : current;
+            });
+            if (delivered.size() > pruneThreshold) {
+                prune();
+            }
+        }
+
+        private synchronized void prune() {
+            if (delivered.size() <= pruneThreshold) {
+                return;
+            }
+            delivered.keySet().removeIf(location -> !retained.test(location));
+            pruneThreshold = Math.max(MIN_PRUNE_THRESHOLD, delivered.size() * 2);
+        }
+    }
+}
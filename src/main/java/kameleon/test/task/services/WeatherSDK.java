@@ -1,69 +1,924 @@
 package kameleon.test.task.services;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import kameleon.test.task.config.WeatherSDKConfig;
 import kameleon.test.task.exceptions.APIKeyException;
+import kameleon.test.task.exceptions.CircuitBreakerOpenException;
 import kameleon.test.task.exceptions.CoordinateException;
+import kameleon.test.task.exceptions.QuotaExceededException;
+import kameleon.test.task.exceptions.RateLimitedException;
+import kameleon.test.task.model.BatchWeatherResult;
+import kameleon.test.task.model.ChangeThresholds;
 import kameleon.test.task.model.CityCoordinates;
 import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.model.PollingSweepReport;
+import kameleon.test.task.model.WeatherChange;
+import kameleon.test.task.model.WeatherForecast;
+import kameleon.test.task.model.WeatherSnapshot;
 import kameleon.test.task.modes.Mode;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.time.Duration;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
 
 public final class WeatherSDK {
-    private static final int UPDATE_INTERVAL_MINUTES = 10;
+    private static final Logger logger = Logger.getLogger(WeatherSDK.class.getName());
+    private static final Duration SHARED_REFRESH_CLAIM = Duration.ofSeconds(15);
+    private static final Duration SHARED_REFRESH_WAIT = Duration.ofSeconds(3);
+    private static final long SHARED_REFRESH_POLL_MILLIS = 50;
+    private static final String SHARED_ALIAS_PREFIX = "alias:";
+    private static final int MAX_CITY_IDS = 100_000;
 
     private final Mode mode;
     private final String API_KEY;
-    private final ObjectMapper mapper;
     private final CacheService cacheService;
     private final PollingService pollingService;
     private final OpenWeatherMapRequestsService openWeatherMapRequestsService;
+    private final GeocodingStore geocodingStore;
+    private final SharedWeatherCache sharedCache;
+    private final LocationAliasIndex aliasIndex;
+    private final SharedResources resources;
+    private final AtomicBoolean shutDown = new AtomicBoolean();
+    private final GeoGridIndex geoIndex;
+    private final WeatherSDKMetrics metrics;
+    private final CircuitBreaker circuitBreaker;
+    private final QuotaScheduler quotaScheduler;
+    // null - каждый промах кэша загружает погоду из API
+    private final ForecastCache forecasts;
+    private final WeatherChangePublisher changes;
+    // Идентификаторы городов OpenWeatherMap для запросов group (ключ кэша -> id); null - пакетный опрос выключен
+    private final Map<String, Long> cityIds;
+    private volatile boolean groupRequestsAvailable = true;
+    private final Duration maxStaleAge;
+    private final boolean staleWhileRevalidate;
+    private final Set<String> revalidating;
+    private final Duration requestTimeout;
+    private final SingleFlight<String, CityCoordinates> coordinatesRequests;
+    private final SingleFlight<String, WeatherSnapshot> weatherRequests;
+    private final int batchParallelism;
+    private final double warmUpCitiesPerSecond;
+    private final WarmUp configuredWarmUp;
+    private final Set<WarmUp> warmUps = ConcurrentHashMap.newKeySet();
 
     public WeatherSDK(String apiKey, Mode mode) {
+        this(apiKey, mode, WeatherSDKConfig.defaults());
+    }
+
+    public WeatherSDK(String apiKey, Mode mode, WeatherSDKConfig config) {
+        this(apiKey, mode, config, new OpenWeatherMapRequestsService(apiKey, config.getBaseUrl(), config.getHedgePercentile()));
+    }
+
+    // SDK фабрики: HTTP-клиент, планировщик опроса и кэш геокодирования общие, свои - только кэш погоды,
+    // ключ и метрики. Ссылка на resources должна быть захвачена (retain) вызывающим и освобождается в shutDown
+    public WeatherSDK(String apiKey, Mode mode, WeatherSDKConfig config, SharedResources resources) {
+        this(apiKey, mode, config,
+                resources.newRequestsService(apiKey, config.getBaseUrl(), config.getHedgePercentile()), resources);
+    }
+
+    WeatherSDK(String apiKey, Mode mode, WeatherSDKConfig config, OpenWeatherMapRequestsService openWeatherMapRequestsService) {
+        this(apiKey, mode, config, openWeatherMapRequestsService, null);
+    }
+
+    private WeatherSDK(String apiKey, Mode mode, WeatherSDKConfig config, OpenWeatherMapRequestsService openWeatherMapRequestsService,
+                       SharedResources resources) {
+        // Файл прогрева читается до того, как SDK запустит опрос и откроет хранилища: ошибка в нем ничего не оставляет
+        Set<String> warmUpCities = readWarmUpCities(config);
         this.mode = mode;
+        this.resources = resources;
         this.API_KEY = apiKey;
-        this.mapper = new ObjectMapper();
-        this.cacheService = new CacheService();
-        this.openWeatherMapRequestsService = new OpenWeatherMapRequestsService(apiKey);
+        this.cacheService = config.getCache().build();
+        this.changes = new WeatherChangePublisher(cacheService::holds);
+        this.openWeatherMapRequestsService = openWeatherMapRequestsService;
+        this.coordinatesRequests = new SingleFlight<>();
+        this.weatherRequests = new SingleFlight<>();
+        this.batchParallelism = config.getBatchParallelism();
+        this.warmUpCitiesPerSecond = config.getWarmUpCitiesPerSecond();
+        this.geocodingStore = openGeocodingStore(config);
+        this.sharedCache = openSharedCache(config);
+        this.aliasIndex = resources != null ? resources.getGeocodingCache() : new LocationAliasIndex();
+        this.geoIndex = new GeoGridIndex(config.getCoordinateLookupRadiusKm(), cacheService::holds);
+        this.quotaScheduler = new QuotaScheduler(config.getQuotaCallsPerMinute(), config.getQuotaCallsPerDay());
+        openWeatherMapRequestsService.setHedgePermit(quotaScheduler::tryAcquireOptional);
+        this.forecasts = config.getForecastHorizon() == null ? null : new ForecastCache(config.getForecastHorizon(), config.getObservationRefresh());
+        this.cityIds = config.isGroupPolling() && forecasts == null ? new ConcurrentHashMap<>() : null;
+        this.circuitBreaker = new CircuitBreaker(config.getCircuitBreakerFailureThreshold(), config.getCircuitBreakerOpenDuration());
+        this.maxStaleAge = config.getMaxStaleAge();
+        this.staleWhileRevalidate = config.isStaleWhileRevalidate();
+        this.revalidating = ConcurrentHashMap.newKeySet();
+        this.requestTimeout = config.getRequestTimeout();
+        if (geocodingStore != null) {
+            geocodingStore.getAll().forEach((query, location) -> aliasIndex.learn(CityNameNormalizer.normalize(query), location));
+        }
         if (mode.equals(Mode.POLLING)) {
-            this.pollingService = new PollingService(cacheService, UPDATE_INTERVAL_MINUTES, openWeatherMapRequestsService);
+            PollingService.Builder polling = PollingService.builder(cacheService, config.getPollingIntervalMinutes(), openWeatherMapRequestsService)
+                    .concurrency(config.getPollingConcurrency())
+                    .rateLimiter(new RateLimiter(config.getPollingRequestsPerSecond()))
+                    .cityRefresher(this::refreshCity)
+                    .scheduler(resources != null ? resources.getPollingScheduler() : null)
+                    .batchRefresher(cityIds != null ? new GroupRefresher() : null)
+                    .spread(config.getPollingJitter());
+            if (config.getPollingJitter() == 0) {
+                polling.pollingStrategy(config.getPollingStrategy());
+            }
+            this.pollingService = polling.build();
             pollingService.start();
         } else {
             this.pollingService = null;
         }
+        this.metrics = new WeatherSDKMetrics(cacheService, openWeatherMapRequestsService, pollingService, circuitBreaker, quotaScheduler, changes);
+        if (config.isJmxEnabled()) {
+            metrics.register();
+        }
+        this.configuredWarmUp = warmUpCities.isEmpty() ? WarmUp.completed() : warmUp(warmUpCities);
+    }
+
+    private static Set<String> readWarmUpCities(WeatherSDKConfig config) {
+        Set<String> cities = new LinkedHashSet<>(config.getWarmUpCities());
+        if (config.getWarmUpFile() != null) {
+            try {
+                cities.addAll(WarmUp.readCities(config.getWarmUpFile()));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read warm-up cities from " + config.getWarmUpFile(), e);
+            }
+        }
+        return cities;
+    }
+
+    private static GeocodingStore openGeocodingStore(WeatherSDKConfig config) {
+        if (config.getGeocodingStorePath() == null) {
+            return null;
+        }
+        try {
+            return GeocodingStore.open(config.getGeocodingStorePath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open geocoding store " + config.getGeocodingStorePath(), e);
+        }
+    }
+
+    private static SharedWeatherCache openSharedCache(WeatherSDKConfig config) {
+        if (config.getSharedCachePath() == null) {
+            return null;
+        }
+        try {
+            return SharedWeatherCache.open(config.getSharedCachePath(), config.getSharedCacheSlots());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open shared cache " + config.getSharedCachePath(), e);
+        }
+    }
+
+    // Известное место для нормализованного запроса: из индекса вариантов написания (в т.ч. загруженного
+    // из хранилища геокодирования) или из общего кэша, куда его записал другой процесс
+    private CityCoordinates resolveKnownLocation(String query) {
+        CityCoordinates location = aliasIndex.resolve(query);
+        if (location == null && sharedCache != null) {
+            location = sharedCache.getCityCoordinates(SHARED_ALIAS_PREFIX + query);
+            if (location != null) {
+                aliasIndex.learn(query, location);
+            }
+        }
+        return location;
+    }
+
+    private CityCoordinates learnLocation(String query, CityCoordinates cityCoordinates) {
+        aliasIndex.learn(query, cityCoordinates);
+        CityCoordinates location = cityCoordinates.withoutLocalNames();
+        if (geocodingStore != null) {
+            try {
+                geocodingStore.put(query, location);
+            } catch (IOException e) {
+                logger.warning("Failed to persist coordinates for " + query + ": " + e.getMessage());
+            }
+        }
+        if (sharedCache != null) {
+            sharedCache.putCityCoordinates(SHARED_ALIAS_PREFIX + query, location);
+        }
+        return location;
+    }
+
+    // Свежая запись или, в режиме stale-while-revalidate, устаревшая (не старше maxStaleAge) с фоновым обновлением
+    private WeatherSnapshot getCachedSnapshot(String query) {
+        CityCoordinates location = resolveKnownLocation(query);
+        if (location == null) {
+            cacheService.recordMiss();
+            return null;
+        }
+        WeatherSnapshot fresh = cacheService.getFreshSnapshot(location.getLocationId());
+        if (fresh != null || !staleWhileRevalidate) {
+            return fresh;
+        }
+        WeatherSnapshot stale = cacheService.getSnapshot(location.getLocationId(), maxStaleAge);
+        if (stale != null) {
+            metrics.recordStaleResponse();
+            revalidate(location);
+        }
+        return stale;
+    }
+
+    // Запасной ответ, когда загрузить свежие данные не удалось
+    private WeatherSnapshot getStaleFallback(String query) {
+        if (maxStaleAge.isZero()) {
+            return null;
+        }
+        CityCoordinates location = resolveKnownLocation(query);
+        WeatherSnapshot stale = location == null ? null : cacheService.getSnapshot(location.getLocationId(), maxStaleAge);
+        if (stale != null) {
+            metrics.recordStaleResponse();
+        }
+        return stale;
+    }
+
+    private void revalidate(CityCoordinates location) {
+        String locationId = location.getLocationId();
+        if (!revalidating.add(locationId)) {
+            return;
+        }
+        Thread.ofVirtual().name("weather-revalidate-", 0).start(() -> {
+            try {
+                weatherRequests.execute(locationId,
+                        () -> cacheLocation(locationId, fetchCurrentWeather(location, Deadline.after(requestTimeout), QuotaScheduler.Priority.PREFETCH), location));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.fine("Background refresh failed for " + locationId + ": " + e.getMessage());
+            } finally {
+                revalidating.remove(locationId);
+            }
+        });
+    }
+
+    private WeatherSnapshot loadSnapshot(String query, Deadline deadline) throws IOException, InterruptedException, CoordinateException, APIKeyException {
+        try {
+            return makeRequest(query, deadline);
+        } catch (IOException e) {
+            WeatherSnapshot stale = getStaleFallback(query);
+            if (stale == null) {
+                throw e;
+            }
+            logger.fine("Serving stale weather for " + query + ": " + e.getMessage());
+            return stale;
+        }
+    }
+
+    // Все обращения к OpenWeatherMap проходят через автомат (сетевые ошибки и 5xx размыкают его,
+    // а "город не найден", неверный ключ и 429 означают, что сервис отвечает) и через очередь квоты ключа
+    private <V> V callUpstream(QuotaScheduler.Priority priority, Deadline deadline, UpstreamCall<V> call)
+            throws IOException, InterruptedException, CoordinateException, APIKeyException {
+        // Истекший бюджет вызывающего - не сбой сервиса: автомат и квота его не видят
+        if (deadline.isExpired()) {
+            throw deadline.exceeded("OpenWeatherMap response");
+        }
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw circuitOpen();
+        }
+        try {
+            quotaScheduler.acquire(priority, deadline);
+        } catch (QuotaExceededException | InterruptedException e) {
+            circuitBreaker.onIgnored();
+            throw e;
+        }
+        try {
+            V result = call.call();
+            circuitBreaker.onSuccess();
+            quotaScheduler.onSuccess();
+            return result;
+        } catch (RateLimitedException e) {
+            circuitBreaker.onSuccess();
+            quotaScheduler.onRateLimited(e.getRetryAfter());
+            throw e;
+        } catch (IOException e) {
+            circuitBreaker.onFailure();
+            throw e;
+        } catch (CoordinateException | APIKeyException e) {
+            circuitBreaker.onSuccess();
+            throw e;
+        } catch (InterruptedException | RuntimeException e) {
+            circuitBreaker.onIgnored();
+            throw e;
+        }
+    }
+
+    // Асинхронный путь не ждет квоту: если запрос нельзя отправить сразу, вызов завершается QuotaExceededException
+    private <V> CompletableFuture<V> callUpstreamAsync(Supplier<CompletableFuture<V>> call) {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return CompletableFuture.failedFuture(circuitOpen());
+        }
+        try {
+            quotaScheduler.tryAcquire(QuotaScheduler.Priority.INTERACTIVE);
+        } catch (QuotaExceededException e) {
+            circuitBreaker.onIgnored();
+            return CompletableFuture.failedFuture(e);
+        }
+        // Исключение при запуске вызова тоже освобождает пробный запрос HALF_OPEN
+        CompletableFuture<V> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((result, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof RateLimitedException rateLimited) {
+                circuitBreaker.onSuccess();
+                quotaScheduler.onRateLimited(rateLimited.getRetryAfter());
+            } else if (cause == null || cause instanceof CoordinateException || cause instanceof APIKeyException) {
+                circuitBreaker.onSuccess();
+                quotaScheduler.onSuccess();
+            } else if (cause instanceof IOException) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onIgnored();
+            }
+        });
+    }
+
+    private CircuitBreakerOpenException circuitOpen() {
+        return new CircuitBreakerOpenException("OpenWeatherMap requests are suspended for up to "
+                + circuitBreaker.getOpenDuration() + " after repeated failures");
+    }
+
+    @FunctionalInterface
+    private interface UpstreamCall<V> {
+        V call() throws IOException, InterruptedException, CoordinateException, APIKeyException;
+    }
+
+    // Пользовательский запрос мог присоединиться к фоновому (прогрев, обновление устаревшей записи, опрос), который
+    // квота отбросила: тогда он повторяется уже от имени пользователя. Собственный запрос пользователя квота не
+    // отбрасывает, поэтому повтор без чужого запроса снова упрется в тот же лимит и в API не пойдет
+    private WeatherSnapshot makeRequest(String query, Deadline deadline) throws IOException, InterruptedException, CoordinateException, APIKeyException {
+        try {
+            return makeRequest(query, deadline, QuotaScheduler.Priority.INTERACTIVE);
+        } catch (QuotaExceededException e) {
+            if (deadline.isExpired()) {
+                throw e;
+            }
+            return makeRequest(query, deadline, QuotaScheduler.Priority.INTERACTIVE);
+        }
+    }
+
+    private WeatherSnapshot makeRequest(String query, Deadline deadline, QuotaScheduler.Priority priority) throws IOException, InterruptedException, CoordinateException, APIKeyException {
+        CityCoordinates location = resolveKnownLocation(query);
+        if (location == null) {
+            location = coalesce(coordinatesRequests, query, deadline, () -> {
+                Deadline load = Deadline.after(requestTimeout);
+                return learnLocation(query, callUpstream(priority, load,
+                        () -> openWeatherMapRequestsService.getCityCoordinates(query, load)));
+            });
+        }
+
+        // Разные варианты написания одного места сходятся к одному ключу кэша и одному запросу погоды
+        CityCoordinates coordinates = location;
+        String locationId = coordinates.getLocationId();
+        WeatherSnapshot cached = cacheService.peekFreshSnapshot(locationId);
+        if (cached != null) {
+            return cached;
+        }
+        return coalesce(weatherRequests, locationId, deadline,
+                () -> cacheLocation(locationId, fetchCurrentWeather(coordinates, Deadline.after(requestTimeout), priority), coordinates));
+    }
+
+    private WeatherSnapshot cacheLocation(String locationId, CurrentWeather currentWeather, CityCoordinates cityCoordinates) {
+        WeatherSnapshot snapshot = cacheService.cache(locationId, currentWeather, cityCoordinates);
+        geoIndex.add(locationId, cityCoordinates);
+        if (pollingService != null) {
+            pollingService.track(locationId);
+        }
+        changes.publish(locationId, snapshot);
+        return snapshot;
     }
 
-    private CurrentWeather makeRequest(String city) throws IOException, InterruptedException, CoordinateException, APIKeyException {
-        CityCoordinates cityCoordinates = cacheService.getCityCoordinates(city);
-        if (cityCoordinates == null) {
-            cityCoordinates = openWeatherMapRequestsService.getCityCoordinates(city);
+    private void refreshCity(String city, CityCoordinates cityCoordinates) throws Exception {
+        weatherRequests.execute(city, () -> cacheRefreshed(city,
+                fetchCurrentWeather(cityCoordinates, Deadline.after(requestTimeout), QuotaScheduler.Priority.POLLING)));
+    }
+
+    private WeatherSnapshot cacheRefreshed(String city, CurrentWeather currentWeather) {
+        WeatherSnapshot snapshot = cacheService.cache(currentWeather, city);
+        // null - город вытеснен из кэша, пока шел запрос
+        if (snapshot != null) {
+            changes.publish(city, snapshot);
+        }
+        return snapshot;
+    }
+
+    PollingService getPollingService() {
+        return pollingService;
+    }
+
+    // Пакетный опрос: города с известным идентификатором OpenWeatherMap обновляются одним запросом group,
+    // остальные - запросом API 2.5 по координатам, который заодно сообщает идентификатор
+    private Map<String, Exception> refreshCities(Map<String, CityCoordinates> cities) {
+        Map<String, Exception> errors = new HashMap<>();
+        Map<Long, String> names = new HashMap<>();
+        Map<Long, String> group = new HashMap<>();
+        for (Map.Entry<String, CityCoordinates> city : cities.entrySet()) {
+            Long id = groupRequestsAvailable ? cityIds.get(city.getKey()) : null;
+            // Два места с одним ближайшим городом OpenWeatherMap: второе обновляется отдельно
+            if (id != null && group.putIfAbsent(id, city.getKey()) == null) {
+                names.put(id, city.getValue().getCityName());
+                continue;
+            }
+            try {
+                refreshCityLearningId(city.getKey(), city.getValue());
+            } catch (Exception e) {
+                errors.put(city.getKey(), e);
+            }
+        }
+        if (group.isEmpty()) {
+            return errors;
+        }
+
+        Deadline deadline = Deadline.after(requestTimeout);
+        Map<Long, CurrentWeather> weather;
+        try {
+            weather = callUpstream(QuotaScheduler.Priority.POLLING, deadline,
+                    () -> openWeatherMapRequestsService.getCurrentWeatherByCityIds(names, deadline));
+        } catch (Exception e) {
+            // После APIKeyException города пачки обновятся по одному при следующей попытке
+            if (e instanceof APIKeyException apiKeyException) {
+                disableGroupRequests(apiKeyException);
+            }
+            group.values().forEach(city -> errors.put(city, e));
+            return errors;
         }
+        for (Map.Entry<Long, String> entry : group.entrySet()) {
+            String city = entry.getValue();
+            CurrentWeather currentWeather = weather.get(entry.getKey());
+            if (currentWeather == null) {
+                // Идентификатор узнается заново при следующем обновлении
+                cityIds.remove(city);
+                errors.put(city, new IOException("No weather for OpenWeatherMap city id " + entry.getKey() + " in group response"));
+                continue;
+            }
+            shareRefreshed(cities.get(city), currentWeather);
+            cacheRefreshed(city, currentWeather);
+        }
+        return errors;
+    }
 
-        CurrentWeather currentWeather = openWeatherMapRequestsService.getCurrentWeather(cityCoordinates);
-        cacheService.cache(currentWeather, cityCoordinates);
+    // Города без идентификатора идут отдельными пачками: каждый запрос занимает свое место в concurrency и свой
+    // токен rateLimiter опроса
+    private final class GroupRefresher implements PollingService.BatchRefresher {
+        @Override
+        public Map<String, Exception> refresh(Map<String, CityCoordinates> cities) {
+            return refreshCities(cities);
+        }
 
-        return currentWeather;
+        @Override
+        public Object groupKey(String city) {
+            return groupRequestsAvailable ? cityIds.get(city) : null;
+        }
+    }
+
+    private void refreshCityLearningId(String city, CityCoordinates cityCoordinates) throws Exception {
+        if (!groupRequestsAvailable) {
+            refreshCity(city, cityCoordinates);
+            return;
+        }
+        weatherRequests.execute(city, () -> {
+            Deadline deadline = Deadline.after(requestTimeout);
+            try {
+                Map.Entry<Long, CurrentWeather> weather = callUpstream(QuotaScheduler.Priority.POLLING, deadline,
+                        () -> openWeatherMapRequestsService.getCurrentWeatherWithCityId(cityCoordinates, deadline));
+                // Места, вытесненные из кэша, остаются в словаре: при переполнении он просто собирается заново
+                if (cityIds.size() >= MAX_CITY_IDS) {
+                    cityIds.clear();
+                }
+                cityIds.put(city, weather.getKey());
+                shareRefreshed(cityCoordinates, weather.getValue());
+                return cacheRefreshed(city, weather.getValue());
+            } catch (APIKeyException e) {
+                disableGroupRequests(e);
+                return cacheRefreshed(city, fetchCurrentWeather(cityCoordinates, deadline, QuotaScheduler.Priority.POLLING));
+            }
+        });
+    }
+
+    private void shareRefreshed(CityCoordinates cityCoordinates, CurrentWeather currentWeather) {
+        if (sharedCache != null) {
+            sharedCache.put(cityCoordinates.getLocationId(), cityCoordinates, currentWeather);
+        }
+    }
+
+    private void disableGroupRequests(APIKeyException e) {
+        if (groupRequestsAvailable) {
+            groupRequestsAvailable = false;
+            cityIds.clear();
+            logger.info("OpenWeatherMap group requests are not available for this API key, polling falls back to One Call: "
+                    + e.getMessage());
+        }
+    }
+
+    // Если включен общий кэш, сначала берем данные, загруженные другим процессом, и только один процесс
+    // (забронировавший обновление) обращается в API за устаревшим городом
+    private CurrentWeather fetchCurrentWeather(CityCoordinates cityCoordinates, Deadline deadline, QuotaScheduler.Priority priority) throws IOException, InterruptedException, CoordinateException, APIKeyException {
+        CurrentWeather forecast = interpolateForecast(cityCoordinates);
+        if (forecast != null) {
+            return forecast;
+        }
+        if (sharedCache == null) {
+            return callUpstream(priority, deadline, () -> requestCurrentWeather(cityCoordinates, deadline));
+        }
+
+        String key = cityCoordinates.getLocationId();
+        Duration freshness = cacheService.getFreshness();
+        SharedWeatherCache.SharedEntry shared = sharedCache.get(key);
+        if (shared != null && shared.isFresherThan(freshness)) {
+            return shared.getCurrentWeather();
+        }
+
+        boolean claimed = sharedCache.tryClaimRefresh(key, SHARED_REFRESH_CLAIM);
+        if (!claimed) {
+            long waitUntil = System.nanoTime() + Math.min(SHARED_REFRESH_WAIT.toNanos(), deadline.remainingNanos());
+            while (System.nanoTime() < waitUntil) {
+                Thread.sleep(SHARED_REFRESH_POLL_MILLIS);
+                shared = sharedCache.get(key);
+                if (shared != null && shared.isFresherThan(freshness)) {
+                    return shared.getCurrentWeather();
+                }
+            }
+        }
+
+        try {
+            CurrentWeather currentWeather = callUpstream(priority, deadline, () -> requestCurrentWeather(cityCoordinates, deadline));
+            sharedCache.put(key, cityCoordinates, currentWeather);
+            return currentWeather;
+        } finally {
+            // Чужую бронь не снимаем: иначе ее перехватит третий процесс
+            if (claimed) {
+                sharedCache.releaseClaim(key);
+            }
+        }
+    }
+
+    // Погода по сохраненному прогнозу места на текущий момент; null - прогноза нет или он исчерпан
+    private CurrentWeather interpolateForecast(CityCoordinates cityCoordinates) {
+        CurrentWeather forecast = forecasts == null ? null : forecasts.interpolate(cityCoordinates.getLocationId());
+        if (forecast != null) {
+            metrics.recordForecastResponse();
+        }
+        return forecast;
+    }
+
+    // В режиме прогноза тот же вызов One Call приносит почасовой прогноз, который обслуживает место до следующего вызова
+    private CurrentWeather requestCurrentWeather(CityCoordinates cityCoordinates, Deadline deadline) throws IOException, InterruptedException, APIKeyException, CoordinateException {
+        if (forecasts == null) {
+            return openWeatherMapRequestsService.getCurrentWeather(cityCoordinates, deadline);
+        }
+        WeatherForecast forecast = openWeatherMapRequestsService.getForecast(cityCoordinates, deadline);
+        forecasts.put(cityCoordinates.getLocationId(), forecast);
+        return forecast.getCurrent();
+    }
+
+    private CompletableFuture<CurrentWeather> requestCurrentWeatherAsync(CityCoordinates cityCoordinates, Deadline deadline, Executor executor) {
+        if (forecasts == null) {
+            return callUpstreamAsync(() -> openWeatherMapRequestsService.getCurrentWeatherAsync(cityCoordinates, deadline, executor));
+        }
+        return callUpstreamAsync(() -> openWeatherMapRequestsService.getForecastAsync(cityCoordinates, deadline, executor))
+                .thenApply(forecast -> {
+                    forecasts.put(cityCoordinates.getLocationId(), forecast);
+                    return forecast.getCurrent();
+                });
+    }
+
+    private CompletableFuture<CurrentWeather> fetchCurrentWeatherAsync(CityCoordinates cityCoordinates, Deadline deadline, Executor executor) {
+        CurrentWeather forecast = interpolateForecast(cityCoordinates);
+        if (forecast != null) {
+            return CompletableFuture.completedFuture(forecast);
+        }
+        if (sharedCache == null) {
+            return requestCurrentWeatherAsync(cityCoordinates, deadline, executor);
+        }
+
+        String key = cityCoordinates.getLocationId();
+        SharedWeatherCache.SharedEntry shared = sharedCache.get(key);
+        if (shared != null && shared.isFresherThan(cacheService.getFreshness())) {
+            return CompletableFuture.completedFuture(shared.getCurrentWeather());
+        }
+
+        // Асинхронный путь не ждет чужого обновления, а бронирует его, если получится
+        boolean claimed = sharedCache.tryClaimRefresh(key, SHARED_REFRESH_CLAIM);
+        return requestCurrentWeatherAsync(cityCoordinates, deadline, executor)
+                .whenComplete((currentWeather, error) -> {
+                    if (currentWeather != null) {
+                        sharedCache.put(key, cityCoordinates, currentWeather);
+                    }
+                    if (claimed) {
+                        sharedCache.releaseClaim(key);
+                    }
+                });
+    }
+
+    private CompletableFuture<WeatherSnapshot> makeRequestAsync(String query, Deadline deadline, Executor executor) {
+        CityCoordinates known = resolveKnownLocation(query);
+        CompletableFuture<CityCoordinates> location = known != null
+                ? CompletableFuture.completedFuture(known)
+                : coordinatesRequests.executeAsync(query, () -> callUpstreamAsync(() -> openWeatherMapRequestsService.getCityCoordinatesAsync(query, deadline, executor))
+                        .thenApply(coordinates -> learnLocation(query, coordinates)));
+
+        return location.thenComposeAsync(coordinates -> {
+            String locationId = coordinates.getLocationId();
+            WeatherSnapshot cached = cacheService.peekFreshSnapshot(locationId);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+            return weatherRequests.executeAsync(locationId, () -> fetchCurrentWeatherAsync(coordinates, deadline, executor)
+                    .thenApply(currentWeather -> cacheLocation(locationId, currentWeather, coordinates)));
+        }, executor);
+    }
+
+    // Общий запрос идет со своим бюджетом requestTimeout, вызывающий ждет его не дольше своего deadline
+    private static <V> V coalesce(SingleFlight<String, V> requests, String key, Deadline deadline, SingleFlight.Call<V> call)
+            throws IOException, InterruptedException, CoordinateException, APIKeyException {
+        try {
+            return requests.execute(key, deadline, call);
+        } catch (IOException | InterruptedException | CoordinateException | APIKeyException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private WeatherSnapshot getSnapshot(String city, Duration timeout) throws APIKeyException, IOException, InterruptedException, CoordinateException {
+        String query = CityNameNormalizer.normalize(city);
+        WeatherSnapshot cached = getCachedSnapshot(query);
+        if (cached != null) {
+            return cached;
+        }
+        return loadSnapshot(query, Deadline.after(timeout));
     }
 
     public String getCurrentWeatherInCity(String city) throws APIKeyException, IOException, InterruptedException, CoordinateException {
-        if (cacheService.containsKey(city)) {
-            CurrentWeather cached = cacheService.getCurrentWeather(city);
-            if (Duration.between(cached.getTimestamp(), LocalDateTime.now()).toMinutes() < UPDATE_INTERVAL_MINUTES) {
-                return mapper.writeValueAsString(cached);
+        return getSnapshot(city, requestTimeout).toJson();
+    }
+
+    // timeout - бюджет на весь вызов: геокодирование и запрос погоды вместе; по истечении - HttpTimeoutException
+    public String getCurrentWeatherInCity(String city, Duration timeout) throws APIKeyException, IOException, InterruptedException, CoordinateException {
+        return getSnapshot(city, timeout).toJson();
+    }
+
+    // Пишет готовый UTF-8 JSON напрямую в поток, без промежуточной строки
+    public void writeCurrentWeatherInCity(String city, OutputStream outputStream) throws APIKeyException, IOException, InterruptedException, CoordinateException {
+        getSnapshot(city, requestTimeout).writeTo(outputStream);
+    }
+
+    public ByteBuffer getCurrentWeatherInCityAsBytes(String city) throws APIKeyException, IOException, InterruptedException, CoordinateException {
+        return getSnapshot(city, requestTimeout).asByteBuffer();
+    }
+
+    public CompletableFuture<String> getCurrentWeatherInCityAsync(String city) {
+        return getCurrentWeatherInCityAsync(city, ForkJoinPool.commonPool());
+    }
+
+    // Неблокирующий вариант: геокодирование -> запрос погоды -> обновление кэша выполняются цепочкой на executor
+    public CompletableFuture<String> getCurrentWeatherInCityAsync(String city, Executor executor) {
+        String query = CityNameNormalizer.normalize(city);
+        WeatherSnapshot cached = getCachedSnapshot(query);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.toJson());
+        }
+
+        Deadline deadline = Deadline.after(requestTimeout);
+        return makeRequestAsync(query, deadline, executor)
+                // Как и в синхронном варианте: отброшенный квотой чужой фоновый запрос повторяется от имени пользователя
+                .exceptionallyCompose(error -> {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    return cause instanceof QuotaExceededException && !deadline.isExpired()
+                            ? makeRequestAsync(query, deadline, executor)
+                            : CompletableFuture.failedFuture(error);
+                })
+                .exceptionally(error -> {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    WeatherSnapshot stale = cause instanceof IOException ? getStaleFallback(query) : null;
+                    if (stale == null) {
+                        throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+                    }
+                    return stale;
+                })
+                .thenApply(WeatherSnapshot::toJson);
+    }
+
+    // Погода в точке: отдается любая свежая запись в пределах радиуса (ближайшая), иначе загружается погода
+    // в центре ячейки сетки, которая затем покрывает все точки этой ячейки
+    public String getCurrentWeatherAt(double latitude, double longitude) throws APIKeyException, IOException, InterruptedException, CoordinateException {
+        return getSnapshotAt(latitude, longitude).toJson();
+    }
+
+    private WeatherSnapshot getSnapshotAt(double latitude, double longitude) throws APIKeyException, IOException, InterruptedException, CoordinateException {
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException(String.format("Invalid coordinates: %s, %s", latitude, longitude));
+        }
+        WeatherSnapshot covering = findCoveringSnapshot(latitude, longitude);
+        if (covering != null) {
+            return covering;
+        }
+
+        CityCoordinates center = geoIndex.cellCenter(latitude, longitude);
+        String locationId = center.getLocationId();
+        WeatherSnapshot cached = cacheService.getFreshSnapshot(locationId);
+        if (cached != null) {
+            return cached;
+        }
+        return coalesce(weatherRequests, locationId, Deadline.after(requestTimeout),
+                () -> cacheLocation(locationId, fetchCurrentWeather(center, Deadline.after(requestTimeout), QuotaScheduler.Priority.INTERACTIVE), center));
+    }
+
+    private WeatherSnapshot findCoveringSnapshot(double latitude, double longitude) {
+        for (GeoGridIndex.Neighbor neighbor : geoIndex.findWithinRadius(latitude, longitude)) {
+            if (cacheService.peekFreshSnapshot(neighbor.getLocationId()) != null) {
+                // Засчитываем попадание и обращение только для записи, которой отвечаем
+                WeatherSnapshot snapshot = cacheService.getFreshSnapshot(neighbor.getLocationId());
+                if (snapshot != null) {
+                    return snapshot;
+                }
+            }
+            // Вытесненные из кэша места убираем из индекса при первом обнаружении
+            if (!cacheService.containsKey(neighbor.getLocationId())) {
+                geoIndex.remove(neighbor.getLocationId());
+            }
+        }
+        return null;
+    }
+
+    // Попадания в кэш отдаются сразу, промахи загружаются параллельно на виртуальных потоках
+    public BatchWeatherResult getCurrentWeatherInCities(Collection<String> cities) throws InterruptedException {
+        Map<String, String> results = new ConcurrentHashMap<>();
+        Map<String, Exception> errors = new ConcurrentHashMap<>();
+        List<String> misses = new ArrayList<>();
+
+        for (String city : new LinkedHashSet<>(cities)) {
+            WeatherSnapshot cached = getCachedSnapshot(CityNameNormalizer.normalize(city));
+            if (cached == null) {
+                misses.add(city);
+            } else {
+                results.put(city, cached.toJson());
             }
         }
 
-        CurrentWeather currentWeather = makeRequest(city);
-        return mapper.writeValueAsString(currentWeather);
+        if (!misses.isEmpty()) {
+            // Один бюджет времени на весь пакет: города, до которых очередь не дошла вовремя, получают ошибку таймаута
+            Deadline deadline = Deadline.after(requestTimeout);
+            Semaphore permits = new Semaphore(batchParallelism);
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (String city : misses) {
+                    permits.acquire();
+                    executor.execute(() -> {
+                        try {
+                            results.put(city, loadSnapshot(CityNameNormalizer.normalize(city), deadline).toJson());
+                        } catch (InterruptedException e) {
+                            errors.put(city, e);
+                            Thread.currentThread().interrupt();
+                        } catch (Exception e) {
+                            errors.put(city, e);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                }
+            }
+        }
+
+        return new BatchWeatherResult(results, errors);
+    }
+
+    // Загружает города в кэш в фоне: до batchParallelism городов одновременно, не быстрее warmUpCitiesPerSecond.
+    // Запросы прогрева уступают квоту запросам пользователей; уже свежие в кэше города не запрашиваются
+    public WarmUp warmUp(Collection<String> cities) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(cities));
+        WarmUp progress = new WarmUp(distinct);
+        warmUps.add(progress);
+        progress.start(() -> {
+            try {
+                runWarmUp(progress);
+            } finally {
+                warmUps.remove(progress);
+            }
+        });
+        // shutDown мог пройти до регистрации прогрева
+        if (shutDown.get()) {
+            progress.cancel();
+        }
+        return progress;
+    }
+
+    public WarmUp warmUp(Path file) throws IOException {
+        return warmUp(WarmUp.readCities(file));
+    }
+
+    // Прогрев, заданный в WeatherSDKConfig; без городов - уже завершен
+    public WarmUp getWarmUp() {
+        return configuredWarmUp;
+    }
+
+    private void runWarmUp(WarmUp progress) {
+        RateLimiter rateLimiter = new RateLimiter(warmUpCitiesPerSecond);
+        Semaphore permits = new Semaphore(batchParallelism);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String city : progress.getCities()) {
+                permits.acquire();
+                try {
+                    rateLimiter.acquire();
+                } catch (InterruptedException e) {
+                    permits.release();
+                    throw e;
+                }
+                executor.execute(() -> {
+                    try {
+                        makeRequest(CityNameNormalizer.normalize(city), Deadline.after(requestTimeout), QuotaScheduler.Priority.PREFETCH);
+                        progress.onLoaded();
+                    } catch (Exception e) {
+                        progress.onFailed(city, e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            // Прогрев отменен: cancel уже завершил готовность
+            return;
+        }
+        progress.finish();
+        logger.info("Cache warm-up finished: " + progress);
     }
 
     public void shutDown() {
+        if (!shutDown.compareAndSet(false, true)) {
+            return;
+        }
+        warmUps.forEach(WarmUp::cancel);
+        metrics.unregister();
         if (pollingService != null) {
             pollingService.stop();
         }
+        changes.close();
         openWeatherMapRequestsService.shutDown();
+        if (geocodingStore != null) {
+            try {
+                geocodingStore.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close geocoding store: " + e.getMessage());
+            }
+        }
+        if (sharedCache != null) {
+            try {
+                sharedCache.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close shared cache: " + e.getMessage());
+            }
+        }
+        if (resources != null) {
+            resources.release();
+        }
+    }
+
+    // Изменения погоды закэшированных мест - после опроса, запросов пользователей и фоновых обновлений.
+    // Каждый subscribe - отдельная подписка с буфером bufferCapacity; не успевающему подписчику события не доставляются
+    public Flow.Publisher<WeatherChange> getWeatherChanges() {
+        return getWeatherChanges(ChangeThresholds.ANY_CHANGE);
+    }
+
+    public Flow.Publisher<WeatherChange> getWeatherChanges(ChangeThresholds thresholds) {
+        return getWeatherChanges(thresholds, Flow.defaultBufferSize());
+    }
+
+    public Flow.Publisher<WeatherChange> getWeatherChanges(ChangeThresholds thresholds, int bufferCapacity) {
+        return changes.publisher(thresholds, bufferCapacity);
+    }
+
+    public WeatherSDKMetrics getMetrics() {
+        return metrics;
+    }
+
+    public CircuitBreaker.State getCircuitBreakerState() {
+        return circuitBreaker.getState();
+    }
+
+    public long getCoalescedRequestsCount() {
+        return coordinatesRequests.getCoalescedCallsCount() + weatherRequests.getCoalescedCallsCount();
+    }
+
+    public PollingSweepReport getLastPollingSweepReport() {
+        return pollingService == null ? null : pollingService.getLastSweepReport();
     }
 
     public Mode getMode() {
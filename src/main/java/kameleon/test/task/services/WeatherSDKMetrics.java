@@ -0,0 +1,253 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.metrics.LatencyHistogram;
+import kameleon.test.task.metrics.WeatherSDKMetricsMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Сводка метрик SDK: сами счетчики живут в компонентах (кэш, запросы, опрос), здесь они только читаются,
+// поэтому запись на горячем пути не зависит от того, опубликованы ли метрики
+public class WeatherSDKMetrics implements WeatherSDKMetricsMXBean {
+    private static final Logger logger = Logger.getLogger(WeatherSDKMetrics.class.getName());
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final CacheService cacheService;
+    private final OpenWeatherMapRequestsService requestsService;
+    private final PollingService pollingService;
+    private final CircuitBreaker circuitBreaker;
+    private final QuotaScheduler quotaScheduler;
+    private final WeatherChangePublisher changes;
+    private final LongAdder staleResponses = new LongAdder();
+    private final LongAdder forecastResponses = new LongAdder();
+    private volatile ObjectName objectName;
+
+    WeatherSDKMetrics(CacheService cacheService, OpenWeatherMapRequestsService requestsService, PollingService pollingService,
+                      CircuitBreaker circuitBreaker, QuotaScheduler quotaScheduler, WeatherChangePublisher changes) {
+        this.cacheService = cacheService;
+        this.requestsService = requestsService;
+        this.pollingService = pollingService;
+        this.circuitBreaker = circuitBreaker;
+        this.quotaScheduler = quotaScheduler;
+        this.changes = changes;
+    }
+
+    void recordStaleResponse() {
+        staleResponses.increment();
+    }
+
+    void recordForecastResponse() {
+        forecastResponses.increment();
+    }
+
+    void register() {
+        try {
+            ObjectName name = new ObjectName("kameleon.test.task:type=WeatherSDK,name=sdk-" + INSTANCES.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            logger.warning("Failed to register WeatherSDK metrics MBean: " + e.getMessage());
+        }
+    }
+
+    void unregister() {
+        ObjectName name = objectName;
+        if (name == null) {
+            return;
+        }
+        objectName = null;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.warning("Failed to unregister WeatherSDK metrics MBean: " + e.getMessage());
+        }
+    }
+
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheService.getHitCount();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheService.getMissCount();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        long hits = getCacheHits();
+        long total = hits + getCacheMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return cacheService.getEvictionCount();
+    }
+
+    @Override
+    public int getCacheSize() {
+        return cacheService.size();
+    }
+
+    @Override
+    public long getStaleResponses() {
+        return staleResponses.sum();
+    }
+
+    @Override
+    public String getCircuitBreakerState() {
+        return circuitBreaker.getState().name();
+    }
+
+    @Override
+    public long getRateLimitedResponses() {
+        return quotaScheduler.getRateLimitedCount();
+    }
+
+    @Override
+    public long getShedRequests() {
+        return quotaScheduler.getShedCount();
+    }
+
+    @Override
+    public long getQuotaRemainingToday() {
+        return quotaScheduler.getRemainingToday();
+    }
+
+    @Override
+    public long getForecastResponses() {
+        return forecastResponses.sum();
+    }
+
+    @Override
+    public int getChangeSubscribers() {
+        return changes.getSubscriberCount();
+    }
+
+    @Override
+    public long getDroppedChangeEvents() {
+        return changes.getDroppedCount();
+    }
+
+    @Override
+    public long getHedgedRequests() {
+        return requestsService.getHedgedRequestCount();
+    }
+
+    @Override
+    public long getGeocodingRequests() {
+        return requestsService.getGeocodingLatency().snapshot().getCount();
+    }
+
+    @Override
+    public double getGeocodingLatencyP50Millis() {
+        return requestsService.getGeocodingLatency().snapshot().getPercentileMillis(50);
+    }
+
+    @Override
+    public double getGeocodingLatencyP99Millis() {
+        return requestsService.getGeocodingLatency().snapshot().getPercentileMillis(99);
+    }
+
+    @Override
+    public double getGeocodingLatencyMaxMillis() {
+        return requestsService.getGeocodingLatency().snapshot().getMaxNanos() / 1_000_000.0;
+    }
+
+    @Override
+    public long getWeatherRequests() {
+        return requestsService.getWeatherLatency().snapshot().getCount();
+    }
+
+    @Override
+    public double getWeatherLatencyP50Millis() {
+        return requestsService.getWeatherLatency().snapshot().getPercentileMillis(50);
+    }
+
+    @Override
+    public double getWeatherLatencyP99Millis() {
+        return requestsService.getWeatherLatency().snapshot().getPercentileMillis(99);
+    }
+
+    @Override
+    public double getWeatherLatencyMaxMillis() {
+        return requestsService.getWeatherLatency().snapshot().getMaxNanos() / 1_000_000.0;
+    }
+
+    @Override
+    public Map<Integer, Long> getUpstreamStatusCounts() {
+        return requestsService.getStatusCodes().getCounts();
+    }
+
+    @Override
+    public double getSerializationP50Micros() {
+        return cacheService.getSerializationTime().snapshot().getPercentileNanos(50) / 1_000.0;
+    }
+
+    @Override
+    public double getSerializationP99Micros() {
+        return cacheService.getSerializationTime().snapshot().getPercentileNanos(99) / 1_000.0;
+    }
+
+    @Override
+    public long getPollingSweeps() {
+        return pollingService == null ? 0 : pollingService.getSweepDuration().snapshot().getCount();
+    }
+
+    @Override
+    public double getPollingSweepDurationP99Millis() {
+        return pollingService == null ? 0 : pollingService.getSweepDuration().snapshot().getPercentileMillis(99);
+    }
+
+    @Override
+    public double getPollingSweepDurationMaxMillis() {
+        return pollingService == null ? 0 : pollingService.getSweepDuration().snapshot().getMaxNanos() / 1_000_000.0;
+    }
+
+    @Override
+    public long getPollingRefreshes() {
+        return pollingService == null ? 0 : pollingService.getRefreshCount();
+    }
+
+    @Override
+    public long getPollingFailures() {
+        return pollingService == null ? 0 : pollingService.getFailureCount();
+    }
+
+    @Override
+    public double getPollingStalenessP99Seconds() {
+        return pollingService == null ? 0 : pollingService.getStaleness().snapshot().getPercentileNanos(99) / 1e9;
+    }
+
+    // Возраст самых старых данных в кэше прямо сейчас: растет, если опрос не успевает
+    @Override
+    public double getMaxCachedAgeSeconds() {
+        long oldest = 0;
+        for (CacheService.CityStatistics statistics : cacheService.getCityStatistics()) {
+            oldest = Math.max(oldest, statistics.getAge().toNanos());
+        }
+        return oldest / 1e9;
+    }
+
+    public LatencyHistogram.Snapshot getGeocodingLatency() {
+        return requestsService.getGeocodingLatency().snapshot();
+    }
+
+    public LatencyHistogram.Snapshot getWeatherLatency() {
+        return requestsService.getWeatherLatency().snapshot();
+    }
+}
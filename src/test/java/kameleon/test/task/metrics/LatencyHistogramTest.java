@@ -0,0 +1,45 @@
+package kameleon.test.task.metrics;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+    public void testPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long millis = 1; millis <= 1_000; millis++) {
+            histogram.record(millis * 1_000_000);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1_000, snapshot.getCount());
+        assertEquals(500.5, snapshot.getMeanNanos() / 1_000_000, 0.001);
+        assertEquals(1_000_000_000, snapshot.getMaxNanos());
+        assertEquals(500, snapshot.getPercentileMillis(50), 500 * 0.125);
+        assertEquals(990, snapshot.getPercentileMillis(99), 990 * 0.125);
+        assertEquals(1_000, snapshot.getPercentileMillis(100), 0.001);
+    }
+
+    public void testBucketsCoverWholeRange() {
+        long previousUpperBound = -1;
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 1_000, 123_456_789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value <= LatencyHistogram.upperBoundOf(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.upperBoundOf(bucket - 1));
+            assertTrue(LatencyHistogram.upperBoundOf(bucket) >= previousUpperBound);
+            previousUpperBound = LatencyHistogram.upperBoundOf(bucket);
+        }
+    }
+
+    public void testStatusCodes() {
+        StatusCodeCounter counter = new StatusCodeCounter();
+        counter.record(200);
+        counter.record(200);
+        counter.record(429);
+        counter.record(-1);
+
+        assertEquals(2, counter.getCount(200));
+        assertEquals(1, counter.getCount(429));
+        assertEquals(1, counter.getCount(0));
+        assertEquals(3, counter.getCounts().size());
+    }
+}
@@ -0,0 +1,150 @@
+package kameleon.test.task.services;
+
+import junit.framework.TestCase;
+import kameleon.test.task.model.CityCoordinates;
+import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.model.WeatherSnapshot;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+public class CacheServiceTest extends TestCase {
+
+    private static CurrentWeather weather(String city) {
+        return CurrentWeather.builder()
+                .weather("Clouds", "scattered clouds")
+                .temperature(269.6, 267.57)
+                .visibility(10000)
+                .wind(1.38)
+                .datetime(1675744800L)
+                .sys(1675751262L, 1675787560L)
+                .timezone(3600)
+                .cityName(city)
+                .build();
+    }
+
+    private static void put(CacheService cache, String city) {
+        cache.cache(weather(city), new CityCoordinates(city, 1.0, 2.0));
+    }
+
+    public void testDefaultCapacityEvictsWeatherAndCoordinatesTogether() {
+        CacheService cache = new CacheService();
+        for (int i = 0; i < 11; i++) {
+            put(cache, "city-" + i);
+        }
+
+        assertEquals(CacheService.DEFAULT_MAXIMUM_SIZE, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(CacheService.DEFAULT_MAXIMUM_SIZE, cache.getCachedCityCoordinates().size());
+        for (String city : cache.getCachedCityCoordinates().keySet()) {
+            assertNotNull(cache.getCurrentWeather(city));
+        }
+    }
+
+    public void testRecentlyReadEntryGetsSecondChance() {
+        CacheService cache = CacheService.builder().maximumSize(3).build();
+        put(cache, "a");
+        put(cache, "b");
+        put(cache, "c");
+        // первая волна вытеснения снимает пометки со всех записей и удаляет самую старую
+        put(cache, "d");
+        assertNull(cache.getCurrentWeather("a"));
+
+        assertNotNull(cache.getCurrentWeather("b"));
+        put(cache, "e");
+
+        assertNotNull(cache.getCurrentWeather("b"));
+        assertNull(cache.getCurrentWeather("c"));
+    }
+
+    public void testLargeCapacityIsStripedAndBounded() {
+        CacheService cache = CacheService.builder().maximumSize(20_000).concurrencyLevel(16).build();
+        for (int i = 0; i < 30_000; i++) {
+            put(cache, "city-" + i);
+        }
+
+        assertTrue(cache.size() <= 20_000);
+        assertTrue(cache.size() > 19_000);
+    }
+
+    public void testWeightBoundedCache() {
+        CacheService cache = CacheService.builder().maximumWeight(10, (weather, coordinates) -> 5).build();
+        put(cache, "a");
+        put(cache, "b");
+        put(cache, "c");
+
+        assertEquals(2, cache.size());
+    }
+
+    public void testPollingUpdateDoesNotResurrectEvictedCity() {
+        CacheService cache = CacheService.builder().maximumSize(1).build();
+        put(cache, "a");
+        put(cache, "b");
+
+        cache.cache(weather("a"), "a");
+
+        assertNull(cache.getCurrentWeather("a"));
+        assertNotNull(cache.getCityCoordinates("b"));
+    }
+
+    public void testExpireAfterWriteDropsEntry() throws InterruptedException {
+        CacheService cache = CacheService.builder().expireAfterWrite(Duration.ofMillis(20)).build();
+        put(cache, "a");
+        assertNotNull(cache.getFreshCurrentWeather("a"));
+
+        Thread.sleep(40);
+
+        assertNull(cache.getCurrentWeather("a"));
+        assertNull(cache.getCityCoordinates("a"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testCompactStorageServesSameJson() {
+        CacheService cache = CacheService.builder().compact(true).build();
+        CurrentWeather original = CurrentWeather.builder()
+                .weather("Rain", "light rain")
+                .temperature(280.1, 277.9)
+                .wind(4.5)
+                .cityName("Paris")
+                .timestamp(LocalDateTime.now().minusSeconds(30).withNano(123_456_789))
+                .build();
+        cache.cache(original, new CityCoordinates("Paris", 48.85, 2.35));
+
+        WeatherSnapshot snapshot = cache.getFreshSnapshot("Paris");
+        assertEquals(WeatherSnapshot.of(original).toJson(), snapshot.toJson());
+        assertEquals(original.getTimestamp(), snapshot.getCurrentWeather().getTimestamp());
+        // sys не задан в исходных данных и не появляется после чтения
+        assertNull(cache.getCurrentWeather("Paris").getSys());
+    }
+
+    public void testCompactSlotsAreReusedAfterEviction() {
+        CacheService cache = CacheService.builder().maximumSize(3).compact(true).build();
+        for (int i = 0; i < 100; i++) {
+            put(cache, "city-" + i);
+        }
+
+        assertEquals(3, cache.size());
+        // Ячейки вытесненных записей занимаются снова: выдано не больше 3 + 1 ячейки под новую запись
+        assertTrue("slots: " + cache.getCompactSlotCount(), cache.getCompactSlotCount() <= 4);
+        for (String city : cache.getCachedCityCoordinates().keySet()) {
+            assertEquals(city, cache.getCurrentWeather(city).getCityName());
+        }
+        // Чтения пересобирают снимок, но время сериализации записано только для 100 записей
+        assertEquals(100, cache.getSerializationTime().snapshot().getCount());
+    }
+
+    public void testCompactReadOfReusedSlotIsMiss() {
+        CompactWeatherStore store = new CompactWeatherStore();
+        int slot = store.allocate();
+        long stamp = store.write(slot, weather("a"), "a");
+        store.free(slot);
+
+        assertEquals(slot, store.allocate());
+        long reused = store.write(slot, weather("b"), "b");
+
+        assertNull(store.read(slot, stamp));
+        assertEquals("b", store.read(slot, reused).getCityName());
+        // main и description хранятся кодами словаря, общими для всех городов
+        assertEquals(2, store.getDictionarySize());
+    }
+}
@@ -0,0 +1,67 @@
+package kameleon.test.task.services;
+
+import junit.framework.TestCase;
+
+import java.time.Duration;
+
+public class CircuitBreakerTest extends TestCase {
+
+    public void testOpensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, Duration.ofMinutes(1));
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+    }
+
+    public void testLateFailureDoesNotExtendOpenState() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofMillis(100));
+        breaker.onFailure();
+        Thread.sleep(60);
+        // ответ на запрос, отправленный до размыкания
+        breaker.onFailure();
+        Thread.sleep(60);
+
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    public void testSingleProbeAfterOpenDuration() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofMillis(20));
+        breaker.onFailure();
+        Thread.sleep(40);
+
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+
+        // неудачная проба снова размыкает автомат
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Thread.sleep(40);
+
+        assertTrue(breaker.tryAcquirePermission());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+    }
+
+    public void testInvalidSettingsAreRejected() {
+        try {
+            new CircuitBreaker(0, Duration.ofSeconds(1));
+            fail("failureThreshold must be positive");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new CircuitBreaker(1, Duration.ZERO);
+            fail("openDuration must be positive");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
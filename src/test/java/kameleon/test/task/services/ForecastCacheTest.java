@@ -0,0 +1,68 @@
+package kameleon.test.task.services;
+
+import junit.framework.TestCase;
+import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.model.WeatherForecast;
+
+import java.time.Duration;
+import java.util.List;
+
+public class ForecastCacheTest extends TestCase {
+    private static final long OBSERVED_AT = 1_675_744_800L;
+
+    private static WeatherForecast forecast() {
+        CurrentWeather observation = CurrentWeather.builder()
+                .weather("Clouds", "scattered clouds")
+                .temperature(270, 268)
+                .visibility(10000)
+                .wind(1)
+                .datetime(OBSERVED_AT)
+                .sys(1675751262L, 1675787560L)
+                .timezone(3600)
+                .cityName("Zocca")
+                .build();
+        return new WeatherForecast(observation, List.of(
+                // час, уже прошедший к моменту наблюдения, в ряд не попадает
+                new WeatherForecast.Hour(OBSERVED_AT - 1800, 250, 250, 0, 0, "Snow", "snow"),
+                new WeatherForecast.Hour(OBSERVED_AT + 1800, 272, 270, 8000, 3, "Clouds", "scattered clouds"),
+                new WeatherForecast.Hour(OBSERVED_AT + 5400, 276, 274, 4000, 5, "Rain", "light rain"),
+                new WeatherForecast.Hour(OBSERVED_AT + 9000, 277, 275, 4000, 5, "Rain", "light rain")));
+    }
+
+    public void testInterpolatesBetweenObservationAndForecastHours() {
+        ForecastCache forecasts = new ForecastCache(Duration.ofHours(2), Duration.ofHours(2));
+        forecasts.put("zocca", forecast(), OBSERVED_AT);
+
+        CurrentWeather halfway = forecasts.interpolate("zocca", OBSERVED_AT + 900);
+        assertEquals(271.0, halfway.getTemperature().getTemp());
+        assertEquals(9000, halfway.getVisibility());
+        assertEquals(2.0, halfway.getWind().getWindSpeed());
+        assertEquals(OBSERVED_AT + 900, halfway.getDatetime());
+        assertEquals("Zocca", halfway.getCityName());
+        assertEquals(1675751262L, halfway.getSys().getSunrise());
+
+        CurrentWeather third = forecasts.interpolate("zocca", OBSERVED_AT + 3000);
+        assertEquals(273.33, third.getTemperature().getTemp());
+        assertEquals("Clouds", third.getWeather().getMain());
+        // состояние погоды берется у ближайшего часа
+        assertEquals("light rain", forecasts.interpolate("zocca", OBSERVED_AT + 4000).getWeather().getDescription());
+    }
+
+    public void testForecastIsDroppedWhenObservationIsDue() {
+        ForecastCache forecasts = new ForecastCache(Duration.ofHours(6), Duration.ofHours(1));
+        forecasts.put("zocca", forecast(), OBSERVED_AT);
+
+        assertNotNull(forecasts.interpolate("zocca", OBSERVED_AT + 3599));
+        assertNull(forecasts.interpolate("zocca", OBSERVED_AT + 3600));
+        assertEquals(0, forecasts.size());
+        assertNull(forecasts.interpolate("paris", OBSERVED_AT));
+    }
+
+    public void testForecastEndsWithItsLastHour() {
+        ForecastCache forecasts = new ForecastCache(Duration.ofHours(6), Duration.ofHours(6));
+        forecasts.put("zocca", forecast(), OBSERVED_AT);
+
+        assertEquals(276.97, forecasts.interpolate("zocca", OBSERVED_AT + 8900).getTemperature().getTemp());
+        assertNull(forecasts.interpolate("zocca", OBSERVED_AT + 9000));
+    }
+}
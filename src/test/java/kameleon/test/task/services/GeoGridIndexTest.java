@@ -0,0 +1,54 @@
+package kameleon.test.task.services;
+
+import junit.framework.TestCase;
+import kameleon.test.task.model.CityCoordinates;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class GeoGridIndexTest extends TestCase {
+
+    public void testHaversineDistance() {
+        // Москва - Санкт-Петербург, около 634 км
+        double distance = GeoGridIndex.distanceKm(55.7558, 37.6173, 59.9343, 30.3351);
+        assertEquals(634, distance, 5);
+    }
+
+    public void testFindsNearestAcrossCellsAndDateline() {
+        GeoGridIndex index = new GeoGridIndex(10);
+        index.add("a", new CityCoordinates("a", 60.00, 179.95));
+        index.add("b", new CityCoordinates("b", 60.03, -179.97));
+        index.add("far", new CityCoordinates("far", 61.00, 179.95));
+
+        List<GeoGridIndex.Neighbor> neighbors = index.findWithinRadius(60.02, -179.99);
+        assertEquals(2, neighbors.size());
+        assertEquals("b", neighbors.get(0).getLocationId());
+        assertEquals("a", neighbors.get(1).getLocationId());
+
+        index.remove("b");
+        assertEquals(1, index.findWithinRadius(60.02, -179.99).size());
+    }
+
+    public void testCellCenterCoversWholeCell() {
+        GeoGridIndex index = new GeoGridIndex(5);
+        CityCoordinates center = index.cellCenter(48.8566, 2.3522);
+        assertEquals(center.getLocationId(), center.getCityName());
+        assertTrue(GeoGridIndex.distanceKm(48.8566, 2.3522, center.getLatitude(), center.getLongitude()) <= 5 * Math.sqrt(2) / 2);
+        assertEquals(index.cellId(48.8566, 2.3522), index.cellId(center.getLatitude(), center.getLongitude()));
+    }
+
+    public void testLocationsLeavingCacheAreDropped() {
+        Set<String> cached = ConcurrentHashMap.newKeySet();
+        GeoGridIndex index = new GeoGridIndex(10, cached::contains);
+        // Кэш держит 10 мест, каждое новое вытесняет самое старое
+        for (int i = 0; i < 1000; i++) {
+            cached.add("city" + i);
+            cached.remove("city" + (i - 10));
+            index.add("city" + i, new CityCoordinates("city" + i, i % 90, i % 180));
+        }
+
+        assertTrue(index.size() <= 128);
+        assertEquals(1, index.findWithinRadius(999 % 90, 999 % 180).size());
+    }
+}
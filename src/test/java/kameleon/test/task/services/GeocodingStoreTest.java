@@ -0,0 +1,110 @@
+package kameleon.test.task.services;
+
+import junit.framework.TestCase;
+import kameleon.test.task.config.WeatherSDKConfig;
+import kameleon.test.task.model.CityCoordinates;
+import kameleon.test.task.modes.Mode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class GeocodingStoreTest extends TestCase {
+    private Path file;
+
+    @Override
+    protected void setUp() throws IOException {
+        file = Files.createTempDirectory("geocoding").resolve("coordinates.db");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(file.getParent());
+    }
+
+    public void testCoordinatesSurviveReopen() throws IOException {
+        try (GeocodingStore store = GeocodingStore.open(file)) {
+            store.put("Москва", new CityCoordinates("Moscow", 55.7504461, 37.6174943));
+            store.put("Paris", new CityCoordinates("Paris", 48.8588897, 2.3200410));
+        }
+
+        try (GeocodingStore store = GeocodingStore.open(file)) {
+            assertEquals(2, store.size());
+            CityCoordinates moscow = store.get("Москва");
+            assertEquals("Moscow", moscow.getCityName());
+            assertEquals(55.7504461, moscow.getLatitude());
+            assertEquals(37.6174943, moscow.getLongitude());
+        }
+    }
+
+    public void testTornTailIsDiscardedAndStoreStaysWritable() throws IOException {
+        try (GeocodingStore store = GeocodingStore.open(file)) {
+            store.put("Paris", new CityCoordinates("Paris", 48.85, 2.32));
+        }
+        long validLength = Files.size(file);
+        Files.write(file, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (GeocodingStore store = GeocodingStore.open(file)) {
+            assertEquals(validLength, Files.size(file));
+            assertNotNull(store.get("Paris"));
+            store.put("Berlin", new CityCoordinates("Berlin", 52.52, 13.40));
+        }
+
+        try (GeocodingStore store = GeocodingStore.open(file)) {
+            assertEquals(2, store.size());
+            assertEquals("Berlin", store.get("Berlin").getCityName());
+        }
+    }
+
+    public void testOldestQueriesAreDroppedAndFileIsCompactedOnOpen() throws IOException {
+        try (GeocodingStore store = GeocodingStore.open(file, 3)) {
+            store.put("a", new CityCoordinates("A", 1, 1));
+            store.put("b", new CityCoordinates("B", 2, 2));
+            store.put("c", new CityCoordinates("C", 3, 3));
+            store.put("d", new CityCoordinates("D", 4, 4));
+            store.put("b", new CityCoordinates("B", 2.5, 2.5));
+
+            assertEquals(3, store.size());
+            assertNull(store.get("a"));
+        }
+        long appended = Files.size(file);
+
+        // Вытесненная и замененная записи выбрасываются из файла при открытии
+        try (GeocodingStore store = GeocodingStore.open(file, 3)) {
+            assertEquals(appended * 3 / 5, Files.size(file));
+            assertEquals(2.5, store.get("b").getLatitude());
+            assertNotNull(store.get("c"));
+            store.put("e", new CityCoordinates("E", 5, 5));
+        }
+
+        try (GeocodingStore store = GeocodingStore.open(file, 3)) {
+            assertEquals(3, store.size());
+            assertNull(store.get("c"));
+            assertEquals("E", store.get("e").getCityName());
+        }
+    }
+
+    public void testSdkSkipsGeocodingForStoredCity() throws Exception {
+        try (GeocodingStore store = GeocodingStore.open(file)) {
+            store.put("London", new CityCoordinates("London", 51.50, -0.12));
+        }
+
+        StubOpenWeatherMapRequestsService requestsService = new StubOpenWeatherMapRequestsService();
+        WeatherSDK sdk = new WeatherSDK("test-key", Mode.ON_DEMAND,
+                WeatherSDKConfig.builder().geocodingStore(file).build(), requestsService);
+        try {
+            sdk.getCurrentWeatherInCity("London");
+            sdk.getCurrentWeatherInCity("Paris");
+        } finally {
+            sdk.shutDown();
+        }
+
+        assertEquals(1, requestsService.coordinatesCalls.get());
+        assertEquals(2, requestsService.weatherCalls.get());
+        try (GeocodingStore store = GeocodingStore.open(file)) {
+            assertNotNull(store.get("paris"));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package kameleon.test.task.services;
+
+import junit.framework.TestCase;
+import kameleon.test.task.model.CityCoordinates;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LocationAliasIndexTest extends TestCase {
+
+    public void testNormalizesCaseWhitespaceAndUnicodeForms() {
+        assertEquals("new york", CityNameNormalizer.normalize("  New\tYORK "));
+        assertEquals("san jose,us", CityNameNormalizer.normalize("San Jose , US"));
+        // "é" как одна кодовая точка и как "e" + комбинируемый акцент
+        assertEquals(CityNameNormalizer.normalize("San José"), CityNameNormalizer.normalize("San José"));
+        assertEquals("орел", CityNameNormalizer.normalize("Орёл"));
+    }
+
+    public void testLearnsQueryCanonicalNameAndLocalNames() {
+        LocationAliasIndex index = new LocationAliasIndex();
+        index.learn("moskva", new CityCoordinates("Moscow", 55.75, 37.61, List.of("Москва", "Moscou")));
+
+        assertEquals("55.7500,37.6100", index.resolve("moskva").getLocationId());
+        assertSame(index.resolve("moskva"), index.resolve("moscow"));
+        assertSame(index.resolve("moskva"), index.resolve("москва"));
+        assertSame(index.resolve("moskva"), index.resolve("moscou"));
+        assertTrue(index.resolve("moskva").getLocalNames().isEmpty());
+    }
+
+    public void testQualifiedQueryDoesNotClaimBareName() {
+        LocationAliasIndex index = new LocationAliasIndex();
+        index.learn("paris,us", new CityCoordinates("Paris", 33.66, -95.55));
+
+        assertNotNull(index.resolve("paris,us"));
+        assertNull(index.resolve("paris"));
+    }
+
+    public void testOldestAliasesAreEvictedWhenFull() {
+        LocationAliasIndex index = new LocationAliasIndex(4);
+        List<String> localNames = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            localNames.add("Moscow-" + i);
+        }
+        index.learn("moskva", new CityCoordinates("Moscow", 55.75, 37.61, localNames));
+        index.learn("spb", new CityCoordinates("Saint Petersburg", 59.94, 30.31));
+
+        // Полсотни имен Москвы - одна единица: запросы обоих городов на месте
+        assertNotNull(index.resolve("moskva"));
+        assertNotNull(index.resolve("moscow-49"));
+        assertNotNull(index.resolve("spb"));
+
+        // Самые старые единицы - запрос и имена Москвы - вытесняются целиком
+        index.learn("kazan", new CityCoordinates("Kazan", 55.79, 49.12));
+        assertNull(index.resolve("moskva"));
+        assertNull(index.resolve("moscow"));
+        assertNull(index.resolve("moscow-0"));
+        assertNotNull(index.resolve("spb"));
+        assertNotNull(index.resolve("saint petersburg"));
+        assertNotNull(index.resolve("kazan"));
+        assertEquals(3, index.size());
+    }
+}
@@ -0,0 +1,250 @@
+package kameleon.test.task.services;
+
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import kameleon.test.task.exceptions.APIKeyException;
+import kameleon.test.task.exceptions.CoordinateException;
+import kameleon.test.task.exceptions.RateLimitedException;
+import kameleon.test.task.model.CityCoordinates;
+import kameleon.test.task.model.CurrentWeather;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+public class OpenWeatherMapRequestsServiceTest extends TestCase {
+    private HttpServer server;
+    private OpenWeatherMapRequestsService requestsService;
+    private final Queue<String> requests = new ConcurrentLinkedQueue<>();
+    private volatile int status = 200;
+    private volatile String body = "";
+    private volatile String retryAfter;
+    // Задержка ответа только для следующего запроса
+    private final AtomicLong nextDelayMillis = new AtomicLong();
+    private ExecutorService serverExecutor;
+
+    @Override
+    protected void setUp() throws IOException {
+        // Без TCP_NODELAY заголовки и тело ответа уходят с задержкой ~40 мс (алгоритм Нейгла)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.add(exchange.getRequestURI().toString());
+            long delay = nextDelayMillis.getAndSet(0);
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    exchange.close();
+                    return;
+                }
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            if (retryAfter != null) {
+                exchange.getResponseHeaders().set("Retry-After", retryAfter);
+            }
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+                    output.write(bytes);
+                }
+                bytes = compressed.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        requestsService = new OpenWeatherMapRequestsService("secret", baseUrl() + "/");
+    }
+
+    @Override
+    protected void tearDown() {
+        // Сначала прерываем зависшие обработчики: закрытие клиента ждет незавершенные обмены
+        serverExecutor.shutdownNow();
+        server.stop(0);
+        requestsService.shutDown();
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void testRequestsGoToConfiguredBaseUrl() throws Exception {
+        body = "[{\"name\":\"São Paulo\",\"lat\":-23.55,\"lon\":-46.63}]";
+
+        CityCoordinates coordinates = requestsService.getCityCoordinates("são paulo");
+
+        assertEquals("São Paulo", coordinates.getCityName());
+        assertEquals("/geo/1.0/direct?limit=1&appid=secret&q=s%C3%A3o+paulo", requests.poll());
+    }
+
+    public void testTooManyRequestsIsNotReportedAsUnknownCity() throws Exception {
+        status = 429;
+        body = "{\"cod\":429,\"message\":\"Your account is temporary blocked\"}";
+        retryAfter = "7";
+        try {
+            requestsService.getCityCoordinates("London");
+            fail();
+        } catch (CoordinateException e) {
+            fail("429 must not look like a missing city");
+        } catch (RateLimitedException e) {
+            assertTrue(e.getMessage().contains("429"));
+            assertEquals(Duration.ofSeconds(7), e.getRetryAfter());
+        }
+    }
+
+    public void testNotFoundFromGeocoderIsCoordinateException() throws Exception {
+        status = 404;
+        body = "{\"cod\":\"404\",\"message\":\"city not found\"}";
+        try {
+            requestsService.getCityCoordinates("Atlantis");
+            fail();
+        } catch (CoordinateException e) {
+            assertEquals("city not found", e.getMessage());
+        }
+    }
+
+    public void testGroupRequestSplitsResponseByCity() throws Exception {
+        body = "{\"cnt\":2,\"list\":["
+                + "{\"coord\":{\"lon\":37.62,\"lat\":55.75},\"sys\":{\"country\":\"RU\",\"timezone\":10800,\"sunrise\":1700000000,\"sunset\":1700030000},"
+                + "\"weather\":[{\"id\":600,\"main\":\"Snow\",\"description\":\"light snow\"}],"
+                + "\"main\":{\"temp\":269.6,\"feels_like\":264.1,\"pressure\":1012},\"visibility\":4000,"
+                + "\"wind\":{\"speed\":4.2,\"deg\":200},\"dt\":1700010000,\"id\":524901,\"name\":\"Moscow\"},"
+                + "{\"sys\":{\"timezone\":3600},\"weather\":[{\"main\":\"Clouds\",\"description\":\"overcast clouds\"}],"
+                + "\"main\":{\"temp\":283.2,\"feels_like\":282.0},\"visibility\":10000,\"wind\":{\"speed\":3.1},"
+                + "\"dt\":1700010100,\"id\":2643743,\"name\":\"London\"}]}";
+        Map<Long, String> cities = new LinkedHashMap<>();
+        cities.put(524901L, "Москва");
+        cities.put(2643743L, "London");
+
+        Map<Long, CurrentWeather> weather = requestsService.getCurrentWeatherByCityIds(cities, Deadline.after(Duration.ofSeconds(5)));
+
+        assertEquals("/data/2.5/group?units=standard&appid=secret&id=524901,2643743", requests.poll());
+        CurrentWeather moscow = weather.get(524901L);
+        assertEquals("Москва", moscow.getCityName());
+        assertEquals("light snow", moscow.getWeather().getDescription());
+        assertEquals(264.1, moscow.getTemperature().getFeelsLike());
+        assertEquals(4.2, moscow.getWind().getWindSpeed());
+        assertEquals(10800, moscow.getTimezone());
+        assertEquals(1700030000, moscow.getSys().getSunset());
+        assertEquals(1700010000, moscow.getDatetime());
+        assertEquals(3600, weather.get(2643743L).getTimezone());
+        assertEquals("Clouds", weather.get(2643743L).getWeather().getMain());
+    }
+
+    public void testGroupRequestRejectedByPlanIsAPIKeyException() throws Exception {
+        status = 401;
+        body = "{\"cod\":401,\"message\":\"Invalid API key.\"}";
+        try {
+            requestsService.getCurrentWeatherByCityIds(Map.of(524901L, "Moscow"), Deadline.after(Duration.ofSeconds(5)));
+            fail();
+        } catch (APIKeyException e) {
+            assertTrue(e.getMessage().contains("401"));
+        }
+    }
+
+    public void testOneCallClientErrorsAreNotUpstreamFailures() throws Exception {
+        CityCoordinates zocca = new CityCoordinates("Zocca", 44.34, 10.99);
+        status = 401;
+        body = "{\"cod\":401,\"message\":\"Please note that using One Call 3.0 requires a separate subscription\"}";
+        try {
+            requestsService.getCurrentWeather(zocca, Deadline.after(Duration.ofSeconds(5)));
+            fail();
+        } catch (APIKeyException e) {
+            assertTrue(e.getMessage().contains("401"));
+        }
+
+        status = 400;
+        body = "{\"cod\":\"400\",\"message\":\"wrong latitude\"}";
+        try {
+            requestsService.getForecast(zocca, Deadline.after(Duration.ofSeconds(5)));
+            fail();
+        } catch (CoordinateException e) {
+            assertTrue(e.getMessage().contains("400"));
+        }
+    }
+
+    public void testStalledResponseFailsAtDeadline() throws Exception {
+        body = "[{\"name\":\"London\",\"lat\":51.5,\"lon\":-0.12}]";
+        nextDelayMillis.set(5_000);
+
+        long start = System.nanoTime();
+        try {
+            requestsService.getCityCoordinates("London", Deadline.after(Duration.ofMillis(200)));
+            fail("stalled response must time out");
+        } catch (HttpTimeoutException expected) {
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1, requestsService.getStatusCodes().getCount(0));
+    }
+
+    public void testSlowAttemptIsHedged() throws Exception {
+        body = "[{\"name\":\"London\",\"lat\":51.5,\"lon\":-0.12}]";
+        OpenWeatherMapRequestsService hedged = new OpenWeatherMapRequestsService("secret", baseUrl(), 90);
+        try {
+            for (int i = 0; i < HedgingPolicy.MIN_SAMPLES; i++) {
+                hedged.getCityCoordinates("London");
+            }
+            assertEquals(0, hedged.getHedgedRequestCount());
+            requests.clear();
+            nextDelayMillis.set(5_000);
+
+            long start = System.nanoTime();
+            assertEquals("London", hedged.getCityCoordinates("London").getCityName());
+
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            assertEquals(1, hedged.getHedgedRequestCount());
+            assertEquals(2, requests.size());
+        } finally {
+            hedged.shutDown();
+        }
+    }
+
+    public void testHedgeIsNotSentWithoutQuotaPermit() throws Exception {
+        body = "[{\"name\":\"London\",\"lat\":51.5,\"lon\":-0.12}]";
+        OpenWeatherMapRequestsService hedged = new OpenWeatherMapRequestsService("secret", baseUrl(), 90);
+        hedged.setHedgePermit(() -> false);
+        try {
+            for (int i = 0; i < HedgingPolicy.MIN_SAMPLES; i++) {
+                hedged.getCityCoordinates("London");
+            }
+            requests.clear();
+            nextDelayMillis.set(1_000);
+
+            assertEquals("London", hedged.getCityCoordinates("London").getCityName());
+
+            assertEquals(0, hedged.getHedgedRequestCount());
+            assertEquals(1, requests.size());
+        } finally {
+            hedged.shutDown();
+        }
+    }
+
+    public void testCompressedResponsesAreDecoded() throws Exception {
+        body = "[{\"name\":\"London\",\"lat\":51.5,\"lon\":-0.12}]";
+        OpenWeatherMapRequestsService plain = new OpenWeatherMapRequestsService("secret", baseUrl(), 0, null, false);
+        try {
+            assertEquals("London", requestsService.getCityCoordinates("London").getCityName());
+            assertEquals("London", plain.getCityCoordinates("London").getCityName());
+        } finally {
+            plain.shutDown();
+        }
+    }
+}
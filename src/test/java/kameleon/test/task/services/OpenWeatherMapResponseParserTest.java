@@ -0,0 +1,98 @@
+package kameleon.test.task.services;
+
+import junit.framework.TestCase;
+import kameleon.test.task.exceptions.APIKeyException;
+import kameleon.test.task.exceptions.CoordinateException;
+import kameleon.test.task.model.CityCoordinates;
+import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.model.WeatherForecast;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+public class OpenWeatherMapResponseParserTest extends TestCase {
+
+    private static byte[] json(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void testParsesOneCallResponseSkippingUnusedSections() throws IOException {
+        CurrentWeather currentWeather;
+        try (InputStream body = getClass().getResourceAsStream("/onecall.json")) {
+            currentWeather = OpenWeatherMapResponseParser.parseCurrentWeather(body, "Zocca");
+        }
+
+        assertEquals("Zocca", currentWeather.getCityName());
+        assertEquals("Clouds", currentWeather.getWeather().getMain());
+        assertEquals("scattered clouds", currentWeather.getWeather().getDescription());
+        assertEquals(269.6, currentWeather.getTemperature().getTemp());
+        assertEquals(267.57, currentWeather.getTemperature().getFeelsLike());
+        assertEquals(10000, currentWeather.getVisibility());
+        assertEquals(1.38, currentWeather.getWind().getWindSpeed());
+        assertEquals(1675744800L, currentWeather.getDatetime());
+        assertEquals(1675751262L, currentWeather.getSys().getSunrise());
+        assertEquals(1675787560L, currentWeather.getSys().getSunset());
+        assertEquals(3600, currentWeather.getTimezone());
+    }
+
+    public void testParsesHourlyForecast() throws IOException {
+        WeatherForecast forecast;
+        try (InputStream body = getClass().getResourceAsStream("/onecall.json")) {
+            forecast = OpenWeatherMapResponseParser.parseForecast(body, "Zocca");
+        }
+
+        assertEquals(269.6, forecast.getCurrent().getTemperature().getTemp());
+        assertEquals(1, forecast.getHourly().size());
+        WeatherForecast.Hour hour = forecast.getHourly().get(0);
+        assertEquals(1675742400L, hour.getDatetime());
+        assertEquals(269.8, hour.getTemp());
+        assertEquals(267.9, hour.getFeelsLike());
+        assertEquals(10000, hour.getVisibility());
+        assertEquals(1.2, hour.getWindSpeed());
+        assertEquals("scattered clouds", hour.getDescription());
+    }
+
+    public void testOneCallErrorIsReported() {
+        try {
+            OpenWeatherMapResponseParser.parseCurrentWeather(json("{\"cod\":401,\"message\":\"Invalid API key\"}"), "Zocca");
+            fail("error payload must not produce weather");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Invalid API key"));
+        }
+    }
+
+    public void testParsesFirstGeocodingResult() throws Exception {
+        CityCoordinates coordinates = OpenWeatherMapResponseParser.parseCityCoordinates(json(
+                "[{\"name\":\"Moscow\",\"local_names\":{\"ru\":\"Москва\",\"en\":\"Moscow\"},"
+                        + "\"lat\":55.7504461,\"lon\":37.6174943,\"country\":\"RU\",\"state\":\"Moscow\"},"
+                        + "{\"name\":\"Moscow\",\"lat\":46.7323875,\"lon\":-117.0001651,\"country\":\"US\"}]"), "Москва");
+
+        assertEquals("Moscow", coordinates.getCityName());
+        assertEquals(55.7504461, coordinates.getLatitude());
+        assertEquals(37.6174943, coordinates.getLongitude());
+    }
+
+    public void testGeocodingErrors() throws Exception {
+        try {
+            OpenWeatherMapResponseParser.parseCityCoordinates(json("[]"), "Atlantis");
+            fail("empty result must fail");
+        } catch (CoordinateException e) {
+            assertEquals("The city Atlantis was not found", e.getMessage());
+        }
+
+        try {
+            OpenWeatherMapResponseParser.parseCityCoordinates(json("{\"cod\":401,\"message\":\"Invalid API key\"}"), "London");
+            fail("401 must fail");
+        } catch (APIKeyException e) {
+            assertEquals("Invalid API key", e.getMessage());
+        }
+
+        try {
+            OpenWeatherMapResponseParser.parseCityCoordinates(json("{\"cod\":\"400\",\"message\":\"Nothing to geocode\"}"), "");
+            fail("400 must fail");
+        } catch (CoordinateException e) {
+            assertEquals("Nothing to geocode", e.getMessage());
+        }
+    }
+}
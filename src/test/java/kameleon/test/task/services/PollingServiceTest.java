@@ -0,0 +1,216 @@
+package kameleon.test.task.services;
+
+import junit.framework.TestCase;
+import kameleon.test.task.model.CityCoordinates;
+import kameleon.test.task.model.PollingSweepReport;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class PollingServiceTest extends TestCase {
+    private StubOpenWeatherMapRequestsService requestsService;
+    private CacheService cacheService;
+
+    @Override
+    protected void setUp() {
+        requestsService = new StubOpenWeatherMapRequestsService();
+        cacheService = CacheService.builder().maximumSize(1_000).build();
+        for (int i = 0; i < 20; i++) {
+            String city = "city-" + i;
+            cacheService.cache(StubOpenWeatherMapRequestsService.weather(city, 260), new CityCoordinates(city, i, i));
+        }
+    }
+
+    public void testSweepRefreshesCitiesConcurrently() {
+        requestsService.latencyMillis = 100;
+        PollingService pollingService = PollingService.builder(cacheService, 10, requestsService)
+                .concurrency(10).rateLimiter(new RateLimiter(1_000)).build();
+
+        pollingService.updateAllCachedCities();
+
+        PollingSweepReport report = pollingService.getLastSweepReport();
+        assertEquals(20, report.getCities());
+        assertEquals(20, report.getRefreshed());
+        assertEquals(0, report.getFailed());
+        assertFalse(report.isOverran());
+        assertTrue("sweep took " + report.getDuration(), report.getDuration().toMillis() < 1_000);
+        assertEquals(269.6, cacheService.getCurrentWeather("city-7").getTemperature().getTemp());
+        assertEquals(20, pollingService.getRefreshCount());
+        assertEquals(20, pollingService.getStaleness().snapshot().getCount());
+        assertEquals(1, pollingService.getSweepDuration().snapshot().getCount());
+    }
+
+    public void testSweepIsThrottledByRateLimiter() {
+        PollingService pollingService = PollingService.builder(cacheService, 10, requestsService)
+                .concurrency(10).rateLimiter(new RateLimiter(40, 1)).build();
+
+        pollingService.updateAllCachedCities();
+
+        // первый токен доступен сразу, остальные 19 выдаются по одному каждые 25 мс
+        assertTrue(pollingService.getLastSweepReport().getDuration().toMillis() >= 450);
+        assertEquals(20, requestsService.weatherCalls.get());
+    }
+
+    public void testBatchRefresherGetsCitiesInGroupsOfTwenty() {
+        for (int i = 20; i < 45; i++) {
+            String city = "city-" + i;
+            cacheService.cache(StubOpenWeatherMapRequestsService.weather(city, 260), new CityCoordinates(city, i, i));
+        }
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        PollingService.BatchRefresher batchRefresher = cities -> {
+            batchSizes.add(cities.size());
+            return cities.containsKey("city-3") ? Map.of("city-3", new IOException("no weather")) : Map.of();
+        };
+        PollingService pollingService = PollingService.builder(cacheService, 10, requestsService)
+                .concurrency(10).rateLimiter(new RateLimiter(1_000, 1)).batchRefresher(batchRefresher).build();
+
+        pollingService.updateAllCachedCities();
+
+        batchSizes.sort(null);
+        assertEquals(List.of(5, 20, 20), batchSizes);
+        PollingSweepReport report = pollingService.getLastSweepReport();
+        assertEquals(45, report.getCities());
+        assertEquals(44, report.getRefreshed());
+        assertEquals(1, report.getFailed());
+        assertEquals(0, requestsService.weatherCalls.get());
+    }
+
+    public void testSpreadPollingRefreshesEachCityOnItsOwnDeadline() {
+        long minute = 60_000_000_000L;
+        PollingService pollingService = PollingService.builder(cacheService, 1, requestsService)
+                .concurrency(10).rateLimiter(new RateLimiter(1_000)).spread(0.1).build();
+        long start = System.nanoTime();
+
+        pollingService.advanceSchedule(start).join();
+        pollingService.advanceSchedule(start + minute / 2).join();
+        int firstHalf = requestsService.weatherCalls.get();
+        pollingService.advanceSchedule(start + minute).join();
+
+        // Первые сроки случайны в пределах интервала: за половину интервала обновлена только часть городов
+        assertTrue("refreshed " + firstHalf, firstHalf > 0 && firstHalf < 20);
+        assertEquals(20, requestsService.weatherCalls.get());
+        assertEquals(20, pollingService.getScheduledCityCount());
+
+        requestsService.unavailable = true;
+        pollingService.advanceSchedule(start + minute * 23 / 10).join();
+        assertEquals(20, pollingService.getFailureCount());
+
+        // После ошибки город повторяется через 30 с +-10%, а не через интервал
+        requestsService.unavailable = false;
+        pollingService.advanceSchedule(start + minute * 29 / 10).join();
+        assertEquals(40, pollingService.getRefreshCount());
+        assertNull(pollingService.getLastSweepReport());
+    }
+
+    public void testSpreadPollingCollectsDueCitiesIntoGroups() {
+        long minute = 60_000_000_000L;
+        CacheService cache = CacheService.builder().build();
+        for (int i = 0; i < 5; i++) {
+            cache.cache(StubOpenWeatherMapRequestsService.weather("city-" + i, 260), new CityCoordinates("city-" + i, i, i));
+        }
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        PollingService.BatchRefresher batchRefresher = cities -> {
+            batchSizes.add(cities.size());
+            return Map.of();
+        };
+        PollingService pollingService = PollingService.builder(cache, 10, requestsService)
+                .concurrency(10).rateLimiter(new RateLimiter(1_000)).batchRefresher(batchRefresher).spread(0.1).build();
+        long start = System.nanoTime();
+
+        pollingService.advanceSchedule(start).join();
+        pollingService.advanceSchedule(start + minute * 10).join();
+        // Пачка не полная: города ждут окно в 30 с
+        assertEquals(List.of(), batchSizes);
+
+        pollingService.advanceSchedule(start + minute * 10 + minute / 2).join();
+        assertEquals(List.of(5), batchSizes);
+        assertEquals(5, pollingService.getScheduledCityCount());
+    }
+
+    public void testStopInterruptsSweepRunningOnSharedScheduler() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        PollingService.CityRefresher cityRefresher = (city, cityCoordinates) -> {
+            started.countDown();
+            try {
+                Thread.sleep(Duration.ofMinutes(1));
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+                throw e;
+            }
+        };
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            PollingService pollingService = PollingService.builder(cacheService, 10, requestsService)
+                    .concurrency(1).rateLimiter(new RateLimiter(1_000)).cityRefresher(cityRefresher).scheduler(scheduler).build();
+            pollingService.start();
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            pollingService.stop();
+
+            // к возврату из stop обход прерван и завершен
+            assertTrue(interrupted.get());
+            assertNotNull(pollingService.getLastSweepReport());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public void testStalledCityDoesNotDelayOtherDeadlines() throws Exception {
+        long minute = 60_000_000_000L;
+        CountDownLatch stalled = new CountDownLatch(1);
+        PollingService.CityRefresher cityRefresher = (city, cityCoordinates) -> {
+            if (city.equals("city-0")) {
+                stalled.await();
+            }
+        };
+        PollingService pollingService = PollingService.builder(cacheService, 1, requestsService)
+                .concurrency(10).rateLimiter(new RateLimiter(1_000)).cityRefresher(cityRefresher).spread(0.1).build();
+        long start = System.nanoTime();
+
+        pollingService.advanceSchedule(start).join();
+        CompletableFuture<Void> tick = pollingService.advanceSchedule(start + minute);
+
+        // Тик не ждет зависший город: остальные 19 обновлены и уже получили следующий срок
+        assertFalse(tick.isDone());
+        while (pollingService.getScheduledCityCount() < 19) {
+            Thread.sleep(5);
+        }
+        assertEquals(19, pollingService.getRefreshCount());
+        stalled.countDown();
+        tick.get(5, TimeUnit.SECONDS);
+        assertEquals(20, pollingService.getScheduledCityCount());
+    }
+
+    public void testRefreshAheadSelectsOnlyHotCitiesCloseToExpiry() throws InterruptedException {
+        CacheService cache = CacheService.builder().freshFor(Duration.ofMillis(200)).build();
+        for (String city : new String[]{"hot", "warm", "cold"}) {
+            cache.cache(StubOpenWeatherMapRequestsService.weather(city, 260), new CityCoordinates(city, 0, 0));
+        }
+        RefreshAheadPollingStrategy strategy = new RefreshAheadPollingStrategy(Duration.ofMillis(100), 1);
+
+        Thread.sleep(160);
+        cache.getCurrentWeather("hot");
+        cache.getCurrentWeather("hot");
+        cache.getCurrentWeather("warm");
+
+        // запись станет несвежей до следующего цикла (через 50 мс), "cold" давно не читали
+        Map<String, CityCoordinates> selected = strategy.selectCitiesToRefresh(cache, Duration.ofMillis(50));
+        assertEquals(Map.of("hot", cache.getCityCoordinates("hot")), selected);
+
+        Map<String, CityCoordinates> unlimited = new RefreshAheadPollingStrategy(Duration.ofMillis(100))
+                .selectCitiesToRefresh(cache, Duration.ofMillis(50));
+        assertEquals(2, unlimited.size());
+        assertFalse(unlimited.containsKey("cold"));
+    }
+}
@@ -0,0 +1,116 @@
+package kameleon.test.task.services;
+
+import junit.framework.TestCase;
+import kameleon.test.task.exceptions.QuotaExceededException;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class QuotaSchedulerTest extends TestCase {
+    private static final Deadline NO_WAIT = Deadline.after(Duration.ofMillis(1));
+
+    public void testLowPriorityIsShedBeforeQuotaRunsOut() throws Exception {
+        QuotaScheduler scheduler = new QuotaScheduler(0, 20);
+        for (int i = 0; i < 18; i++) {
+            scheduler.acquire(QuotaScheduler.Priority.POLLING, NO_WAIT);
+        }
+        // осталось 2 из 20 (запас 10%): опрос уже отбрасывается, фоновые обновления еще проходят
+        assertShed(scheduler, QuotaScheduler.Priority.POLLING);
+        scheduler.acquire(QuotaScheduler.Priority.PREFETCH, NO_WAIT);
+        assertShed(scheduler, QuotaScheduler.Priority.PREFETCH);
+
+        scheduler.acquire(QuotaScheduler.Priority.INTERACTIVE, NO_WAIT);
+        assertEquals(0, scheduler.getRemainingToday());
+        try {
+            scheduler.acquire(QuotaScheduler.Priority.INTERACTIVE, Deadline.after(Duration.ofMillis(50)));
+            fail("daily quota is exhausted");
+        } catch (QuotaExceededException expected) {
+        }
+        assertEquals(2, scheduler.getShedCount());
+    }
+
+    public void testRateLimitBacksOffExponentiallyAndHonorsRetryAfter() throws Exception {
+        QuotaScheduler scheduler = new QuotaScheduler(0, 0);
+        scheduler.onRateLimited(null);
+        assertTrue(scheduler.getBackoffRemaining().compareTo(QuotaScheduler.INITIAL_BACKOFF) <= 0);
+        assertTrue(scheduler.getBackoffRemaining().compareTo(Duration.ofMillis(900)) > 0);
+
+        scheduler.onRateLimited(null);
+        assertTrue(scheduler.getBackoffRemaining().compareTo(Duration.ofMillis(1900)) > 0);
+
+        scheduler.onRateLimited(Duration.ofSeconds(30));
+        assertTrue(scheduler.getBackoffRemaining().compareTo(Duration.ofSeconds(29)) > 0);
+        assertShed(scheduler, QuotaScheduler.Priority.POLLING);
+        assertEquals(3, scheduler.getRateLimitedCount());
+    }
+
+    public void testOptionalCallsStopDuringBackoffAndLowQuota() throws Exception {
+        QuotaScheduler scheduler = new QuotaScheduler(0, 20);
+        assertTrue(scheduler.tryAcquireOptional());
+        assertEquals(19, scheduler.getRemainingToday());
+
+        scheduler.onRateLimited(Duration.ofMillis(1));
+        assertFalse(scheduler.tryAcquireOptional());
+
+        QuotaScheduler low = new QuotaScheduler(0, 20);
+        for (int i = 0; i < 19; i++) {
+            low.acquire(QuotaScheduler.Priority.INTERACTIVE, NO_WAIT);
+        }
+        assertFalse(low.tryAcquireOptional());
+        assertEquals(1, low.getRemainingToday());
+    }
+
+    public void testInteractiveWaitsOutShortBackoff() throws Exception {
+        QuotaScheduler scheduler = new QuotaScheduler(0, 0);
+        scheduler.onRateLimited(Duration.ofMillis(1));
+
+        long start = System.nanoTime();
+        scheduler.acquire(QuotaScheduler.Priority.INTERACTIVE, Deadline.after(Duration.ofSeconds(5)));
+        long waited = System.nanoTime() - start;
+        // пауза - не меньше начальной, даже если Retry-After короче
+        assertTrue(waited >= TimeUnit.MILLISECONDS.toNanos(900));
+        scheduler.onSuccess();
+        scheduler.acquire(QuotaScheduler.Priority.POLLING, NO_WAIT);
+    }
+
+    public void testInteractiveGoesAheadOfWaitingPrefetch() throws Exception {
+        AtomicLong now = new AtomicLong();
+        QuotaScheduler scheduler = new QuotaScheduler(2, 0, 0, now::get);
+        scheduler.acquire(QuotaScheduler.Priority.INTERACTIVE, NO_WAIT);
+        scheduler.acquire(QuotaScheduler.Priority.INTERACTIVE, NO_WAIT);
+
+        CountDownLatch interactiveDone = new CountDownLatch(1);
+        Thread interactive = Thread.ofVirtual().start(() -> {
+            try {
+                // ждет следующей минуты по подмененным часам
+                scheduler.acquire(QuotaScheduler.Priority.INTERACTIVE, Deadline.after(Duration.ofMinutes(2)));
+                interactiveDone.countDown();
+            } catch (Exception ignored) {
+            }
+        });
+        while (!scheduler.hasWaiters()) {
+            Thread.sleep(5);
+        }
+        // началась новая минута: квоты хватает и фоновому запросу, но его обгоняет ждущий пользовательский
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        try {
+            scheduler.tryAcquire(QuotaScheduler.Priority.PREFETCH);
+            fail("prefetch must not jump the queue");
+        } catch (QuotaExceededException expected) {
+        }
+        assertTrue(interactiveDone.await(5, TimeUnit.SECONDS));
+        interactive.join();
+        // в окне остался один вызов - теперь фоновый запрос проходит
+        scheduler.tryAcquire(QuotaScheduler.Priority.PREFETCH);
+    }
+
+    private static void assertShed(QuotaScheduler scheduler, QuotaScheduler.Priority priority) throws InterruptedException {
+        try {
+            scheduler.acquire(priority, Deadline.after(Duration.ofSeconds(5)));
+            fail(priority + " must be shed");
+        } catch (QuotaExceededException expected) {
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package kameleon.test.task.services;
+
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import kameleon.test.task.config.WeatherSDKConfig;
+import kameleon.test.task.modes.Mode;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SharedResourcesTest extends TestCase {
+    private static final String GEOCODING = "[{\"name\":\"London\",\"lat\":51.5073,\"lon\":-0.1276}]";
+    private static final String ONE_CALL = "{\"timezone_offset\":0,\"current\":{\"dt\":1675744800,\"sunrise\":1675751262,"
+            + "\"sunset\":1675787560,\"temp\":269.6,\"feels_like\":267.6,\"visibility\":10000,\"wind_speed\":1.38,"
+            + "\"weather\":[{\"main\":\"Clouds\",\"description\":\"scattered clouds\"}]}}";
+
+    private HttpServer server;
+    private final AtomicInteger geocodingCalls = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws IOException {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            boolean geocoding = exchange.getRequestURI().getPath().startsWith("/geo/");
+            if (geocoding) {
+                geocodingCalls.incrementAndGet();
+            }
+            byte[] bytes = (geocoding ? GEOCODING : ONE_CALL).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() {
+        server.stop(0);
+    }
+
+    public void testResourcesCloseWithLastReference() {
+        SharedResources resources = SharedResources.builder().build();
+        assertTrue(resources.retain());
+        assertTrue(resources.retain());
+
+        resources.release();
+        assertFalse(resources.isClosed());
+        assertFalse(resources.getPollingScheduler().isShutdown());
+
+        resources.release();
+        assertTrue(resources.isClosed());
+        assertTrue(resources.getPollingScheduler().isShutdown());
+        assertFalse(resources.retain());
+    }
+
+    public void testTenantsShareGeocodingAndTransport() throws Exception {
+        SharedResources resources = SharedResources.builder().virtualThreads(true).build();
+        WeatherSDKConfig config = WeatherSDKConfig.builder()
+                .baseUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                .jmxEnabled(false)
+                .build();
+        resources.retain();
+        WeatherSDK first = new WeatherSDK("first-key", Mode.ON_DEMAND, config, resources);
+        resources.retain();
+        WeatherSDK second = new WeatherSDK("second-key", Mode.POLLING, config, resources);
+
+        first.getCurrentWeatherInCity("London");
+        second.getCurrentWeatherInCity("london");
+        assertEquals(1, geocodingCalls.get());
+
+        // Остановка одного SDK не закрывает общий клиент для другого
+        first.shutDown();
+        first.shutDown();
+        assertEquals(1, resources.getReferenceCount());
+        second.getCurrentWeatherInCity("Paris");
+
+        second.shutDown();
+        assertTrue(resources.isClosed());
+    }
+}
@@ -0,0 +1,160 @@
+package kameleon.test.task.services;
+
+import junit.framework.TestCase;
+import kameleon.test.task.config.WeatherSDKConfig;
+import kameleon.test.task.model.CityCoordinates;
+import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.modes.Mode;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+
+public class SharedWeatherCacheTest extends TestCase {
+    private Path file;
+
+    @Override
+    protected void setUp() throws IOException {
+        file = Files.createTempDirectory("shared-cache").resolve("weather.cache");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(file.getParent());
+    }
+
+    public void testEntryWrittenByOneInstanceIsVisibleToAnother() throws IOException {
+        CurrentWeather moscow = StubOpenWeatherMapRequestsService.weather("Moscow", 255.25);
+        try (SharedWeatherCache writer = SharedWeatherCache.open(file, 64);
+             SharedWeatherCache reader = SharedWeatherCache.open(file, 64)) {
+            assertNull(reader.get("Moscow"));
+            assertTrue(writer.put("Moscow", new CityCoordinates("Moscow", 55.75, 37.61), moscow));
+
+            SharedWeatherCache.SharedEntry entry = reader.get("Moscow");
+            assertNotNull(entry);
+            assertEquals("Moscow", entry.getCurrentWeather().getCityName());
+            assertEquals(255.25, entry.getCurrentWeather().getTemperature().getTemp());
+            assertEquals("scattered clouds", entry.getCurrentWeather().getWeather().getDescription());
+            assertEquals(1675751262L, entry.getCurrentWeather().getSys().getSunrise());
+            assertEquals(55.75, entry.getCityCoordinates().getLatitude());
+            assertTrue(entry.isFresherThan(Duration.ofMinutes(1)));
+        }
+    }
+
+    public void testRecordAbandonedMidWriteIsRecovered() throws IOException {
+        CurrentWeather moscow = StubOpenWeatherMapRequestsService.weather("Moscow", 255.25);
+        try (SharedWeatherCache cache = SharedWeatherCache.open(file, 64)) {
+            assertTrue(cache.put("Moscow", new CityCoordinates("Moscow", 55.75, 37.61), moscow));
+        }
+        // Процесс умер посреди записи минуту назад: счетчик остался нечетным
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            buffer.order(ByteOrder.nativeOrder());
+            int record = findRecord(buffer, "Moscow");
+            buffer.putLong(record, (System.currentTimeMillis() - 60_000) << 1 | 1);
+        }
+
+        try (SharedWeatherCache cache = SharedWeatherCache.open(file, 64)) {
+            // Наполовину записанные данные не отдаются, но запись снова доступна для чтения и записи
+            assertNull(cache.get("Moscow"));
+            assertTrue(cache.put("Moscow", new CityCoordinates("Moscow", 55.75, 37.61), moscow));
+            assertEquals(255.25, cache.get("Moscow").getCurrentWeather().getTemperature().getTemp());
+        }
+    }
+
+    // Запись ищется по ключу (длина + байты UTF-8 по смещению 104 от начала записи)
+    private static int findRecord(MappedByteBuffer buffer, String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        for (int record = 64; record + 512 <= buffer.capacity(); record += 512) {
+            if (buffer.getShort(record + 104) != keyBytes.length) {
+                continue;
+            }
+            byte[] stored = new byte[keyBytes.length];
+            buffer.get(record + 106, stored);
+            if (Arrays.equals(stored, keyBytes)) {
+                return record;
+            }
+        }
+        throw new AssertionError(key + " not found");
+    }
+
+    public void testFullTableReplacesLeastRecentlyWrittenRecord() throws Exception {
+        CurrentWeather weather = StubOpenWeatherMapRequestsService.weather("Moscow", 255.25);
+        CityCoordinates coordinates = new CityCoordinates("Moscow", 55.75, 37.61);
+        try (SharedWeatherCache cache = SharedWeatherCache.open(file, 64)) {
+            assertTrue(cache.put("city0", coordinates, weather));
+            Thread.sleep(5);
+            for (int i = 1; i < 64; i++) {
+                assertTrue(cache.put("city" + i, coordinates, weather));
+            }
+        }
+
+        // Файл переживает перезапуск, поэтому место должно освобождаться и после него
+        try (SharedWeatherCache cache = SharedWeatherCache.open(file, 64)) {
+            assertTrue(cache.put("Paris", new CityCoordinates("Paris", 48.85, 2.35), weather));
+            assertNull(cache.get("city0"));
+            assertEquals(48.85, cache.get("Paris").getCityCoordinates().getLatitude());
+            assertNotNull(cache.get("city1"));
+            assertTrue(cache.tryClaimRefresh("Berlin", Duration.ofSeconds(10)));
+            assertFalse(cache.tryClaimRefresh("Berlin", Duration.ofSeconds(10)));
+        }
+    }
+
+    public void testOnlyOneInstanceCanClaimRefresh() throws IOException {
+        try (SharedWeatherCache first = SharedWeatherCache.open(file, 64);
+             SharedWeatherCache second = SharedWeatherCache.open(file, 64)) {
+            assertTrue(first.tryClaimRefresh("Paris", Duration.ofSeconds(10)));
+            assertFalse(second.tryClaimRefresh("Paris", Duration.ofSeconds(10)));
+
+            first.releaseClaim("Paris");
+            assertTrue(second.tryClaimRefresh("Paris", Duration.ofSeconds(10)));
+        }
+    }
+
+    public void testClaimHeldByAnotherProcessIsNotReleased() throws Exception {
+        StubOpenWeatherMapRequestsService requests = new StubOpenWeatherMapRequestsService();
+        CityCoordinates oslo = new CityCoordinates("Oslo", 59.91, 10.75);
+        requests.locations.put("oslo", oslo);
+        WeatherSDK sdk = new WeatherSDK("key-1", Mode.ON_DEMAND,
+                WeatherSDKConfig.builder().sharedCache(file, 256).jmxEnabled(false).build(), requests);
+        try (SharedWeatherCache other = SharedWeatherCache.open(file, 256);
+             SharedWeatherCache third = SharedWeatherCache.open(file, 256)) {
+            assertTrue(other.tryClaimRefresh(oslo.getLocationId(), Duration.ofMinutes(1)));
+
+            // Бронь не освобождается за время ожидания: SDK идет в API сам
+            sdk.getCurrentWeatherInCity("oslo", Duration.ofSeconds(5));
+
+            assertEquals(1, requests.weatherCalls.get());
+            assertFalse(third.tryClaimRefresh(oslo.getLocationId(), Duration.ofMinutes(1)));
+        } finally {
+            sdk.shutDown();
+        }
+    }
+
+    public void testFetchByOneSdkWarmsAnother() throws Exception {
+        StubOpenWeatherMapRequestsService firstRequests = new StubOpenWeatherMapRequestsService();
+        StubOpenWeatherMapRequestsService secondRequests = new StubOpenWeatherMapRequestsService();
+        WeatherSDKConfig config = WeatherSDKConfig.builder().sharedCache(file, 256).build();
+        WeatherSDK first = new WeatherSDK("key-1", Mode.ON_DEMAND, config, firstRequests);
+        WeatherSDK second = new WeatherSDK("key-2", Mode.ON_DEMAND, config, secondRequests);
+        try {
+            String json = first.getCurrentWeatherInCity("Berlin");
+            assertEquals(json, second.getCurrentWeatherInCity("Berlin"));
+        } finally {
+            first.shutDown();
+            second.shutDown();
+        }
+
+        assertEquals(1, firstRequests.weatherCalls.get());
+        assertEquals(0, secondRequests.weatherCalls.get());
+        assertEquals(0, secondRequests.coordinatesCalls.get());
+    }
+}
@@ -0,0 +1,90 @@
+package kameleon.test.task.services;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest extends TestCase {
+
+    public void testConcurrentCallsShareOneExecution() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int callers = 8;
+
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("London", () -> {
+                    executions.incrementAndGet();
+                    release.await();
+                    return "weather";
+                })));
+            }
+            while (singleFlight.getCoalescedCallsCount() < callers - 1) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("weather", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, executions.get());
+        assertEquals(callers - 1, singleFlight.getCoalescedCallsCount());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    public void testFailureIsDeliveredToWaitersAndNotCached() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread leader = new Thread(() -> {
+            try {
+                singleFlight.execute("Paris", () -> {
+                    started.countDown();
+                    release.await();
+                    throw new IOException("upstream is down");
+                });
+            } catch (Exception ignored) {
+            }
+        });
+        leader.start();
+        started.await();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> follower = executor.submit(() -> singleFlight.execute("Paris", () -> "unexpected"));
+            while (singleFlight.getCoalescedCallsCount() < 1) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            try {
+                follower.get(5, TimeUnit.SECONDS);
+                fail("follower should receive the leader's exception");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        } finally {
+            executor.shutdownNow();
+            leader.join();
+        }
+
+        assertEquals("fresh", singleFlight.execute("Paris", () -> "fresh"));
+    }
+}
@@ -0,0 +1,164 @@
+package kameleon.test.task.services;
+
+import kameleon.test.task.exceptions.APIKeyException;
+import kameleon.test.task.exceptions.CoordinateException;
+import kameleon.test.task.model.CityCoordinates;
+import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.model.WeatherForecast;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class StubOpenWeatherMapRequestsService extends OpenWeatherMapRequestsService {
+    final AtomicInteger coordinatesCalls = new AtomicInteger();
+    final AtomicInteger weatherCalls = new AtomicInteger();
+    final AtomicInteger cityIdCalls = new AtomicInteger();
+    final AtomicInteger groupCalls = new AtomicInteger();
+    final Set<String> unknownCities = ConcurrentHashMap.newKeySet();
+    final Map<String, CityCoordinates> locations = new ConcurrentHashMap<>();
+    volatile long latencyMillis;
+    // Имитация недоступного API: запросы погоды завершаются сетевой ошибкой
+    volatile boolean unavailable;
+    // Ответ на запросы group, например APIKeyException для тарифа без API 2.5
+    volatile Exception groupFailure;
+
+    StubOpenWeatherMapRequestsService() {
+        super("test-key");
+    }
+
+    static CurrentWeather weather(String city, double temp) {
+        return CurrentWeather.builder()
+                .weather("Clouds", "scattered clouds")
+                .temperature(temp, temp - 2)
+                .visibility(10000)
+                .wind(1.38)
+                .datetime(1675744800L)
+                .sys(1675751262L, 1675787560L)
+                .timezone(3600)
+                .cityName(city)
+                .build();
+    }
+
+    @Override
+    public CityCoordinates getCityCoordinates(String city, Deadline deadline) throws IOException, CoordinateException, InterruptedException, APIKeyException {
+        coordinatesCalls.incrementAndGet();
+        sleep(deadline);
+        if (unknownCities.stream().anyMatch(city::equalsIgnoreCase)) {
+            throw new CoordinateException(String.format("The city %s was not found", city));
+        }
+        CityCoordinates location = locations.get(city);
+        if (location != null) {
+            return location;
+        }
+        // Геокодер отвечает каноническим именем, у разных городов разные координаты
+        int hash = city.toLowerCase().hashCode();
+        String name = Character.toUpperCase(city.charAt(0)) + city.substring(1);
+        return new CityCoordinates(name, 55.75 + (hash & 0xFF) / 1000.0, 37.62 + ((hash >>> 8) & 0xFF) / 1000.0);
+    }
+
+    @Override
+    public CurrentWeather getCurrentWeather(CityCoordinates city, Deadline deadline) throws IOException, InterruptedException {
+        weatherCalls.incrementAndGet();
+        sleep(deadline);
+        if (unavailable) {
+            throw new IOException("OpenWeatherMap responded with status 503");
+        }
+        return weather(city.getCityName(), 269.6);
+    }
+
+    // Идентификатор города OpenWeatherMap выводится из имени
+    @Override
+    public Map.Entry<Long, CurrentWeather> getCurrentWeatherWithCityId(CityCoordinates city, Deadline deadline) throws IOException, InterruptedException {
+        cityIdCalls.incrementAndGet();
+        sleep(deadline);
+        return Map.entry(cityId(city.getCityName()), weather(city.getCityName(), 269.6));
+    }
+
+    @Override
+    public Map<Long, CurrentWeather> getCurrentWeatherByCityIds(Map<Long, String> cities, Deadline deadline) throws IOException, InterruptedException, APIKeyException {
+        groupCalls.incrementAndGet();
+        sleep(deadline);
+        Exception failure = groupFailure;
+        if (failure instanceof APIKeyException e) {
+            throw e;
+        }
+        if (failure != null) {
+            throw (IOException) failure;
+        }
+        Map<Long, CurrentWeather> weather = new HashMap<>();
+        cities.forEach((id, name) -> weather.put(id, weather(name, 270.6)));
+        return weather;
+    }
+
+    static long cityId(String city) {
+        return city.toLowerCase().hashCode() & 0xFFFFFFL;
+    }
+
+    // Наблюдение на текущий момент и прогноз: каждый следующий час на градус теплее
+    @Override
+    public WeatherForecast getForecast(CityCoordinates city, Deadline deadline) throws IOException, InterruptedException {
+        CurrentWeather current = getCurrentWeather(city, deadline);
+        long now = Instant.now().getEpochSecond();
+        CurrentWeather observation = CurrentWeather.builder()
+                .weather(current.getWeather().getMain(), current.getWeather().getDescription())
+                .temperature(current.getTemperature().getTemp(), current.getTemperature().getFeelsLike())
+                .visibility(current.getVisibility())
+                .wind(current.getWind().getWindSpeed())
+                .datetime(now)
+                .sys(current.getSys().getSunrise(), current.getSys().getSunset())
+                .timezone(current.getTimezone())
+                .cityName(current.getCityName())
+                .build();
+        List<WeatherForecast.Hour> hourly = new ArrayList<>();
+        for (int hour = 1; hour <= 48; hour++) {
+            double temp = current.getTemperature().getTemp() + hour;
+            hourly.add(new WeatherForecast.Hour(now + hour * 3600L, temp, temp - 2, 10000, 1.38, "Clouds", "scattered clouds"));
+        }
+        return new WeatherForecast(observation, hourly);
+    }
+
+    @Override
+    public CompletableFuture<CityCoordinates> getCityCoordinatesAsync(String city, Deadline deadline, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getCityCoordinates(city, deadline);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<CurrentWeather> getCurrentWeatherAsync(CityCoordinates city, Deadline deadline, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getCurrentWeather(city, deadline);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    // Задержка "сети" не дольше оставшегося бюджета вызова, как у настоящего клиента
+    private void sleep(Deadline deadline) throws InterruptedException, HttpTimeoutException {
+        long latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+        if (latencyNanos > deadline.remainingNanos()) {
+            Thread.sleep(Duration.ofNanos(deadline.remainingNanos()));
+            throw deadline.exceeded("stub response");
+        }
+        Thread.sleep(Duration.ofNanos(latencyNanos));
+    }
+}
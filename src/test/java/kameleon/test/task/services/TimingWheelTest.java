@@ -0,0 +1,37 @@
+package kameleon.test.task.services;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+public class TimingWheelTest extends TestCase {
+    private static final long SECOND = 1_000_000_000L;
+
+    public void testKeysExpireOnTheirTickIncludingLaterRounds() {
+        TimingWheel<String> wheel = new TimingWheel<>(SECOND, 8, 0);
+        wheel.schedule("soon", 3 * SECOND);
+        // Тот же слот, но следующий оборот колеса
+        wheel.schedule("later", 11 * SECOND);
+        wheel.schedule("moved", 2 * SECOND);
+        wheel.schedule("moved", 5 * SECOND);
+
+        assertEquals(List.of(), wheel.advance(2 * SECOND));
+        assertEquals(List.of("soon"), wheel.advance(3 * SECOND));
+        assertEquals(List.of("moved"), wheel.advance(10 * SECOND));
+        assertEquals(List.of("later"), wheel.advance(11 * SECOND));
+        assertEquals(0, wheel.size());
+    }
+
+    public void testLongPauseExpiresEverythingDueAndCancelRemoves() {
+        TimingWheel<String> wheel = new TimingWheel<>(SECOND, 8, 0);
+        for (int i = 1; i <= 20; i++) {
+            wheel.schedule("city-" + i, i * SECOND);
+        }
+        assertTrue(wheel.cancel("city-7"));
+        assertFalse(wheel.scheduleIfAbsent("city-8", 100 * SECOND));
+
+        assertEquals(18, wheel.advance(19 * SECOND).size());
+        assertTrue(wheel.contains("city-20"));
+        assertEquals(List.of("city-20"), wheel.advance(20 * SECOND));
+    }
+}
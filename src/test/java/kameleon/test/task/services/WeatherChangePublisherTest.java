@@ -0,0 +1,122 @@
+package kameleon.test.task.services;
+
+import junit.framework.TestCase;
+import kameleon.test.task.model.ChangeThresholds;
+import kameleon.test.task.model.CurrentWeather;
+import kameleon.test.task.model.WeatherChange;
+import kameleon.test.task.model.WeatherField;
+import kameleon.test.task.model.WeatherSnapshot;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class WeatherChangePublisherTest extends TestCase {
+    private WeatherChangePublisher changes;
+
+    @Override
+    protected void setUp() {
+        changes = new WeatherChangePublisher();
+    }
+
+    @Override
+    protected void tearDown() {
+        changes.close();
+    }
+
+    private static WeatherSnapshot snapshot(String main, double temp) {
+        return WeatherSnapshot.of(CurrentWeather.builder()
+                .weather(main, main.toLowerCase())
+                .temperature(temp, 268)
+                .visibility(10000)
+                .wind(1.38)
+                .datetime(System.currentTimeMillis() / 1000)
+                .cityName("Zocca")
+                .build());
+    }
+
+    // Подписчик, запрашивающий request событий сразу после подписки и больше никогда
+    private static BlockingQueue<WeatherChange> subscribe(Flow.Publisher<WeatherChange> publisher, long request) {
+        BlockingQueue<WeatherChange> received = new LinkedBlockingQueue<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(request);
+            }
+
+            @Override
+            public void onNext(WeatherChange item) {
+                received.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return received;
+    }
+
+    public void testOnlyChangesBeyondThresholdsAreDelivered() throws InterruptedException {
+        BlockingQueue<WeatherChange> received = subscribe(
+                changes.publisher(ChangeThresholds.builder().temperature(0.5).build(), 16), Long.MAX_VALUE);
+
+        changes.publish("zocca", snapshot("Clouds", 270));
+        changes.publish("zocca", snapshot("Clouds", 270.3));
+        changes.publish("zocca", snapshot("Clouds", 270.6));
+        changes.publish("zocca", snapshot("Rain", 270.6));
+
+        WeatherChange first = received.poll(5, TimeUnit.SECONDS);
+        assertNull(first.getPrevious());
+        // Сравнение с доставленным ранее значением 270, а не с пропущенным 270.3
+        WeatherChange warmer = received.poll(5, TimeUnit.SECONDS);
+        assertEquals(EnumSet.of(WeatherField.TEMPERATURE), warmer.getChangedFields());
+        assertEquals(270.0, warmer.getPrevious().getTemperature().getTemp());
+        WeatherChange rain = received.poll(5, TimeUnit.SECONDS);
+        assertEquals(EnumSet.of(WeatherField.MAIN, WeatherField.DESCRIPTION), rain.getChangedFields());
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    public void testSlowSubscriberLosesEventsWithoutBlockingPublisher() throws InterruptedException {
+        BlockingQueue<WeatherChange> slow = subscribe(changes.publisher(ChangeThresholds.ANY_CHANGE, 1), 1);
+        BlockingQueue<WeatherChange> fast = subscribe(changes.publisher(ChangeThresholds.ANY_CHANGE, 1_000), Long.MAX_VALUE);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            changes.publish("zocca", snapshot("Clouds", 270 + i));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+        assertNotNull(slow.poll(5, TimeUnit.SECONDS));
+        assertTrue(changes.getDroppedCount() > 0);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(270.0 + i, fast.poll(5, TimeUnit.SECONDS).getCurrent().getTemperature().getTemp());
+        }
+        assertEquals(2, changes.getSubscriberCount());
+    }
+
+    public void testLocationsLeavingCacheAreForgotten() throws InterruptedException {
+        Set<String> cached = ConcurrentHashMap.newKeySet();
+        try (WeatherChangePublisher bounded = new WeatherChangePublisher(cached::contains)) {
+            BlockingQueue<WeatherChange> received = subscribe(
+                    bounded.publisher(ChangeThresholds.builder().build(), 16), Long.MAX_VALUE);
+
+            // Кэш держит 10 мест, каждое новое вытесняет самое старое
+            for (int i = 0; i < 1000; i++) {
+                cached.add("city" + i);
+                cached.remove("city" + (i - 10));
+                bounded.publish("city" + i, snapshot("Clouds", 270));
+            }
+
+            assertTrue(bounded.getTrackedLocationCount() <= 128);
+            assertNotNull(received.poll(5, TimeUnit.SECONDS));
+        }
+    }
+}
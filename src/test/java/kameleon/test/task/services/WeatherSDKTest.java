@@ -0,0 +1,413 @@
+package kameleon.test.task.services;
+
+import junit.framework.TestCase;
+import kameleon.test.task.config.WeatherSDKConfig;
+import kameleon.test.task.exceptions.APIKeyException;
+import kameleon.test.task.exceptions.CircuitBreakerOpenException;
+import kameleon.test.task.exceptions.CoordinateException;
+import kameleon.test.task.model.BatchWeatherResult;
+import kameleon.test.task.model.CityCoordinates;
+import kameleon.test.task.model.WarmUpReport;
+import kameleon.test.task.model.WeatherChange;
+import kameleon.test.task.modes.Mode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class WeatherSDKTest extends TestCase {
+    private StubOpenWeatherMapRequestsService requestsService;
+    private WeatherSDK sdk;
+
+    @Override
+    protected void setUp() {
+        requestsService = new StubOpenWeatherMapRequestsService();
+        WeatherSDKConfig config = WeatherSDKConfig.builder()
+                .cache(CacheService.builder().maximumSize(1_000))
+                .batchParallelism(32)
+                .build();
+        sdk = new WeatherSDK("test-key", Mode.ON_DEMAND, config, requestsService);
+    }
+
+    @Override
+    protected void tearDown() {
+        sdk.shutDown();
+    }
+
+    public void testGroupPollingLearnsIdsThenFallsBackWhenPlanLacksGroupRequests() throws Exception {
+        WeatherSDK pollingSdk = new WeatherSDK("test-key", Mode.POLLING, WeatherSDKConfig.builder()
+                .groupPolling(true)
+                .jmxEnabled(false)
+                .build(), requestsService);
+        try {
+            // Обходы запускаются вручную
+            PollingService polling = pollingSdk.getPollingService();
+            polling.stop();
+            for (String city : new String[]{"london", "paris", "berlin"}) {
+                pollingSdk.getCurrentWeatherInCity(city);
+            }
+
+            // Первый обход узнает идентификаторы - по отдельному запросу на город
+            polling.updateAllCachedCities();
+            assertEquals(3, requestsService.cityIdCalls.get());
+            assertEquals(0, requestsService.groupCalls.get());
+
+            // Дальше все три города обновляются одним запросом group
+            polling.updateAllCachedCities();
+            assertEquals(1, requestsService.groupCalls.get());
+            assertEquals(3, polling.getLastSweepReport().getRefreshed());
+
+            // Ошибка запроса (не тарифа) не отключает group
+            requestsService.groupFailure = new IOException("OpenWeatherMap responded with HTTP 404 for /data/2.5/group");
+            polling.updateAllCachedCities();
+            assertEquals(3, polling.getLastSweepReport().getFailed());
+            requestsService.groupFailure = new APIKeyException("OpenWeatherMap responded with HTTP 401 for /data/2.5/group");
+            polling.updateAllCachedCities();
+            assertEquals(3, requestsService.groupCalls.get());
+
+            // Тариф без API 2.5: города обновляются по одному, запросов group больше нет
+            int weatherCalls = requestsService.weatherCalls.get();
+            polling.updateAllCachedCities();
+            assertEquals(3, polling.getLastSweepReport().getRefreshed());
+            assertEquals(weatherCalls + 3, requestsService.weatherCalls.get());
+            assertEquals(3, requestsService.groupCalls.get());
+            assertEquals(3, requestsService.cityIdCalls.get());
+        } finally {
+            pollingSdk.shutDown();
+        }
+    }
+
+    public void testSecondCallIsServedFromCache() throws Exception {
+        String first = sdk.getCurrentWeatherInCity("London");
+        String second = sdk.getCurrentWeatherInCity("London");
+
+        assertSame(first, second);
+        assertEquals(1, requestsService.weatherCalls.get());
+        assertEquals(1, requestsService.coordinatesCalls.get());
+    }
+
+    public void testSpellingVariantsShareOneCacheEntry() throws Exception {
+        requestsService.locations.put("moscow", new CityCoordinates("Moscow", 55.7504461, 37.6174943, List.of("Москва", "Moskau")));
+        requestsService.locations.put("moskva", new CityCoordinates("Moscow", 55.75044, 37.61749));
+
+        String first = sdk.getCurrentWeatherInCity("Moscow");
+        assertSame(first, sdk.getCurrentWeatherInCity("  MOSCOW "));
+        // название из local_names ответа геокодера
+        assertSame(first, sdk.getCurrentWeatherInCity("Москва"));
+        // неизвестное написание геокодируется, но указывает на то же место
+        assertSame(first, sdk.getCurrentWeatherInCity("Moskva"));
+
+        assertEquals(2, requestsService.coordinatesCalls.get());
+        assertEquals(1, requestsService.weatherCalls.get());
+    }
+
+    public void testNearbyPointsAreServedFromOneCachedLocation() throws Exception {
+        requestsService.locations.put("berlin", new CityCoordinates("Berlin", 52.5170365, 13.3888599));
+        sdk.getCurrentWeatherInCity("Berlin");
+
+        // облако точек в пределах ~1 км от центра Берлина
+        for (int i = 0; i < 100; i++) {
+            String json = sdk.getCurrentWeatherAt(52.515 + (i % 10) * 0.001, 13.385 + (i / 10) * 0.001);
+            assertTrue(json.contains("\"name\":\"Berlin\""));
+        }
+        assertEquals(1, requestsService.weatherCalls.get());
+
+        // в радиусе нет ни одной записи: загружается центр ячейки, и им обслуживаются соседние точки
+        String hamburg = sdk.getCurrentWeatherAt(53.5511, 9.9937);
+        assertSame(hamburg, sdk.getCurrentWeatherAt(53.5520, 9.9950));
+        assertTrue(hamburg.matches(".*\"name\":\"-?\\d+\\.\\d{4},-?\\d+\\.\\d{4}\".*"));
+        assertEquals(2, requestsService.weatherCalls.get());
+        assertEquals(1, requestsService.coordinatesCalls.get());
+    }
+
+    public void testInvalidCoordinatesAreRejected() throws Exception {
+        try {
+            sdk.getCurrentWeatherAt(91, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testSpreadPollingRejectsPollingStrategy() {
+        try {
+            WeatherSDKConfig.builder()
+                    .pollingStrategy(new RefreshAheadPollingStrategy(Duration.ofMinutes(30), 100))
+                    .spreadPolling()
+                    .build();
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testMetricsArePublishedThroughJmx() throws Exception {
+        WeatherSDK jmxSdk = new WeatherSDK("test-key", Mode.ON_DEMAND, WeatherSDKConfig.builder()
+                .jmxEnabled(true)
+                .build(), requestsService);
+        jmxSdk.getCurrentWeatherInCity("London");
+        jmxSdk.getCurrentWeatherInCity("london");
+        jmxSdk.getCurrentWeatherInCity("London");
+
+        WeatherSDKMetrics metrics = jmxSdk.getMetrics();
+        assertEquals(2, metrics.getCacheHits());
+        assertEquals(1, metrics.getCacheMisses());
+        assertEquals(2.0 / 3, metrics.getCacheHitRatio(), 1e-9);
+        assertEquals(1, metrics.getCacheSize());
+        assertTrue(metrics.getSerializationP99Micros() > 0);
+
+        ObjectName name = metrics.getObjectName();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(2L, server.getAttribute(name, "CacheHits"));
+
+        jmxSdk.shutDown();
+        assertFalse(server.isRegistered(name));
+    }
+
+    public void testMetricsAreNotPublishedByDefault() {
+        assertNull(sdk.getMetrics().getObjectName());
+    }
+
+    public void testByteOutputMatchesStringOutput() throws Exception {
+        String json = sdk.getCurrentWeatherInCity("Berlin");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        sdk.writeCurrentWeatherInCity("Berlin", outputStream);
+        ByteBuffer buffer = sdk.getCurrentWeatherInCityAsBytes("Berlin");
+
+        assertEquals(json, outputStream.toString(StandardCharsets.UTF_8));
+        assertEquals(json, StandardCharsets.UTF_8.decode(buffer).toString());
+        assertEquals(1, requestsService.weatherCalls.get());
+    }
+
+    public void testBatchFetchesMissesInParallelAndReportsErrorsPerCity() throws Exception {
+        sdk.getCurrentWeatherInCity("city-0");
+        requestsService.unknownCities.add("Atlantis");
+        requestsService.latencyMillis = 200;
+
+        List<String> cities = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            cities.add("city-" + i);
+        }
+        cities.add("Atlantis");
+
+        long start = System.nanoTime();
+        BatchWeatherResult result = sdk.getCurrentWeatherInCities(cities);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(30, result.getResults().size());
+        assertTrue(result.getError("Atlantis") instanceof CoordinateException);
+        assertTrue("batch took " + elapsedMillis + " ms", elapsedMillis < 2_000);
+        assertEquals(30, requestsService.weatherCalls.get());
+    }
+
+    public void testWarmUpLoadsConfiguredCitiesBeforeReadiness() throws Exception {
+        requestsService.unknownCities.add("Atlantis");
+        Path file = Files.createTempFile("warm-up", ".txt");
+        Files.writeString(file, "# working set\ncity-3\n\nAtlantis\ncity-1\n");
+        WeatherSDK warmSdk = new WeatherSDK("test-key", Mode.ON_DEMAND, WeatherSDKConfig.builder()
+                .warmUp(List.of("city-1", "city-2"))
+                .warmUp(file)
+                .warmUpCitiesPerSecond(1_000)
+                .jmxEnabled(false)
+                .build(), requestsService);
+        try {
+            WarmUpReport report = warmSdk.getWarmUp().getReadiness().get(5, TimeUnit.SECONDS);
+
+            assertEquals(4, report.getCities());
+            assertEquals(3, report.getLoaded());
+            assertTrue(report.getErrors().get("Atlantis") instanceof CoordinateException);
+            assertEquals(1.0, warmSdk.getWarmUp().getProgress());
+            warmSdk.getCurrentWeatherInCity("city-2");
+            assertEquals(3, requestsService.weatherCalls.get());
+        } finally {
+            warmSdk.shutDown();
+            Files.delete(file);
+        }
+    }
+
+    public void testMissingWarmUpFileFailsBeforeSdkAcquiresResources() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        int mbeans = server.getMBeanCount();
+        try {
+            new WeatherSDK("test-key", Mode.POLLING, WeatherSDKConfig.builder()
+                    .warmUp(Path.of("no-such-warm-up-file.txt"))
+                    .jmxEnabled(true)
+                    .build(), requestsService);
+            fail("missing warm-up file must fail");
+        } catch (UncheckedIOException expected) {
+        }
+        // MBean не зарегистрирован, опрос не запущен
+        assertEquals(mbeans, (int) server.getMBeanCount());
+    }
+
+    public void testAsyncCallsAreCoalescedAndCached() throws Exception {
+        requestsService.latencyMillis = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(sdk.getCurrentWeatherInCityAsync("Paris", executor));
+            }
+            for (CompletableFuture<String> future : futures) {
+                assertTrue(future.get(5, TimeUnit.SECONDS).contains("\"name\":\"Paris\""));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, requestsService.weatherCalls.get());
+        assertEquals(1, requestsService.coordinatesCalls.get());
+        assertTrue(sdk.getCoalescedRequestsCount() >= 9);
+    }
+
+    public void testAsyncFailureCarriesOriginalException() throws Exception {
+        requestsService.unknownCities.add("Atlantis");
+        try {
+            sdk.getCurrentWeatherInCityAsync("Atlantis").get(5, TimeUnit.SECONDS);
+            fail("unknown city must fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CoordinateException);
+        }
+    }
+
+    public void testStaleEntryIsServedWhileUpstreamIsDown() throws Exception {
+        WeatherSDK staleSdk = new WeatherSDK("test-key", Mode.ON_DEMAND, WeatherSDKConfig.builder()
+                .cache(CacheService.builder().freshFor(Duration.ofMillis(20)))
+                .serveStale(Duration.ofMinutes(5))
+                .circuitBreaker(2, Duration.ofMinutes(1))
+                .jmxEnabled(false)
+                .build(), requestsService);
+        try {
+            String cached = staleSdk.getCurrentWeatherInCity("London");
+            Thread.sleep(50);
+            requestsService.unavailable = true;
+
+            assertEquals(cached, staleSdk.getCurrentWeatherInCity("London"));
+            assertEquals(cached, staleSdk.getCurrentWeatherInCity("London"));
+            assertEquals(CircuitBreaker.State.OPEN, staleSdk.getCircuitBreakerState());
+
+            // автомат разомкнут: API больше не вызывается, устаревшая запись по-прежнему отдаётся
+            int calls = requestsService.weatherCalls.get();
+            assertEquals(cached, staleSdk.getCurrentWeatherInCity("London"));
+            assertEquals(calls, requestsService.weatherCalls.get());
+            assertEquals(3, staleSdk.getMetrics().getStaleResponses());
+
+            try {
+                staleSdk.getCurrentWeatherInCity("Paris");
+                fail("city without cached data must fail while the circuit is open");
+            } catch (CircuitBreakerOpenException expected) {
+            }
+        } finally {
+            staleSdk.shutDown();
+        }
+    }
+
+    public void testStaleWhileRevalidateRefreshesInBackground() throws Exception {
+        WeatherSDK staleSdk = new WeatherSDK("test-key", Mode.ON_DEMAND, WeatherSDKConfig.builder()
+                .cache(CacheService.builder().freshFor(Duration.ofMillis(20)))
+                .serveStale(Duration.ofMinutes(5))
+                .staleWhileRevalidate(true)
+                .jmxEnabled(false)
+                .build(), requestsService);
+        try {
+            String cached = staleSdk.getCurrentWeatherInCity("London");
+            Thread.sleep(50);
+            requestsService.latencyMillis = 200;
+
+            long start = System.nanoTime();
+            assertSame(cached, staleSdk.getCurrentWeatherInCity("London"));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(150));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (requestsService.weatherCalls.get() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(300);
+            assertEquals(2, requestsService.weatherCalls.get());
+            assertNotSame(cached, staleSdk.getCurrentWeatherInCity("London"));
+        } finally {
+            staleSdk.shutDown();
+        }
+    }
+
+    public void testForecastAnswersBetweenFetches() throws Exception {
+        WeatherSDK forecastSdk = new WeatherSDK("test-key", Mode.ON_DEMAND, WeatherSDKConfig.builder()
+                .cache(CacheService.builder().freshFor(Duration.ofMillis(50)))
+                .forecastServing(Duration.ofHours(3))
+                .jmxEnabled(false)
+                .build(), requestsService);
+        try {
+            forecastSdk.getCurrentWeatherInCity("Paris");
+            Thread.sleep(80);
+            String interpolated = forecastSdk.getCurrentWeatherInCity("Paris");
+
+            assertEquals(1, requestsService.weatherCalls.get());
+            assertEquals(1, forecastSdk.getMetrics().getForecastResponses());
+            assertTrue(interpolated.contains("\"name\":\"Paris\""));
+        } finally {
+            forecastSdk.shutDown();
+        }
+    }
+
+    public void testSubscribersReceiveFetchedWeather() throws Exception {
+        BlockingQueue<WeatherChange> received = new LinkedBlockingQueue<>();
+        sdk.getWeatherChanges().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(WeatherChange item) {
+                received.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        String json = sdk.getCurrentWeatherInCity("London");
+        sdk.getCurrentWeatherInCity("London");
+
+        WeatherChange change = received.poll(5, TimeUnit.SECONDS);
+        assertSame(json, change.getSnapshot().toJson());
+        assertEquals("London", change.getCurrent().getCityName());
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    public void testCallBudgetCoversGeocodingAndWeather() throws Exception {
+        requestsService.latencyMillis = 150;
+
+        long start = System.nanoTime();
+        try {
+            sdk.getCurrentWeatherInCity("London", Duration.ofMillis(250));
+            fail("geocoding and weather together exceed the budget");
+        } catch (HttpTimeoutException expected) {
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(290));
+        assertEquals(1, requestsService.weatherCalls.get());
+    }
+}